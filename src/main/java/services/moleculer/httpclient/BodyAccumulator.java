@@ -0,0 +1,382 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.asynchttpclient.HttpResponseBodyPart;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * Collects the parts of a response body into one byte-array. If the
+ * "Content-Length" is known, the target array is allocated once, and the
+ * parts are copied directly into it. Otherwise the parts are stored in a list,
+ * and they are copied into the final array (only once) when the response is
+ * complete.<br>
+ * <br>
+ * If an allocator is specified (pooled mode), the parts are stored in pooled
+ * Netty buffers instead of arrays: the buffers of the received body parts are
+ * retained (without copying), and the bytes of other sources are copied into
+ * buffers of the allocator. These buffers must be released by the "release"
+ * method (the "toByteArray" releases them automatically).
+ */
+public class BodyAccumulator {
+
+	// --- CONSTANTS ---
+
+	/**
+	 * Max size of a Java array.
+	 */
+	protected static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+	/**
+	 * Size of a pooled buffer.
+	 */
+	protected static final int POOLED_BUFFER_SIZE = 64 * 1024;
+
+	protected static final byte[] EMPTY = new byte[0];
+
+	// --- VARIABLES ---
+
+	/**
+	 * Allocator of the pooled buffers (null = unpooled mode).
+	 */
+	protected final ByteBufAllocator allocator;
+
+	/**
+	 * Expected length of the body (from the "Content-Length" header; -1 =
+	 * unknown).
+	 */
+	protected int expectedLength = -1;
+
+	/**
+	 * Presized array (when the Content-Length is known).
+	 */
+	protected byte[] array;
+
+	/**
+	 * Number of bytes written into the presized array.
+	 */
+	protected int position;
+
+	/**
+	 * Received parts (when the Content-Length is unknown, or when the server
+	 * sent more bytes than expected).
+	 */
+	protected ArrayList<byte[]> chunks;
+
+	/**
+	 * Received parts in pooled mode.
+	 */
+	protected ArrayList<ByteBuf> buffers;
+
+	/**
+	 * Total number of received bytes.
+	 */
+	protected long length;
+
+	// --- CONSTRUCTORS ---
+
+	public BodyAccumulator() {
+		this(null);
+	}
+
+	public BodyAccumulator(ByteBufAllocator allocator) {
+		this.allocator = allocator;
+	}
+
+	// --- SET EXPECTED LENGTH ---
+
+	/**
+	 * Sets the expected length of the body. The array is allocated lazily (eg.
+	 * a HEAD response has "Content-Length" header, but no body).
+	 * 
+	 * @param contentLength
+	 *            value of the "Content-Length" header (or -1 if unknown)
+	 */
+	public void setExpectedLength(long contentLength) {
+		if (contentLength > 0 && contentLength <= MAX_ARRAY_SIZE && array == null && !hasTail()) {
+			expectedLength = (int) contentLength;
+		} else {
+			expectedLength = -1;
+		}
+	}
+
+	// --- ADD BODY PART ---
+
+	/**
+	 * Appends a response part.
+	 * 
+	 * @param bodyPart
+	 *            body part (from the AsyncHttpClient)
+	 * 
+	 * @throws IOException
+	 *             if the body is larger than the max size of a Java array
+	 */
+	public void append(HttpResponseBodyPart bodyPart) throws IOException {
+		if (allocator != null && expectedLength < 1) {
+
+			// The "lazy" body part is a view of Netty's pooled buffer (which is
+			// released after this call), so it is retained instead of copying
+			ByteBuf buffer = bodyPart.getBodyByteBuf();
+			int len = buffer == null ? 0 : buffer.readableBytes();
+			if (len == 0) {
+				return;
+			}
+			checkLength(len);
+			if (buffers == null) {
+				buffers = new ArrayList<>();
+			}
+			buffers.add(buffer.retainedSlice());
+			length += len;
+		} else if (expectedLength > 0 || allocator != null) {
+			append(bodyPart.getBodyByteBuffer());
+		} else {
+
+			// The "getBodyPartBytes" returns an array that is not used by
+			// anybody else (the default "eager" body part creates a new
+			// array for each part), so it can be stored without copying
+			append(bodyPart.getBodyPartBytes());
+		}
+	}
+
+	/**
+	 * Copies the content of the specified buffer.
+	 * 
+	 * @param buffer
+	 *            source buffer
+	 * 
+	 * @throws IOException
+	 *             if the body is larger than the max size of a Java array
+	 */
+	public void append(ByteBuffer buffer) throws IOException {
+		int len = buffer.remaining();
+		if (len == 0) {
+			return;
+		}
+		checkLength(len);
+		if (array == null && !hasTail() && expectedLength > 0) {
+			array = new byte[expectedLength];
+		}
+		if (array != null && !hasTail() && position + len <= array.length) {
+			buffer.get(array, position, len);
+			position += len;
+		} else if (allocator != null) {
+			addPooled(buffer);
+		} else {
+			byte[] chunk = new byte[len];
+			buffer.get(chunk, 0, len);
+			addChunk(chunk);
+		}
+		length += len;
+	}
+
+	/**
+	 * Stores the specified array (without copying it, in unpooled mode). The
+	 * array must not be modified by the caller after this call.
+	 * 
+	 * @param chunk
+	 *            body part
+	 * 
+	 * @throws IOException
+	 *             if the body is larger than the max size of a Java array
+	 */
+	public void append(byte[] chunk) throws IOException {
+		int len = chunk == null ? 0 : chunk.length;
+		if (len == 0) {
+			return;
+		}
+		if (allocator != null) {
+			append(ByteBuffer.wrap(chunk));
+			return;
+		}
+		checkLength(len);
+		if (array == null && !hasTail() && expectedLength > 0) {
+			array = new byte[expectedLength];
+		}
+		if (array != null && !hasTail() && position + len <= array.length) {
+			System.arraycopy(chunk, 0, array, position, len);
+			position += len;
+		} else {
+			addChunk(chunk);
+		}
+		length += len;
+	}
+
+	protected void addChunk(byte[] chunk) {
+		if (chunks == null) {
+			chunks = new ArrayList<>();
+		}
+		chunks.add(chunk);
+	}
+
+	protected void addPooled(ByteBuffer buffer) {
+		if (buffers == null) {
+			buffers = new ArrayList<>();
+		}
+		int limit = buffer.limit();
+		while (buffer.hasRemaining()) {
+			ByteBuf last = buffers.isEmpty() ? null : buffers.get(buffers.size() - 1);
+			if (last == null || !last.isWritable()) {
+				last = allocator.buffer(POOLED_BUFFER_SIZE, POOLED_BUFFER_SIZE);
+				buffers.add(last);
+			}
+			int len = Math.min(last.writableBytes(), buffer.remaining());
+			buffer.limit(buffer.position() + len);
+			last.writeBytes(buffer);
+			buffer.limit(limit);
+		}
+	}
+
+	protected boolean hasTail() {
+		return chunks != null || buffers != null;
+	}
+
+	protected void checkLength(int len) throws IOException {
+		if (length + len > MAX_ARRAY_SIZE) {
+			throw new IOException("Response body is too large (" + (length + len) + " bytes)!");
+		}
+	}
+
+	// --- GET BODY ---
+
+	/**
+	 * Returns the number of received bytes.
+	 * 
+	 * @return number of bytes
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * Returns the received bytes in one array. When the body fits exactly into
+	 * the presized array (or the body has only one part) it returns the array
+	 * without copying. Releases the pooled buffers.
+	 * 
+	 * @return response body (never null)
+	 */
+	public byte[] toByteArray() {
+		if (length == 0) {
+			return EMPTY;
+		}
+		if (!hasTail()) {
+			if (position == array.length) {
+				return array;
+			}
+
+			// Less bytes than the "Content-Length"
+			byte[] bytes = new byte[position];
+			System.arraycopy(array, 0, bytes, 0, position);
+			array = bytes;
+			return bytes;
+		}
+		if (array == null && chunks != null && chunks.size() == 1) {
+			return chunks.get(0);
+		}
+		byte[] bytes = new byte[(int) length];
+		int offset = 0;
+		if (array != null) {
+			System.arraycopy(array, 0, bytes, 0, position);
+			offset = position;
+		}
+		if (chunks != null) {
+			for (byte[] chunk : chunks) {
+				System.arraycopy(chunk, 0, bytes, offset, chunk.length);
+				offset += chunk.length;
+			}
+		} else {
+			for (ByteBuf buffer : buffers) {
+				int len = buffer.readableBytes();
+				buffer.getBytes(buffer.readerIndex(), bytes, offset, len);
+				offset += len;
+			}
+			release();
+		}
+
+		// Store the result (for the subsequent calls)
+		array = bytes;
+		position = bytes.length;
+		chunks = null;
+		return bytes;
+	}
+
+	// --- SPILL TO FILE ---
+
+	/**
+	 * Writes the received bytes into the specified file, then clears this
+	 * accumulator (and releases the pooled buffers). The subsequent parts
+	 * should be written directly into the file.
+	 * 
+	 * @param file
+	 *            target file
+	 * 
+	 * @throws IOException
+	 *             any I/O error
+	 */
+	public void writeTo(SpillFile file) throws IOException {
+		try {
+			if (array != null) {
+				file.write(ByteBuffer.wrap(array, 0, position));
+			}
+			if (chunks != null) {
+				for (byte[] chunk : chunks) {
+					file.write(ByteBuffer.wrap(chunk));
+				}
+			}
+			if (buffers != null) {
+				for (ByteBuf buffer : buffers) {
+					file.write(buffer.nioBuffer());
+				}
+			}
+		} finally {
+			release();
+			array = null;
+			chunks = null;
+			position = 0;
+			length = 0;
+			expectedLength = -1;
+		}
+	}
+
+	// --- RELEASE POOLED BUFFERS ---
+
+	/**
+	 * Releases the pooled buffers (eg. when the request failed).
+	 */
+	public void release() {
+		if (buffers != null) {
+			for (ByteBuf buffer : buffers) {
+				buffer.release();
+			}
+			buffers = null;
+		}
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,183 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.io.IOException;
+
+import org.asynchttpclient.request.body.Body;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import io.netty.handler.codec.compression.ZstdEncoder;
+
+/**
+ * Compressing request body. Reads the wrapped body chunk by chunk, when the
+ * connection is ready to send the next chunk, and compresses it on the fly
+ * (with Netty's zlib or Zstandard encoder). Only one input chunk and its
+ * compressed output are held in the memory, so the memory usage is bounded,
+ * regardless of the size of the body. The compressed length is unknown, so
+ * the request is sent in chunked mode. Supported encodings are "gzip",
+ * "deflate" and "zstd" (requires zstd-jni on the classpath).
+ */
+public class CompressedBody implements Body {
+
+	// --- CONSTANTS ---
+
+	/**
+	 * Size of the buffer of the uncompressed input.
+	 */
+	protected static final int INPUT_BUFFER_SIZE = 8192;
+
+	// --- VARIABLES ---
+
+	protected final Body source;
+
+	/**
+	 * Channel of the encoder.
+	 */
+	protected final EmbeddedChannel encoder;
+
+	/**
+	 * Compressed bytes which were not written into the HTTP chunk.
+	 */
+	protected ByteBuf output;
+
+	/**
+	 * The whole source body has been read.
+	 */
+	protected boolean sourceFinished;
+
+	/**
+	 * The encoder has written the trailer.
+	 */
+	protected boolean encoderFinished;
+
+	/**
+	 * Total number of uncompressed bytes.
+	 */
+	protected long transfered;
+
+	// --- CONSTRUCTOR ---
+
+	public CompressedBody(Body source, String encoding) {
+		this.source = source;
+		this.encoder = newEncoder(encoding);
+	}
+
+	protected static EmbeddedChannel newEncoder(String encoding) {
+		switch (encoding) {
+		case "gzip":
+			return new EmbeddedChannel(ZlibCodecFactory.newZlibEncoder(ZlibWrapper.GZIP));
+		case "deflate":
+			return new EmbeddedChannel(ZlibCodecFactory.newZlibEncoder(ZlibWrapper.ZLIB));
+		case "zstd":
+			return new EmbeddedChannel(new ZstdEncoder());
+		default:
+			throw new IllegalArgumentException("Unsupported Content-Encoding (" + encoding + ")!");
+		}
+	}
+
+	// --- BODY IMPLEMENTATION ---
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public BodyState transferTo(ByteBuf target) throws IOException {
+		int start = target.writerIndex();
+		while (target.isWritable()) {
+
+			// Copy the pending compressed bytes
+			if (output != null) {
+				if (output.isReadable()) {
+					target.writeBytes(output, Math.min(target.writableBytes(), output.readableBytes()));
+					continue;
+				}
+				output.release();
+				output = null;
+			}
+			output = encoder.readOutbound();
+			if (output != null) {
+				continue;
+			}
+			if (encoderFinished) {
+				return BodyState.STOP;
+			}
+
+			// Compress the next chunk of the source
+			if (sourceFinished) {
+				encoder.finish();
+				encoderFinished = true;
+				continue;
+			}
+			ByteBuf input = encoder.alloc().buffer(INPUT_BUFFER_SIZE);
+			BodyState state;
+			try {
+				state = source.transferTo(input);
+				if (input.isReadable()) {
+					transfered += input.readableBytes();
+					encoder.writeOutbound(input.retain());
+				}
+			} finally {
+				input.release();
+			}
+			if (state == BodyState.STOP) {
+				sourceFinished = true;
+			} else if (state == BodyState.SUSPEND) {
+
+				// Wait for the source (the written bytes must be sent)
+				return target.writerIndex() == start ? BodyState.SUSPEND : BodyState.CONTINUE;
+			}
+		}
+		return BodyState.CONTINUE;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (output != null) {
+				output.release();
+				output = null;
+			}
+			encoder.finishAndReleaseAll();
+		} finally {
+			source.close();
+		}
+	}
+
+	/**
+	 * Returns the number of uncompressed bytes read from the source.
+	 * 
+	 * @return number of bytes
+	 */
+	public long getTransfered() {
+		return transfered;
+	}
+
+}
@@ -0,0 +1,81 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import org.asynchttpclient.request.body.Body;
+import org.asynchttpclient.request.body.generator.BodyGenerator;
+import org.asynchttpclient.request.body.generator.FeedListener;
+import org.asynchttpclient.request.body.generator.FeedableBodyGenerator;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Compressing HTTP body generator (wraps another body generator, see
+ * CompressedBody). Executes a chunked HTTP-request, without "Content-Length"
+ * header. The FeedListener is passed to the wrapped generator, so
+ * PacketStream-based bodies resume the transfer when new packets arrive.
+ */
+public class CompressedBodyGenerator implements FeedableBodyGenerator {
+
+	// --- VARIABLES ---
+
+	protected final BodyGenerator source;
+	protected final String encoding;
+
+	// --- CONSTRUCTOR ---
+
+	public CompressedBodyGenerator(BodyGenerator source, String encoding) {
+		this.source = source;
+		this.encoding = encoding;
+	}
+
+	@Override
+	public Body createBody() {
+		return new CompressedBody(source.createBody(), encoding);
+	}
+
+	@Override
+	public boolean feed(ByteBuf buffer, boolean isLast) throws Exception {
+		return false;
+	}
+
+	@Override
+	public void setListener(FeedListener listener) {
+		if (source instanceof FeedableBodyGenerator) {
+			((FeedableBodyGenerator) source).setListener(listener);
+		}
+	}
+
+	// --- GETTERS ---
+
+	public BodyGenerator getSource() {
+		return source;
+	}
+
+	public String getEncoding() {
+		return encoding;
+	}
+
+}
@@ -0,0 +1,125 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Mapping between the serialization formats of the datatree library (eg.
+ * "msgpack", "cbor", "smile") and the MIME types of the HTTP "Content-Type"
+ * and "Accept" headers. The binary formats require the corresponding Jackson
+ * (or MessagePack) dataformat library on the classpath.
+ */
+public final class ContentFormats {
+
+	// --- CONSTANTS ---
+
+	public static final String JSON = "json";
+	public static final String MSGPACK = "msgpack";
+	public static final String CBOR = "cbor";
+	public static final String SMILE = "smile";
+	public static final String BSON = "bson";
+	public static final String ION = "ion";
+
+	// --- MAPPINGS ---
+
+	private static final HashMap<String, String> contentTypes = new HashMap<>();
+	private static final HashMap<String, String> formats = new HashMap<>();
+
+	static {
+		register(JSON, "application/json");
+		register(MSGPACK, "application/msgpack", "application/x-msgpack", "application/vnd.msgpack");
+		register(CBOR, "application/cbor");
+		register(SMILE, "application/x-jackson-smile", "application/smile");
+		register(BSON, "application/bson");
+		register(ION, "application/ion");
+	}
+
+	private static void register(String format, String... mimeTypes) {
+		contentTypes.put(format, mimeTypes[0]);
+		for (String mimeType : mimeTypes) {
+			formats.put(mimeType, format);
+		}
+	}
+
+	// --- CONSTRUCTOR ---
+
+	private ContentFormats() {
+	}
+
+	// --- LOOKUP ---
+
+	/**
+	 * Returns the MIME type of the specified format.
+	 * 
+	 * @param format
+	 *            format name (eg. "msgpack")
+	 * 
+	 * @return MIME type (eg. "application/msgpack")
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the format is not supported
+	 */
+	public static String getContentType(String format) {
+		String contentType = contentTypes.get(format.toLowerCase(Locale.ROOT));
+		if (contentType == null) {
+			throw new IllegalArgumentException("Unsupported serialization format (" + format + ")!");
+		}
+		return contentType;
+	}
+
+	/**
+	 * Returns the format of the specified "Content-Type" header value.
+	 * 
+	 * @param contentType
+	 *            value of the header (eg. "application/cbor; charset=UTF-8")
+	 * 
+	 * @return format name, or null if the Content-Type is missing or unknown
+	 */
+	public static String getFormat(String contentType) {
+		if (contentType == null) {
+			return null;
+		}
+		int i = contentType.indexOf(';');
+		if (i > -1) {
+			contentType = contentType.substring(0, i);
+		}
+		return formats.get(contentType.trim().toLowerCase(Locale.ROOT));
+	}
+
+	/**
+	 * Returns true if the specified format is a binary (non-JSON) format.
+	 * 
+	 * @param format
+	 *            format name (null = JSON)
+	 * 
+	 * @return true = binary format
+	 */
+	public static boolean isBinary(String format) {
+		return format != null && !JSON.equals(format);
+	}
+
+}
@@ -24,22 +24,36 @@
  */
 package services.moleculer.httpclient;
 
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
 import java.util.Objects;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Consumer;
 
 import org.asynchttpclient.AsyncHandler;
 import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.AsyncHttpClientConfig.ResponseBodyPartFactory;
 import org.asynchttpclient.DefaultAsyncHttpClient;
 import org.asynchttpclient.DefaultAsyncHttpClientConfig;
 import org.asynchttpclient.HttpResponseBodyPart;
 import org.asynchttpclient.HttpResponseStatus;
+import org.asynchttpclient.Request;
 import org.asynchttpclient.SignatureCalculator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import io.datatree.Promise;
 import io.datatree.Tree;
+import io.datatree.dom.TreeReader;
+import io.datatree.dom.TreeWriter;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
 import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.util.concurrent.FastThreadLocalThread;
 import services.moleculer.stream.PacketStream;
 
 /**
@@ -98,6 +112,10 @@ import services.moleculer.stream.PacketStream;
  */
 public class HttpClient extends DefaultAsyncHttpClientConfig.Builder {
 
+	// --- LOGGER ---
+
+	protected static final Logger logger = LoggerFactory.getLogger(HttpClient.class);
+
 	// --- VARIABLES ---
 
 	/**
@@ -120,11 +138,114 @@ public class HttpClient extends DefaultAsyncHttpClientConfig.Builder {
 	 * Shut down ScheduledExecutorService on stop().
 	 */
 	protected boolean shutDownThreadPools;
+
+	/**
+	 * Executor for the tasks that should not run on Netty's event loop (eg.
+	 * writing into a slow PacketStream). Default is the common ForkJoinPool.
+	 */
+	protected Executor executor;
+
+	/**
+	 * Max size of the coalesced HTTP chunks of PacketStream-based uploads (0 =
+	 * one packet per chunk).
+	 */
+	protected int uploadChunkSize;
+
+	/**
+	 * Size of the packets of PacketStream-based responses (0 = one packet per
+	 * received HTTP chunk).
+	 */
+	protected int streamPacketSize;
+
+	/**
+	 * Max delay of an incomplete packet of PacketStream-based responses (in
+	 * milliseconds; 0 = send it at the end of the response).
+	 */
+	protected long streamFlushTimeout = 100;
+
+	/**
+	 * Allocator of the pooled buffers (null = pooled mode is disabled).
+	 */
+	protected ByteBufAllocator pooledAllocator;
+
+	/**
+	 * Responses larger than this size are stored in temp files instead of the
+	 * heap (in bytes; 0 = disabled).
+	 */
+	protected long spillThreshold;
+
+	/**
+	 * Directory of the temp files (null = system's temp directory).
+	 */
+	protected Path spillDirectory;
+
+	/**
+	 * Client-wide limit of the response bytes held in the memory (null = no
+	 * limit).
+	 */
+	protected MemoryBudget memoryBudget;
+
+	/**
+	 * Serialize Tree request bodies into the HTTP chunks (instead of a
+	 * byte-array).
+	 */
+	protected boolean serializeIncrementally;
+
+	/**
+	 * Advertise the supported encodings ("Accept-Encoding") and decompress the
+	 * responses in a streaming way.
+	 */
+	protected boolean decompressResponses;
+
+	/**
+	 * Serialization format of the Tree request bodies (null = JSON, see
+	 * ContentFormats).
+	 */
+	protected String format;
+
+	/**
+	 * JSON parser of the responses (null = datatree's default JSON reader).
+	 */
+	protected TreeReader jsonReader;
+
+	/**
+	 * JSON serializer of the request bodies (null = datatree's default JSON
+	 * writer).
+	 */
+	protected TreeWriter jsonWriter;
+
+	/**
+	 * Executor of the parsing of large responses (null = the common Executor
+	 * of the client).
+	 */
+	protected Executor parseExecutor;
+
+	/**
+	 * Responses larger than this size are parsed by the "parseExecutor",
+	 * instead of Netty's event loop (in bytes; 0 = disabled).
+	 */
+	protected long parseOffloadThreshold;
+
+	/**
+	 * Executor of the Promise continuations (null = Netty's event loop).
+	 */
+	protected Executor callbackExecutor;
+
+	/**
+	 * Continuations running longer than this time on Netty's event loop are
+	 * logged (in milliseconds; 0 = disabled).
+	 */
+	protected long slowCallbackThreshold;
 	
 	// --- INIT HTTP CLIENT ---
 
 	public void start() {
 
+		// Body parts are views of Netty's pooled buffers in pooled mode
+		if (pooledAllocator != null) {
+			setResponseBodyPartFactory(ResponseBodyPartFactory.LAZY);
+		}
+
 		// Build AsyncHttpClient
 		client = new DefaultAsyncHttpClient(build());
 	}
@@ -360,6 +481,22 @@ public class HttpClient extends DefaultAsyncHttpClientConfig.Builder {
 		return post(url, request, null);
 	}
 
+	/**
+	 * Executes an HTTP POST request. The content of the file is sent with
+	 * "Content-Length" header, via zero-copy file transfer (when the
+	 * connection is not encrypted).
+	 *
+	 * @param url
+	 *            A well formed URL.
+	 * @param request
+	 *            Request body as file
+	 * 
+	 * @return {@link Promise}
+	 */
+	public Promise post(String url, Path request) {
+		return post(url, request, null);
+	}
+
 	/**
 	 * Executes an HTTP POST request.
 	 *
@@ -406,6 +543,24 @@ public class HttpClient extends DefaultAsyncHttpClientConfig.Builder {
 		return execute(url, "POST", new PacketStreamConfigurator(configurator, request));
 	}
 
+	/**
+	 * Executes an HTTP POST request. The content of the file is sent with
+	 * "Content-Length" header, via zero-copy file transfer (when the
+	 * connection is not encrypted).
+	 *
+	 * @param url
+	 *            A well formed URL.
+	 * @param request
+	 *            Request body as file
+	 * @param configurator
+	 *            Consumer for set the parameters of the request
+	 * 
+	 * @return {@link Promise}
+	 */
+	public Promise post(String url, Path request, Consumer<RequestParams> configurator) {
+		return execute(url, "POST", new FileConfigurator(configurator, request));
+	}
+
 	/**
 	 * Executes an HTTP PUT request.
 	 *
@@ -446,6 +601,22 @@ public class HttpClient extends DefaultAsyncHttpClientConfig.Builder {
 		return put(url, request, null);
 	}
 
+	/**
+	 * Executes an HTTP PUT request. The content of the file is sent with
+	 * "Content-Length" header, via zero-copy file transfer (when the
+	 * connection is not encrypted).
+	 *
+	 * @param url
+	 *            A well formed URL.
+	 * @param request
+	 *            Request body as file
+	 * 
+	 * @return {@link Promise}
+	 */
+	public Promise put(String url, Path request) {
+		return put(url, request, null);
+	}
+
 	/**
 	 * Executes an HTTP PUT request.
 	 *
@@ -492,6 +663,24 @@ public class HttpClient extends DefaultAsyncHttpClientConfig.Builder {
 		return execute(url, "PUT", new PacketStreamConfigurator(configurator, request));
 	}
 
+	/**
+	 * Executes an HTTP PUT request. The content of the file is sent with
+	 * "Content-Length" header, via zero-copy file transfer (when the
+	 * connection is not encrypted).
+	 *
+	 * @param url
+	 *            A well formed URL.
+	 * @param request
+	 *            Request body as file
+	 * @param configurator
+	 *            Consumer for set the parameters of the request
+	 * 
+	 * @return {@link Promise}
+	 */
+	public Promise put(String url, Path request, Consumer<RequestParams> configurator) {
+		return execute(url, "PUT", new FileConfigurator(configurator, request));
+	}
+
 	/**
 	 * Executes an HTTP DELETE request.
 	 *
@@ -660,6 +849,260 @@ public class HttpClient extends DefaultAsyncHttpClientConfig.Builder {
 		return execute(url, "TRACE", new TreeConfigurator(configurator, request, false));
 	}
 
+	// --- TYPED (RECORD / POJO) REQUESTS ---
+
+	/**
+	 * Executes an HTTP GET request, and binds the response into the specified
+	 * type. See {@link #getAs(String, Class, Consumer)}.
+	 *
+	 * @param url
+	 *            A well formed URL.
+	 * @param type
+	 *            type of the response (record or POJO)
+	 * 
+	 * @return {@link Promise}
+	 */
+	public Promise getAs(String url, Class<?> type) {
+		return getAs(url, type, null);
+	}
+
+	/**
+	 * Executes an HTTP GET request, and binds the response directly into the
+	 * specified record or POJO type (see ObjectBinder), without building a
+	 * Tree structure from the response. The Promise is resolved with a Tree
+	 * that wraps the bound object. Non-2xx responses reject the Promise (with
+	 * an IOException that contains the status code). Usage:
+	 * 
+	 * <pre>
+	 * client.getAs("http://server/path", MyRecord.class, null).then(rsp -> {
+	 * 
+	 * 	// Success
+	 * 	MyRecord record = (MyRecord) rsp.asObject();
+	 * 	String name = record.name();
+	 * 
+	 * }).catchError(err -> {
+	 * 
+	 * 	// Failed (eg. "404 Not Found")
+	 * 
+	 * });
+	 * </pre>
+	 *
+	 * @param url
+	 *            A well formed URL.
+	 * @param type
+	 *            type of the response (record or POJO)
+	 * @param configurator
+	 *            Consumer for set the parameters of the request
+	 * 
+	 * @return {@link Promise}
+	 */
+	public Promise getAs(String url, Class<?> type, Consumer<RequestParams> configurator) {
+		return execute(url, "GET", params -> {
+			if (configurator != null) {
+				configurator.accept(params);
+			}
+			params.bindTo(type);
+		});
+	}
+
+	/**
+	 * Executes an HTTP POST request, and binds the response directly into the
+	 * specified record or POJO type (see
+	 * {@link #getAs(String, Class, Consumer)}).
+	 *
+	 * @param url
+	 *            A well formed URL.
+	 * @param request
+	 *            Request body (JSON structure)
+	 * @param type
+	 *            type of the response (record or POJO)
+	 * @param configurator
+	 *            Consumer for set the parameters of the request
+	 * 
+	 * @return {@link Promise}
+	 */
+	public Promise postAs(String url, Tree request, Class<?> type, Consumer<RequestParams> configurator) {
+		return execute(url, "POST", new TreeConfigurator(params -> {
+			if (configurator != null) {
+				configurator.accept(params);
+			}
+			params.bindTo(type);
+		}, request, true));
+	}
+
+	// --- SEGMENTED (PARALLEL) DOWNLOAD ---
+
+	/**
+	 * Downloads a file over 4 parallel connections (if the server supports
+	 * "Range" requests). See
+	 * {@link #download(String, Path, int, int, Consumer)}.
+	 *
+	 * @param url
+	 *            A well formed URL.
+	 * @param file
+	 *            target file
+	 * 
+	 * @return {@link Promise}
+	 */
+	public Promise download(String url, Path file) {
+		return download(url, file, 4, 3, null);
+	}
+
+	/**
+	 * Downloads a file over parallel connections (if the server supports
+	 * "Range" requests). See
+	 * {@link #download(String, Path, int, int, Consumer)}.
+	 *
+	 * @param url
+	 *            A well formed URL.
+	 * @param file
+	 *            target file
+	 * @param segments
+	 *            max number of parallel connections
+	 * 
+	 * @return {@link Promise}
+	 */
+	public Promise download(String url, Path file, int segments) {
+		return download(url, file, segments, 3, null);
+	}
+
+	/**
+	 * Downloads a file over parallel connections. Probes the URL with a HEAD
+	 * request; if the server supports "Range" requests, and the length of the
+	 * file is known, the file is preallocated, and its segments are downloaded
+	 * concurrently. Otherwise the file is downloaded over one connection.
+	 * Failed segments are continued from the last received byte. Usage:
+	 * 
+	 * <pre>
+	 * client.download("http://server/file.zip", path, 8, 3, null).then(rsp -> {
+	 * 
+	 * 	// Success (rsp = statistics)
+	 * 	long bytesPerSec = rsp.get("throughput", 0L);
+	 * 
+	 * });
+	 * </pre>
+	 *
+	 * @param url
+	 *            A well formed URL.
+	 * @param file
+	 *            target file
+	 * @param segments
+	 *            max number of parallel connections
+	 * @param maxRetries
+	 *            max number of retries per segment
+	 * @param configurator
+	 *            Consumer for set the parameters of the requests (eg. headers)
+	 * 
+	 * @return {@link Promise}
+	 */
+	public Promise download(String url, Path file, int segments, int maxRetries,
+			Consumer<RequestParams> configurator) {
+		return new SegmentedDownload(this, url, file, segments, maxRetries, configurator).start();
+	}
+
+	// --- RESUMABLE DOWNLOAD ---
+
+	/**
+	 * Downloads a file in resumable mode (with max. 3 retries). See
+	 * {@link #downloadResumable(String, Path, int, Consumer)}.
+	 *
+	 * @param url
+	 *            A well formed URL.
+	 * @param file
+	 *            target file
+	 * 
+	 * @return {@link Promise}
+	 */
+	public Promise downloadResumable(String url, Path file) {
+		return downloadResumable(url, file, 3, null);
+	}
+
+	/**
+	 * Downloads a file in resumable mode. The progress and the validators
+	 * ("ETag" and "Last-Modified" headers) are stored in a sidecar file (named
+	 * "[file].resume"). After a failure (or a restart of the process) the
+	 * download continues from the last checkpoint, with "Range" and "If-Range"
+	 * headers, so only the missing bytes are downloaded again. The sidecar file
+	 * is deleted when the download is completed. Usage:
+	 * 
+	 * <pre>
+	 * client.downloadResumable("http://server/file.zip", path, 5, null).then(rsp -> {
+	 * 
+	 * 	// Success
+	 * 	long length = rsp.get("length", 0L);
+	 * 
+	 * });
+	 * </pre>
+	 *
+	 * @param url
+	 *            A well formed URL.
+	 * @param file
+	 *            target file
+	 * @param maxRetries
+	 *            max number of retries
+	 * @param configurator
+	 *            Consumer for set the parameters of the requests (eg. headers)
+	 * 
+	 * @return {@link Promise}
+	 */
+	public Promise downloadResumable(String url, Path file, int maxRetries, Consumer<RequestParams> configurator) {
+		return new ResumableDownload(this, url, file, maxRetries, configurator).start();
+	}
+
+	// --- RESUMABLE (CHUNKED) UPLOAD ---
+
+	/**
+	 * Uploads the content of a PacketStream in resumable mode (in 4 MB parts,
+	 * max. 4 parts in flight, with max. 3 retries per part). See
+	 * {@link #uploadResumable(String, PacketStream, int, int, int, Consumer)}.
+	 *
+	 * @param url
+	 *            A well formed URL.
+	 * @param stream
+	 *            source stream
+	 * 
+	 * @return {@link Promise}
+	 */
+	public Promise uploadResumable(String url, PacketStream stream) {
+		return uploadResumable(url, stream, 4 * 1024 * 1024, 4, 3, null);
+	}
+
+	/**
+	 * Uploads the content of a PacketStream in resumable mode. The stream is
+	 * split into fixed-size parts, and each part is sent in a separate PUT
+	 * request with a "Content-Range" header. When a part fails, only that part
+	 * is sent again, so a transient network error does not restart the whole
+	 * upload. Usage:
+	 * 
+	 * <pre>
+	 * client.uploadResumable("http://server/upload", stream, 1024 * 1024, 4, 5, null).then(rsp -> {
+	 * 
+	 * 	// Success
+	 * 	long length = rsp.get("length", 0L);
+	 * 
+	 * });
+	 * </pre>
+	 *
+	 * @param url
+	 *            A well formed URL.
+	 * @param stream
+	 *            source stream
+	 * @param partSize
+	 *            size of the parts (in bytes)
+	 * @param window
+	 *            max number of parts in flight
+	 * @param maxRetries
+	 *            max number of retries per part
+	 * @param configurator
+	 *            Consumer for set the parameters of the requests (eg. headers)
+	 * 
+	 * @return {@link Promise}
+	 */
+	public Promise uploadResumable(String url, PacketStream stream, int partSize, int window, int maxRetries,
+			Consumer<RequestParams> configurator) {
+		return new ResumableUpload(this, url, partSize, window, maxRetries, configurator).start(stream);
+	}
+
 	// --- WEBSOCKET LISTENER / RECEIVER ---
 
 	public WebSocketConnection ws(String url, WebSocketHandler handler) {
@@ -685,6 +1128,24 @@ public class HttpClient extends DefaultAsyncHttpClientConfig.Builder {
 	protected Promise execute(String url, String method, Consumer<RequestParams> configurator) {
 		RequestParams params = new RequestParams(method, client.getConfig().isDisableUrlEncodingForBoundRequests());
 		params.setUrl(url);
+		params.executor = executor;
+		params.uploadChunkSize = uploadChunkSize;
+		params.streamPacketSize = streamPacketSize;
+		params.streamFlushTimeout = streamFlushTimeout;
+		params.scheduler = getScheduler();
+		params.allocator = pooledAllocator;
+		params.spillThreshold = spillThreshold;
+		params.spillDirectory = spillDirectory;
+		params.memoryBudget = memoryBudget;
+		params.serializeIncrementally = serializeIncrementally;
+		params.decompress = decompressResponses;
+		params.automaticDecompression = client.getConfig().isEnableAutomaticDecompression();
+		params.format = format;
+		params.jsonReader = jsonReader;
+		params.jsonWriter = jsonWriter;
+		params.parseExecutor = parseExecutor;
+		params.parseOffloadThreshold = parseOffloadThreshold;
+		params.callbackExecutor = callbackExecutor;
 		if (signatureCalculator != null) {
 			params.setSignatureCalculator(signatureCalculator);
 		}
@@ -694,12 +1155,66 @@ public class HttpClient extends DefaultAsyncHttpClientConfig.Builder {
 		if (params.handler == null) {
 			if (params.returnBytes) {
 				params.handler = new ResponseToBytes(params);
+			} else if (params.bindType != null) {
+				params.handler = new ResponseToObject(params);
+			} else if (params.parseIncrementally || params.projection != null) {
+				params.handler = new ResponseToStreamedJson(params);
+			} else if (params.parseLazily) {
+				params.handler = new ResponseToLazyJson(params);
 			} else {
 				params.handler = new ResponseToJson(params);				
 			}
 		}		
+		params.applyFormat();
+		params.addDecoder();
+		params.addEncoder();
 		return new Promise(res -> {
-			client.executeRequest(params.build(), new AsyncHandler<Void>() {
+			Request request = params.build();
+			client.executeRequest(request, new AsyncHandler<Void>() {
+
+				private void complete(Object result, Throwable cause) {
+					Executor executor = params.callbackExecutor;
+					if (executor != null) {
+						try {
+							executor.execute(() -> {
+								resolveOrReject(result, cause);
+							});
+							return;
+						} catch (RejectedExecutionException rejected) {
+
+							// Saturated or stopped executor, settle it here
+						}
+					}
+					resolveOrReject(result, cause);
+				}
+
+				private void resolveOrReject(Object result, Throwable cause) {
+					if (slowCallbackThreshold < 1 || !(Thread.currentThread() instanceof FastThreadLocalThread)) {
+						if (cause == null) {
+							res.resolve(result);
+						} else {
+							res.reject(cause);
+						}
+						return;
+					}
+
+					// Measure the continuations (they run on Netty's event loop)
+					long start = System.nanoTime();
+					try {
+						if (cause == null) {
+							res.resolve(result);
+						} else {
+							res.reject(cause);
+						}
+					} finally {
+						long duration = (System.nanoTime() - start) / 1000000L;
+						if (duration >= slowCallbackThreshold) {
+							logger.warn("Slow Promise continuation on I/O thread \"" + Thread.currentThread().getName()
+									+ "\" (" + duration + " msec, " + request.getMethod() + " " + request.getUrl()
+									+ "). Blocking code should run on a \"callbackExecutor\".");
+						}
+					}
+				}
 
 				@Override
 				public State onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
@@ -725,6 +1240,20 @@ public class HttpClient extends DefaultAsyncHttpClientConfig.Builder {
 					return params.handler.onBodyPartReceived(bodyPart);
 				}
 
+				@Override
+				public void onTcpConnectSuccess(InetSocketAddress remoteAddress, Channel connection) {
+					if (params.handler != null) {
+						params.handler.onTcpConnectSuccess(remoteAddress, connection);
+					}
+				}
+
+				@Override
+				public void onConnectionPooled(Channel connection) {
+					if (params.handler != null) {
+						params.handler.onConnectionPooled(connection);
+					}
+				}
+
 				@Override
 				public void onThrowable(Throwable error) {
 					try {
@@ -732,21 +1261,43 @@ public class HttpClient extends DefaultAsyncHttpClientConfig.Builder {
 							params.handler.onThrowable(error);
 						}
 					} finally {
-						res.reject(error);
+						complete(null, error);
 					}
 				}
 
 				@Override
 				public Void onCompleted() throws Exception {
+					if (params.isParsingOffloaded()) {
+
+						// Parse the large response outside of the event loop
+						try {
+							params.getParseExecutor().execute(() -> {
+								Object result = null;
+								Throwable cause = null;
+								try {
+									result = params.handler.onCompleted();
+								} catch (Throwable error) {
+									cause = error;
+								} finally {
+									complete(result, cause);
+								}
+							});
+							return null;
+						} catch (RejectedExecutionException rejected) {
+
+							// Saturated or stopped executor, parse it here
+						}
+					}
 					Object result = null;
+					Throwable cause = null;
 					try {
 						if (params.handler != null) {
 							result = params.handler.onCompleted();
 						}
 					} catch (Throwable error) {
-						res.reject(error);
+						cause = error;
 					} finally {
-						res.resolve(result);
+						complete(result, cause);
 					}
 					return null;
 				}
@@ -761,6 +1312,16 @@ public class HttpClient extends DefaultAsyncHttpClientConfig.Builder {
 		return client;
 	}
 
+	/**
+	 * Returns the client-wide memory budget of the responses (eg. for
+	 * monitoring its utilization).
+	 * 
+	 * @return memory budget (or null if it is not set)
+	 */
+	public MemoryBudget getMemoryBudget() {
+		return memoryBudget;
+	}
+
 	protected ScheduledExecutorService getScheduler() {
 		if (scheduler == null) {
 			scheduler = client.getEventLoopGroup();
@@ -787,4 +1348,320 @@ public class HttpClient extends DefaultAsyncHttpClientConfig.Builder {
 		return this;
 	}
 
+	/**
+	 * Set the Executor for the tasks that should not run on Netty's event loop
+	 * (eg. writing into a slow PacketStream).
+	 * 
+	 * @param executor
+	 *            custom Executor
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setExecutor(Executor executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Set the max size of the HTTP chunks of PacketStream-based uploads. When
+	 * the producer emits many small packets, the queued packets are coalesced
+	 * into one chunk (up to this size). Zero means one packet per chunk.
+	 * 
+	 * @param uploadChunkSize
+	 *            max size of a chunk in bytes (eg. 65536)
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setUploadChunkSize(int uploadChunkSize) {
+		this.uploadChunkSize = uploadChunkSize;
+		return this;
+	}
+
+	/**
+	 * Set the minimum size of the packets when a response is redirected into
+	 * a PacketStream. Small HTTP chunks are aggregated into packets of this
+	 * size, larger chunks are forwarded whole. Zero means one packet per
+	 * received HTTP chunk.
+	 * 
+	 * @param streamPacketSize
+	 *            size of a packet in bytes (eg. 65536)
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setStreamPacketSize(int streamPacketSize) {
+		this.streamPacketSize = streamPacketSize;
+		return this;
+	}
+
+	/**
+	 * Set the max delay of an incomplete packet when a response is redirected
+	 * into a PacketStream (default is 100 milliseconds).
+	 * 
+	 * @param streamFlushTimeout
+	 *            timeout in milliseconds
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setStreamFlushTimeout(long streamFlushTimeout) {
+		this.streamFlushTimeout = streamFlushTimeout;
+		return this;
+	}
+
+	/**
+	 * Enable or disable pooled mode (disabled by default). In pooled mode the
+	 * body parts of the responses are not copied into new arrays; the
+	 * built-in response handlers read them directly from Netty's pooled
+	 * buffers, and they store the incomplete bodies in pooled buffers (which
+	 * are released when the response is completed or failed). Custom
+	 * AsyncHandlers (see "RequestParams.transferTo") must not keep references
+	 * to the body parts after the "onBodyPartReceived" call in pooled mode.
+	 * Must be set before "start()".
+	 * 
+	 * @param pooledBuffers
+	 *            true = enable pooled mode
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setPooledBuffers(boolean pooledBuffers) {
+		this.pooledAllocator = pooledBuffers ? PooledByteBufAllocator.DEFAULT : null;
+		return this;
+	}
+
+	/**
+	 * Set the max size of the response bodies stored in the heap (when the
+	 * response is returned as JSON or byte-array). Larger bodies are written
+	 * into temp files, which are memory-mapped when the response is complete,
+	 * and deleted after processing. Zero disables this feature (default).
+	 * 
+	 * @param spillThreshold
+	 *            threshold in bytes (eg. 16777216)
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setSpillThreshold(long spillThreshold) {
+		this.spillThreshold = spillThreshold;
+		return this;
+	}
+
+	/**
+	 * Set the directory of the temp files of large responses (see
+	 * "setSpillThreshold"). Default is the system's temp directory.
+	 * 
+	 * @param spillDirectory
+	 *            directory of the temp files
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setSpillDirectory(Path spillDirectory) {
+		this.spillDirectory = spillDirectory;
+		return this;
+	}
+
+	/**
+	 * Set the max number of response bytes held in the memory by all
+	 * concurrent requests (JSON and byte-array responses). When the budget is
+	 * exhausted, the client pauses reading the responses until the completed
+	 * responses free up space.
+	 * 
+	 * @param maxBytes
+	 *            limit in bytes (0 = no limit)
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setMemoryBudget(long maxBytes) {
+		return setMemoryBudget(maxBytes, false);
+	}
+
+	/**
+	 * Set the max number of response bytes held in the memory by all
+	 * concurrent requests (JSON and byte-array responses). When the budget is
+	 * exhausted, the client pauses reading the responses, or fails the
+	 * request that exceeded the budget (if "failOnOverflow" is true).
+	 * 
+	 * @param maxBytes
+	 *            limit in bytes (0 = no limit)
+	 * @param failOnOverflow
+	 *            true = fail the request, false = pause reading
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setMemoryBudget(long maxBytes, boolean failOnOverflow) {
+		this.memoryBudget = maxBytes > 0 ? new MemoryBudget(maxBytes, failOnOverflow) : null;
+		return this;
+	}
+
+	/**
+	 * Enable or disable incremental serialization of Tree request bodies
+	 * (disabled by default). When enabled, the JSON request bodies are
+	 * serialized directly into the buffers of the HTTP chunks, instead of a
+	 * byte-array (the requests are sent without "Content-Length" header, in
+	 * chunked mode). The memory usage remains constant, regardless of the
+	 * size of the request.
+	 * 
+	 * @param serializeIncrementally
+	 *            true = serialize chunk by chunk
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setSerializeIncrementally(boolean serializeIncrementally) {
+		this.serializeIncrementally = serializeIncrementally;
+		return this;
+	}
+
+	/**
+	 * Enable or disable the streaming decompression of the responses (disabled
+	 * by default). When enabled, the client sends an "Accept-Encoding" header
+	 * (gzip, deflate, and br / zstd when Brotli4j / zstd-jni is on the
+	 * classpath), and decodes the compressed responses chunk by chunk, before
+	 * the response handlers (including PacketStream, OutputStream and file
+	 * targets). Range requests (eg. segmented downloads) are not affected.
+	 * This replaces the built-in decompression of the AsyncHttpClient (which
+	 * is disabled by this method), so responses of requests with a custom
+	 * "Accept-Encoding" header are returned undecoded.
+	 * 
+	 * @param decompressResponses
+	 *            true = decompress the responses
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setDecompressResponses(boolean decompressResponses) {
+		this.decompressResponses = decompressResponses;
+
+		// Netty's HttpContentDecompressor would decode (and strip the
+		// "Content-Encoding" header) before the ResponseDecoder
+		setEnableAutomaticDecompression(!decompressResponses);
+		return this;
+	}
+
+	/**
+	 * Set the default serialization format of the requests (see
+	 * "RequestParams.setFormat"). Tree request bodies are serialized in this
+	 * format, and the "Accept" header requests this format. The responses are
+	 * parsed by their "Content-Type" header (JSON or binary). Default is JSON,
+	 * without "Accept" header.
+	 * 
+	 * @param format
+	 *            "json", "msgpack", "cbor", "smile", "bson" or "ion"
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setFormat(String format) {
+		if (format != null) {
+
+			// Check the format name
+			ContentFormats.getContentType(format);
+			format = format.toLowerCase();
+		}
+		this.format = format;
+		return this;
+	}
+
+	/**
+	 * Set the JSON parser of the responses (eg. the Jackson or DSL-JSON
+	 * adapter of the datatree library), independently of the global JSON
+	 * reader of datatree. Null means datatree's default JSON reader. See
+	 * "JsonBackendBenchmark" in the test sources to compare the adapters.
+	 * 
+	 * @param jsonReader
+	 *            JSON reader
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setJsonReader(TreeReader jsonReader) {
+		this.jsonReader = jsonReader;
+		return this;
+	}
+
+	/**
+	 * Set the JSON serializer of the Tree request bodies, independently of the
+	 * global JSON writer of datatree. Null means datatree's default JSON
+	 * writer.
+	 * 
+	 * @param jsonWriter
+	 *            JSON writer
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setJsonWriter(TreeWriter jsonWriter) {
+		this.jsonWriter = jsonWriter;
+		return this;
+	}
+
+	/**
+	 * Set the Executor of the parsing of large responses (eg. a dedicated
+	 * thread pool, or "Executors.newVirtualThreadPerTaskExecutor()" on Java
+	 * 21+). Default is the common Executor of the client (see "setExecutor").
+	 * 
+	 * @param parseExecutor
+	 *            custom Executor
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setParseExecutor(Executor parseExecutor) {
+		this.parseExecutor = parseExecutor;
+		return this;
+	}
+
+	/**
+	 * Set the size above which the JSON (and binary) responses are parsed by
+	 * the "parseExecutor", instead of Netty's event loop. Parsing a huge
+	 * response on the event loop delays all other connections of the same
+	 * event loop; small responses are parsed inline (the hand-off would cost
+	 * more than the parsing). Zero disables this feature (default).
+	 * 
+	 * @param parseOffloadThreshold
+	 *            threshold in bytes (eg. 262144)
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setParseOffloadThreshold(long parseOffloadThreshold) {
+		this.parseOffloadThreshold = parseOffloadThreshold;
+		return this;
+	}
+
+	/**
+	 * Set the Executor of the Promise continuations (the "then" blocks of the
+	 * Promises returned by the "get", "post", etc. methods). By default
+	 * (null), the continuations run inline, on Netty's event loop, so a slow
+	 * or blocking continuation stalls all other requests of the event loop.
+	 * Options:
+	 * <ul>
+	 * <li>null or "Runnable::run" - inline, on the I/O thread (fastest for
+	 * non-blocking continuations)
+	 * <li>"Executors.newFixedThreadPool(n)" - dedicated thread pool
+	 * <li>"Executors.newVirtualThreadPerTaskExecutor()" - virtual threads
+	 * (Java 21+)
+	 * <li>the Executor of the calling service (eg. the common Executor of the
+	 * ServiceBroker)
+	 * </ul>
+	 * It can be overridden per request (see
+	 * "RequestParams.setCallbackExecutor"). If the Executor rejects the task
+	 * (eg. it has been shut down), the continuations run inline.
+	 * 
+	 * @param callbackExecutor
+	 *            custom Executor (or null)
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setCallbackExecutor(Executor callbackExecutor) {
+		this.callbackExecutor = callbackExecutor;
+		return this;
+	}
+
+	/**
+	 * Set the time limit of the Promise continuations running on Netty's
+	 * event loop. Slower continuations are logged with a warning (these
+	 * continuations should run on a "callbackExecutor"). Zero disables the
+	 * detection (default).
+	 * 
+	 * @param slowCallbackThreshold
+	 *            time limit in milliseconds (eg. 100)
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public DefaultAsyncHttpClientConfig.Builder setSlowCallbackThreshold(long slowCallbackThreshold) {
+		this.slowCallbackThreshold = slowCallbackThreshold;
+		return this;
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.io.IOException;
+
+/**
+ * Unexpected status code of an HTTP response (eg. "404 Not Found" for a
+ * download). Used by the retrying transfers (SegmentedDownload,
+ * ResumableDownload, ResumableUpload) to separate transient errors (5xx,
+ * "408 Request Timeout", "416 Range Not Satisfiable", "429 Too Many
+ * Requests") from permanent client errors (other 4xx codes), which are not
+ * retried.
+ */
+public class HttpStatusException extends IOException {
+
+	// --- CONSTANTS ---
+
+	private static final long serialVersionUID = 4128075563254071521L;
+
+	// --- VARIABLES ---
+
+	protected final int status;
+
+	// --- CONSTRUCTOR ---
+
+	public HttpStatusException(String message, int status) {
+		super(message);
+		this.status = status;
+	}
+
+	// --- PROPERTY GETTERS ---
+
+	/**
+	 * Returns the status code of the response.
+	 * 
+	 * @return HTTP status code
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Returns true if the request can be repeated (the error is transient).
+	 * 
+	 * @return true = retryable error
+	 */
+	public boolean isRetryable() {
+		return status < 400 || status > 499 || status == 408 || status == 416 || status == 429;
+	}
+
+	// --- UTILITIES ---
+
+	/**
+	 * Returns false if the cause (or one of its causes) is a permanent
+	 * HttpStatusException. Other errors (eg. closed connections) are
+	 * retryable.
+	 * 
+	 * @param cause
+	 *            error of the request (or null)
+	 * 
+	 * @return true = retryable error
+	 */
+	public static boolean isRetryable(Throwable cause) {
+		while (cause != null) {
+			if (cause instanceof HttpStatusException) {
+				return ((HttpStatusException) cause).isRetryable();
+			}
+			cause = cause.getCause();
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,462 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Non-blocking (push-style) JSON parser. The bytes of the JSON document can be
+ * passed in arbitrary pieces (eg. the body parts of a HTTP response); the
+ * parser builds the Java representation of the document (Maps, Lists, Strings,
+ * Numbers, Booleans and nulls) while the parts arrive. Usage:
+ * 
+ * <pre>
+ * IncrementalJsonParser parser = new IncrementalJsonParser();
+ * parser.feed(part1);
+ * parser.feed(part2);
+ * Object document = parser.finish();
+ * </pre>
+ */
+public class IncrementalJsonParser {
+
+	// --- PARSER STATES ---
+
+	protected static final int EXPECT_VALUE = 0;
+	protected static final int EXPECT_VALUE_OR_END = 1;
+	protected static final int EXPECT_KEY_OR_END = 2;
+	protected static final int EXPECT_KEY = 3;
+	protected static final int EXPECT_COLON = 4;
+	protected static final int AFTER_VALUE = 5;
+	protected static final int STRING = 6;
+	protected static final int ESCAPE = 7;
+	protected static final int UNICODE = 8;
+	protected static final int NUMBER = 9;
+	protected static final int LITERAL = 10;
+
+	// --- VARIABLES ---
+
+	protected int state = EXPECT_VALUE;
+
+	/**
+	 * Stack of the open Maps and Lists.
+	 */
+	protected final ArrayList<Object> stack = new ArrayList<>();
+
+	/**
+	 * Name of the next field (in the current Map).
+	 */
+	protected String fieldName;
+
+	/**
+	 * Parsed document.
+	 */
+	protected Object root;
+
+	/**
+	 * Any non-whitespace character received.
+	 */
+	protected boolean started;
+
+	/**
+	 * Number of processed bytes (for error messages).
+	 */
+	protected long offset;
+
+	// --- STRING / NUMBER / LITERAL BUFFERS ---
+
+	protected boolean key;
+	protected byte[] bytes = new byte[64];
+	protected int length;
+	protected StringBuilder chars;
+	protected int unicode;
+	protected int unicodeDigits;
+	protected String literal;
+	protected int literalIndex;
+
+	// --- FEED DATA ---
+
+	/**
+	 * Parses the next part of the JSON document.
+	 * 
+	 * @param buffer
+	 *            next part of the document
+	 * 
+	 * @throws IOException
+	 *             syntax error
+	 */
+	public void feed(ByteBuffer buffer) throws IOException {
+		int limit = buffer.limit();
+		for (int i = buffer.position(); i < limit; i++) {
+			process(buffer.get(i));
+		}
+		buffer.position(limit);
+	}
+
+	/**
+	 * Parses the next part of the JSON document.
+	 * 
+	 * @param part
+	 *            next part of the document
+	 * @param off
+	 *            start offset in the array
+	 * @param len
+	 *            number of bytes to process
+	 * 
+	 * @throws IOException
+	 *             syntax error
+	 */
+	public void feed(byte[] part, int off, int len) throws IOException {
+		int end = off + len;
+		for (int i = off; i < end; i++) {
+			process(part[i]);
+		}
+	}
+
+	// --- FINISH PARSING ---
+
+	/**
+	 * Returns the parsed document. Must be called after the last part.
+	 * 
+	 * @return parsed document (Map, List, String, Number, Boolean or null)
+	 * 
+	 * @throws IOException
+	 *             unexpected end of the document
+	 */
+	public Object finish() throws IOException {
+		if (state == NUMBER) {
+			addValue(parseNumber());
+		}
+		if (state != AFTER_VALUE || !stack.isEmpty()) {
+			throw new IOException("Unexpected end of JSON document at offset " + offset + "!");
+		}
+		return root;
+	}
+
+	/**
+	 * Returns true if the parser received any non-whitespace character.
+	 * 
+	 * @return true if the document is not empty
+	 */
+	public boolean isStarted() {
+		return started;
+	}
+
+	// --- PARSER ---
+
+	protected void process(byte b) throws IOException {
+		for (;;) {
+			switch (state) {
+			case STRING:
+				if (b == '"') {
+					String s = parseString();
+					if (key) {
+						fieldName = s;
+						state = EXPECT_COLON;
+					} else {
+						addValue(s);
+					}
+				} else if (b == '\\') {
+					flushBytes();
+					state = ESCAPE;
+				} else if (b >= 0 && b < 0x20) {
+					throw syntaxError(b);
+				} else {
+					appendByte(b);
+				}
+				break;
+			case ESCAPE:
+				state = STRING;
+				switch (b) {
+				case '"':
+				case '\\':
+				case '/':
+					chars.append((char) b);
+					break;
+				case 'b':
+					chars.append('\b');
+					break;
+				case 'f':
+					chars.append('\f');
+					break;
+				case 'n':
+					chars.append('\n');
+					break;
+				case 'r':
+					chars.append('\r');
+					break;
+				case 't':
+					chars.append('\t');
+					break;
+				case 'u':
+					unicode = 0;
+					unicodeDigits = 0;
+					state = UNICODE;
+					break;
+				default:
+					throw syntaxError(b);
+				}
+				break;
+			case UNICODE:
+				int digit = Character.digit(b, 16);
+				if (digit < 0) {
+					throw syntaxError(b);
+				}
+				unicode = (unicode << 4) | digit;
+				if (++unicodeDigits == 4) {
+					chars.append((char) unicode);
+					state = STRING;
+				}
+				break;
+			case NUMBER:
+				if ((b >= '0' && b <= '9') || b == '.' || b == 'e' || b == 'E' || b == '-' || b == '+') {
+					appendByte(b);
+					break;
+				}
+
+				// End of number, process this byte again
+				addValue(parseNumber());
+				continue;
+			case LITERAL:
+				if (b != literal.charAt(literalIndex)) {
+					throw syntaxError(b);
+				}
+				if (++literalIndex == literal.length()) {
+					addValue(literal.charAt(0) == 't' ? Boolean.TRUE : literal.charAt(0) == 'f' ? Boolean.FALSE : null);
+				}
+				break;
+			default:
+				if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+					break;
+				}
+				started = true;
+				processStructural(b);
+			}
+			offset++;
+			return;
+		}
+	}
+
+	protected void processStructural(byte b) throws IOException {
+		switch (state) {
+		case EXPECT_VALUE_OR_END:
+			if (b == ']') {
+				closeContainer();
+				return;
+			}
+			startValue(b);
+			return;
+		case EXPECT_VALUE:
+			startValue(b);
+			return;
+		case EXPECT_KEY_OR_END:
+			if (b == '}') {
+				closeContainer();
+				return;
+			}
+			startKey(b);
+			return;
+		case EXPECT_KEY:
+			startKey(b);
+			return;
+		case EXPECT_COLON:
+			if (b != ':') {
+				throw syntaxError(b);
+			}
+			state = EXPECT_VALUE;
+			return;
+		case AFTER_VALUE:
+			if (stack.isEmpty()) {
+				throw syntaxError(b);
+			}
+			Object top = stack.get(stack.size() - 1);
+			if (b == ',') {
+				state = top instanceof Map ? EXPECT_KEY : EXPECT_VALUE;
+			} else if ((b == '}' && top instanceof Map) || (b == ']' && top instanceof List)) {
+				closeContainer();
+			} else {
+				throw syntaxError(b);
+			}
+			return;
+		default:
+			throw syntaxError(b);
+		}
+	}
+
+	protected void startKey(byte b) throws IOException {
+		if (b != '"') {
+			throw syntaxError(b);
+		}
+		startString(true);
+	}
+
+	protected void startValue(byte b) throws IOException {
+		switch (b) {
+		case '{':
+			openContainer(new LinkedHashMap<String, Object>());
+			state = EXPECT_KEY_OR_END;
+			return;
+		case '[':
+			openContainer(new ArrayList<Object>());
+			state = EXPECT_VALUE_OR_END;
+			return;
+		case '"':
+			startString(false);
+			return;
+		case 't':
+			startLiteral("true");
+			return;
+		case 'f':
+			startLiteral("false");
+			return;
+		case 'n':
+			startLiteral("null");
+			return;
+		default:
+			if (b == '-' || (b >= '0' && b <= '9')) {
+				length = 0;
+				appendByte(b);
+				state = NUMBER;
+				return;
+			}
+			throw syntaxError(b);
+		}
+	}
+
+	protected void startString(boolean key) {
+		this.key = key;
+		length = 0;
+		chars = null;
+		state = STRING;
+	}
+
+	protected void startLiteral(String literal) {
+		this.literal = literal;
+		literalIndex = 1;
+		state = LITERAL;
+	}
+
+	// --- BUILD DOCUMENT ---
+
+	protected void openContainer(Object container) throws IOException {
+		addValue(container);
+		stack.add(container);
+	}
+
+	protected void closeContainer() {
+		stack.remove(stack.size() - 1);
+		state = AFTER_VALUE;
+	}
+
+	@SuppressWarnings("unchecked")
+	protected void addValue(Object value) throws IOException {
+		if (stack.isEmpty()) {
+			if (root != null) {
+				throw new IOException("Multiple root elements in JSON document at offset " + offset + "!");
+			}
+			root = value;
+		} else {
+			Object top = stack.get(stack.size() - 1);
+			if (top instanceof Map) {
+				((Map<String, Object>) top).put(fieldName, value);
+				fieldName = null;
+			} else {
+				((List<Object>) top).add(value);
+			}
+		}
+		state = AFTER_VALUE;
+	}
+
+	// --- PARSE STRINGS AND NUMBERS ---
+
+	protected void appendByte(byte b) {
+		if (length == bytes.length) {
+			byte[] expanded = new byte[bytes.length * 2];
+			System.arraycopy(bytes, 0, expanded, 0, length);
+			bytes = expanded;
+		}
+		bytes[length++] = b;
+	}
+
+	protected void flushBytes() {
+		if (chars == null) {
+			chars = new StringBuilder(Math.max(16, length * 2));
+		}
+
+		// The escape character is ASCII, so the buffer ends at a character
+		// boundary
+		chars.append(new String(bytes, 0, length, StandardCharsets.UTF_8));
+		length = 0;
+	}
+
+	protected String parseString() {
+		if (chars == null) {
+			return new String(bytes, 0, length, StandardCharsets.UTF_8);
+		}
+		if (length > 0) {
+			flushBytes();
+		}
+		String s = chars.toString();
+		chars = null;
+		return s;
+	}
+
+	protected Object parseNumber() throws IOException {
+		String s = new String(bytes, 0, length, StandardCharsets.US_ASCII);
+		try {
+			for (int i = 0; i < length; i++) {
+				byte b = bytes[i];
+				if (b == '.' || b == 'e' || b == 'E') {
+					return Double.parseDouble(s);
+				}
+			}
+			if (length < 19) {
+				long value = Long.parseLong(s);
+				if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+					return (int) value;
+				}
+				return value;
+			}
+			BigInteger value = new BigInteger(s);
+			if (value.bitLength() < 64) {
+				return value.longValue();
+			}
+			return value;
+		} catch (NumberFormatException cause) {
+			throw new IOException("Invalid number in JSON document at offset " + offset + ": " + s, cause);
+		}
+	}
+
+	protected IOException syntaxError(byte b) {
+		return new IOException("Unexpected character ('" + (char) (b & 0xFF) + "') in JSON document at offset " + offset + "!");
+	}
+
+}
\ No newline at end of file
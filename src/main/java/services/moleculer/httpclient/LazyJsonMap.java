@@ -0,0 +1,231 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import io.datatree.Tree;
+import io.datatree.dom.TreeReader;
+
+/**
+ * Lazy root of a JSON object response. Holds the raw response bytes, and
+ * parses them only on the first structural access (eg. "rsp.get(...)",
+ * "rsp.size()" or iteration). The "_meta" entry (status code and headers of
+ * the response) is stored separately, so reading the meta data does not
+ * trigger the parsing. While the body is not parsed, the raw bytes can be
+ * forwarded without re-serialization (see "RequestParams.setBody(Tree)").
+ * "isEmpty()" does not parse the body.
+ * Parse errors are thrown (as IllegalArgumentException) at the first access.
+ */
+public class LazyJsonMap extends AbstractMap<String, Object> {
+
+	// --- CONSTANTS ---
+
+	/**
+	 * Key of the meta structure in the root Map of a Tree.
+	 */
+	protected static final String META = "_meta";
+
+	// --- VARIABLES ---
+
+	protected final TreeReader reader;
+
+	/**
+	 * Raw JSON bytes (null after parsing).
+	 */
+	protected byte[] raw;
+
+	/**
+	 * Parsed content (null = not parsed).
+	 */
+	protected Map<String, Object> map;
+
+	/**
+	 * Meta structure (before parsing).
+	 */
+	protected Object meta;
+
+	// --- CONSTRUCTOR ---
+
+	public LazyJsonMap(byte[] raw, TreeReader reader) {
+		this.raw = raw;
+		this.reader = reader;
+	}
+
+	// --- PARSING ---
+
+	@SuppressWarnings("unchecked")
+	protected synchronized Map<String, Object> map() {
+		if (map == null) {
+			Object parsed;
+			try {
+				parsed = reader == null ? new Tree(raw).asObject() : reader.parse(raw);
+			} catch (Exception cause) {
+				throw new IllegalArgumentException("Unable to parse JSON response!", cause);
+			}
+			if (parsed instanceof Map) {
+				map = (Map<String, Object>) parsed;
+			} else {
+				map = new LinkedHashMap<>();
+			}
+			if (meta != null) {
+				map.put(META, meta);
+				meta = null;
+			}
+			raw = null;
+		}
+		return map;
+	}
+
+	/**
+	 * Returns true if the JSON body has been parsed.
+	 * 
+	 * @return true = parsed
+	 */
+	public synchronized boolean isParsed() {
+		return map != null;
+	}
+
+	/**
+	 * Returns the raw (unmodified) JSON bytes, if the body has not been
+	 * parsed yet.
+	 * 
+	 * @return raw bytes, or null if the body has been parsed
+	 */
+	public synchronized byte[] getRawBytes() {
+		return raw;
+	}
+
+	// --- MAP IMPLEMENTATION ---
+
+	@Override
+	public synchronized Object get(Object key) {
+		if (map == null && META.equals(key)) {
+			return meta;
+		}
+		return map().get(key);
+	}
+
+	@Override
+	public synchronized Object put(String key, Object value) {
+		if (map == null && META.equals(key)) {
+			Object previous = meta;
+			meta = value;
+			return previous;
+		}
+		return map().put(key, value);
+	}
+
+	@Override
+	public synchronized Object remove(Object key) {
+		if (map == null && META.equals(key)) {
+			Object previous = meta;
+			meta = null;
+			return previous;
+		}
+		return map().remove(key);
+	}
+
+	@Override
+	public synchronized boolean containsKey(Object key) {
+		if (map == null && META.equals(key)) {
+			return meta != null;
+		}
+		return map().containsKey(key);
+	}
+
+	@Override
+	public synchronized int size() {
+		if (map == null && isEmptyObject(raw)) {
+			return meta == null ? 0 : 1;
+		}
+		return map().size();
+	}
+
+	@Override
+	public synchronized boolean isEmpty() {
+		if (map == null) {
+
+			// Does not parse the body (the raw bytes remain forwardable)
+			return meta == null && isEmptyObject(raw);
+		}
+		return map.isEmpty();
+	}
+
+	/**
+	 * Returns true if the raw JSON bytes are parsed into an empty Map (an
+	 * empty JSON object, or not a JSON object). Syntax errors are detected
+	 * later, at the first structural access.
+	 * 
+	 * @param bytes
+	 *            raw JSON bytes
+	 * 
+	 * @return true = empty structure
+	 */
+	protected static boolean isEmptyObject(byte[] bytes) {
+		int i = skipWhitespace(bytes, 0);
+		if (i == bytes.length || bytes[i] != '{') {
+			return true;
+		}
+		i = skipWhitespace(bytes, i + 1);
+		return i < bytes.length && bytes[i] == '}';
+	}
+
+	protected static int skipWhitespace(byte[] bytes, int i) {
+		while (i < bytes.length) {
+			byte b = bytes[i];
+			if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+				break;
+			}
+			i++;
+		}
+		return i;
+	}
+
+	@Override
+	public void clear() {
+		map().clear();
+	}
+
+	@Override
+	public Set<String> keySet() {
+		return map().keySet();
+	}
+
+	@Override
+	public Collection<Object> values() {
+		return map().values();
+	}
+
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		return map().entrySet();
+	}
+
+}
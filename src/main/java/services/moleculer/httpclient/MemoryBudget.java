@@ -0,0 +1,247 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client-wide limit of the response bytes held in the memory by the response
+ * handlers (across all concurrent requests). The handlers reserve bytes from
+ * the budget as the body parts arrive, and they release them when the
+ * response is completed (or failed). When the budget is exhausted, the
+ * handler either pauses reading from the connection (until the other
+ * responses release their bytes), or fails the request (in "failOnOverflow"
+ * mode). In pause mode one request (the first one that exceeded the budget)
+ * is allowed to continue, otherwise the paused requests could wait for each
+ * other forever.<br>
+ * <br>
+ * The budget covers the handlers that hold the body in the heap: byte-array,
+ * JSON, lazy JSON, incrementally parsed JSON (including the selected paths and
+ * the bound objects) and binary formats. When the "Content-Length" is known,
+ * the whole body is reserved before the presized array is allocated. Bodies
+ * spilled to temp files, and the handlers that write the response into a
+ * stream, channel or file, are not counted.
+ */
+public class MemoryBudget {
+
+	// --- VARIABLES ---
+
+	/**
+	 * Max number of bytes.
+	 */
+	protected final long limit;
+
+	/**
+	 * Fail the request instead of pausing it.
+	 */
+	protected final boolean failOnOverflow;
+
+	/**
+	 * Number of reserved bytes.
+	 */
+	protected final AtomicLong used = new AtomicLong();
+
+	/**
+	 * Max number of reserved bytes (since the client was started).
+	 */
+	protected final AtomicLong peak = new AtomicLong();
+
+	/**
+	 * Number of paused reads.
+	 */
+	protected final AtomicLong paused = new AtomicLong();
+
+	/**
+	 * Number of failed requests.
+	 */
+	protected final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Paused handlers (waiting for free space).
+	 */
+	protected final LinkedHashSet<ResponseHandler> waiting = new LinkedHashSet<>();
+
+	/**
+	 * The handler that may continue when the budget is exhausted.
+	 */
+	protected ResponseHandler leader;
+
+	// --- CONSTRUCTOR ---
+
+	public MemoryBudget(long limit, boolean failOnOverflow) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Invalid memory budget (" + limit + " bytes)!");
+		}
+		this.limit = limit;
+		this.failOnOverflow = failOnOverflow;
+	}
+
+	// --- RESERVE / RELEASE ---
+
+	/**
+	 * Reserves the specified number of bytes.
+	 * 
+	 * @param handler
+	 *            response handler
+	 * @param bytes
+	 *            number of bytes
+	 * 
+	 * @throws IOException
+	 *             if the budget is exhausted (in "failOnOverflow" mode)
+	 */
+	protected void reserve(ResponseHandler handler, long bytes) throws IOException {
+		long total = used.addAndGet(bytes);
+		long max = peak.get();
+		while (total > max && !peak.compareAndSet(max, total)) {
+			max = peak.get();
+		}
+		if (total <= limit) {
+			return;
+		}
+		if (failOnOverflow) {
+			used.addAndGet(-bytes);
+			rejected.incrementAndGet();
+			throw new IOException("Response memory budget exceeded (limit: " + limit + " bytes, in use: "
+					+ (total - bytes) + " bytes, requested: " + bytes + " bytes)!");
+		}
+		synchronized (this) {
+			if (leader == null || leader == handler) {
+				leader = handler;
+				return;
+			}
+			if (waiting.add(handler)) {
+				paused.incrementAndGet();
+				handler.pauseReading();
+			}
+		}
+	}
+
+	/**
+	 * Releases the bytes of the specified handler (when the response is
+	 * completed or failed, or when the data is moved out of the heap).
+	 * 
+	 * @param handler
+	 *            response handler
+	 * @param bytes
+	 *            number of reserved bytes
+	 * @param finished
+	 *            the handler is finished (completed or failed)
+	 */
+	protected void release(ResponseHandler handler, long bytes, boolean finished) {
+		long total = bytes == 0 ? used.get() : used.addAndGet(-bytes);
+		synchronized (this) {
+			if (finished) {
+				if (leader == handler) {
+					leader = null;
+				}
+				waiting.remove(handler);
+			}
+			if (total < limit && !waiting.isEmpty()) {
+				for (ResponseHandler next : waiting) {
+					next.resumeReading();
+				}
+				waiting.clear();
+			}
+		}
+	}
+
+	// --- METRICS ---
+
+	/**
+	 * Returns the max number of bytes.
+	 * 
+	 * @return limit in bytes
+	 */
+	public long getLimit() {
+		return limit;
+	}
+
+	/**
+	 * Returns the number of currently reserved bytes.
+	 * 
+	 * @return number of bytes
+	 */
+	public long getUsedBytes() {
+		return used.get();
+	}
+
+	/**
+	 * Returns the max number of reserved bytes.
+	 * 
+	 * @return number of bytes
+	 */
+	public long getPeakBytes() {
+		return peak.get();
+	}
+
+	/**
+	 * Returns the utilization of the budget (0 = empty, 1 = full; may be
+	 * larger than 1 in pause mode).
+	 * 
+	 * @return utilization
+	 */
+	public double getUtilization() {
+		return (double) used.get() / limit;
+	}
+
+	/**
+	 * Returns the number of paused reads.
+	 * 
+	 * @return number of pauses
+	 */
+	public long getPausedCount() {
+		return paused.get();
+	}
+
+	/**
+	 * Returns the number of currently paused requests.
+	 * 
+	 * @return number of requests
+	 */
+	public synchronized int getWaitingCount() {
+		return waiting.size();
+	}
+
+	/**
+	 * Returns the number of requests failed by this budget.
+	 * 
+	 * @return number of requests
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * Fail the request instead of pausing it.
+	 * 
+	 * @return true = fail, false = pause
+	 */
+	public boolean isFailOnOverflow() {
+		return failOnOverflow;
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,288 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+import org.asynchttpclient.request.body.Body;
+import org.asynchttpclient.request.body.generator.FeedListener;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Streamed "multipart/form-data" request body. The boundaries and the headers
+ * of the parts are generated on the fly; the contents of the parts are read
+ * from byte-arrays, files (chunk by chunk) and PacketStreams (through bounded
+ * queues, see PacketStreamBody). The Content-Length is known only if the
+ * lengths of all parts are known, otherwise the request is sent in chunked
+ * mode.
+ */
+public class MultipartBody implements Body {
+
+	// --- CONSTANTS ---
+
+	protected static final byte[] CRLF = { '\r', '\n' };
+
+	// --- VARIABLES ---
+
+	protected final String boundary;
+	protected final ArrayList<Part> parts = new ArrayList<>();
+
+	/**
+	 * Index of the current part.
+	 */
+	protected int index;
+
+	/**
+	 * The header of the current part has been written.
+	 */
+	protected boolean started;
+
+	/**
+	 * The closing boundary has been written.
+	 */
+	protected boolean finished;
+
+	// --- CONSTRUCTOR ---
+
+	public MultipartBody(String boundary) {
+		this.boundary = boundary;
+	}
+
+	// --- ADD PART ---
+
+	protected void addPart(String name, String fileName, String contentType, Part part) {
+		StringBuilder header = new StringBuilder(128);
+		header.append("--").append(boundary).append("\r\n");
+		header.append("Content-Disposition: form-data; name=\"").append(escape(name)).append('"');
+		if (fileName != null) {
+			header.append("; filename=\"").append(escape(fileName)).append('"');
+		}
+		header.append("\r\n");
+		if (contentType != null) {
+			header.append("Content-Type: ").append(contentType).append("\r\n");
+		}
+		header.append("\r\n");
+		part.header = header.toString().getBytes(StandardCharsets.UTF_8);
+		parts.add(part);
+	}
+
+	protected static String escape(String value) {
+		return value.replace("\"", "%22").replace("\r", "%0D").replace("\n", "%0A");
+	}
+
+	// --- BODY IMPLEMENTATION ---
+
+	@Override
+	public long getContentLength() {
+		long length = 0;
+		for (Part part : parts) {
+			long size = part.getContentLength();
+			if (size < 0) {
+				return -1;
+			}
+			length += part.header.length + size + CRLF.length;
+		}
+		return length + getClosingBoundary().length;
+	}
+
+	@Override
+	public BodyState transferTo(ByteBuf target) throws IOException {
+		int start = target.writerIndex();
+		while (target.isWritable()) {
+			if (index == parts.size()) {
+				if (!finished) {
+					finished = true;
+					target.writeBytes(getClosingBoundary());
+				}
+				return BodyState.STOP;
+			}
+			Part part = parts.get(index);
+			if (!started) {
+				started = true;
+				target.writeBytes(part.header);
+			}
+			BodyState state = part.transferTo(target);
+			if (state == BodyState.STOP) {
+				target.writeBytes(CRLF);
+				part.close();
+				started = false;
+				index++;
+			} else if (state == BodyState.SUSPEND) {
+
+				// The chunk must be sent with the CONTINUE state, if it is not
+				// empty (otherwise the chunk is released)
+				return target.writerIndex() > start ? BodyState.CONTINUE : BodyState.SUSPEND;
+			}
+		}
+		return BodyState.CONTINUE;
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOException error = null;
+		for (Part part : parts) {
+			try {
+				part.close();
+			} catch (IOException cause) {
+				error = cause;
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+
+	protected void setListener(FeedListener listener) {
+		for (Part part : parts) {
+			part.setListener(listener);
+		}
+	}
+
+	protected byte[] getClosingBoundary() {
+		return ("--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+	}
+
+	// --- PARTS ---
+
+	protected abstract static class Part {
+
+		protected byte[] header;
+
+		protected abstract long getContentLength();
+
+		protected abstract BodyState transferTo(ByteBuf target) throws IOException;
+
+		protected void setListener(FeedListener listener) {
+		}
+
+		protected void close() throws IOException {
+		}
+
+	}
+
+	protected static class BytesPart extends Part {
+
+		protected final byte[] content;
+		protected int offset;
+
+		protected BytesPart(byte[] content) {
+			this.content = content;
+		}
+
+		@Override
+		protected long getContentLength() {
+			return content.length;
+		}
+
+		@Override
+		protected BodyState transferTo(ByteBuf target) {
+			int len = Math.min(target.writableBytes(), content.length - offset);
+			target.writeBytes(content, offset, len);
+			offset += len;
+			return offset == content.length ? BodyState.STOP : BodyState.CONTINUE;
+		}
+
+	}
+
+	protected static class FilePart extends Part {
+
+		protected final Path file;
+		protected final long length;
+
+		protected FileChannel channel;
+		protected long position;
+
+		protected FilePart(Path file) {
+			this.file = file;
+			this.length = file.toFile().length();
+		}
+
+		@Override
+		protected long getContentLength() {
+			return length;
+		}
+
+		@Override
+		protected BodyState transferTo(ByteBuf target) throws IOException {
+			if (channel == null) {
+				channel = FileChannel.open(file, StandardOpenOption.READ);
+			}
+			int len = (int) Math.min(target.writableBytes(), length - position);
+			if (len > 0) {
+				int read = target.writeBytes(channel, position, len);
+				if (read < 0) {
+					throw new IOException("Unexpected end of file (" + file + ")!");
+				}
+				position += read;
+			}
+			return position >= length ? BodyState.STOP : BodyState.CONTINUE;
+		}
+
+		@Override
+		protected void close() throws IOException {
+			if (channel != null) {
+				channel.close();
+			}
+		}
+
+	}
+
+	protected static class StreamPart extends Part {
+
+		protected final PacketStreamBody body;
+
+		protected StreamPart(PacketStreamBody body) {
+			this.body = body;
+		}
+
+		@Override
+		protected long getContentLength() {
+			return body.getContentLength();
+		}
+
+		@Override
+		protected BodyState transferTo(ByteBuf target) throws IOException {
+			return body.transferTo(target);
+		}
+
+		@Override
+		protected void setListener(FeedListener listener) {
+			body.setListener(listener);
+		}
+
+		@Override
+		protected void close() throws IOException {
+			body.close();
+		}
+
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,266 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.asynchttpclient.request.body.Body;
+import org.asynchttpclient.request.body.generator.FeedListener;
+import org.asynchttpclient.request.body.generator.FeedableBodyGenerator;
+
+import io.datatree.Tree;
+import io.netty.buffer.ByteBuf;
+import services.moleculer.stream.PacketStream;
+
+/**
+ * Streamed "multipart/form-data" body generator. Usage:
+ * 
+ * <pre>
+ * MultipartBodyGenerator multipart = new MultipartBodyGenerator();
+ * multipart.addFields(tree);
+ * multipart.addFile("file1", path);
+ * multipart.addStream("file2", "data.bin", stream, -1);
+ * 
+ * client.post("http://server/path", params -> {
+ * 	params.setBody(multipart);
+ * }).then(rsp -> {
+ * 
+ * 	// Success
+ * 
+ * });
+ * </pre>
+ */
+public class MultipartBodyGenerator implements FeedableBodyGenerator {
+
+	// --- CONSTANTS ---
+
+	/**
+	 * Content-Type of the file and stream parts.
+	 */
+	public static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+	/**
+	 * Default watermarks of the queues of PacketStream parts.
+	 */
+	public static final long DEFAULT_LOW_WATERMARK = 256 * 1024;
+	public static final long DEFAULT_HIGH_WATERMARK = 1024 * 1024;
+
+	// --- VARIABLES ---
+
+	protected final MultipartBody body;
+
+	// --- CONSTRUCTORS ---
+
+	public MultipartBodyGenerator() {
+		this("MoleculerBoundary" + Long.toHexString(ThreadLocalRandom.current().nextLong())
+				+ Long.toHexString(ThreadLocalRandom.current().nextLong()));
+	}
+
+	public MultipartBodyGenerator(String boundary) {
+		body = new MultipartBody(boundary);
+	}
+
+	// --- ADD PARTS ---
+
+	/**
+	 * Adds a text field.
+	 * 
+	 * @param name
+	 *            name of the field
+	 * @param value
+	 *            value of the field
+	 * 
+	 * @return this generator (for method chaining)
+	 */
+	public MultipartBodyGenerator addField(String name, String value) {
+		body.addPart(name, null, null,
+				new MultipartBody.BytesPart(value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8)));
+		return this;
+	}
+
+	/**
+	 * Adds the first-level elements of the Tree as text fields (structures
+	 * are added in JSON format).
+	 * 
+	 * @param fields
+	 *            fields of the form
+	 * 
+	 * @return this generator (for method chaining)
+	 */
+	public MultipartBodyGenerator addFields(Tree fields) {
+		if (fields != null) {
+			for (Tree field : fields) {
+				if (field.isPrimitive() || field.isNull()) {
+					addField(field.getName(), field.asString());
+				} else {
+					addField(field.getName(), field.toString(null, false, false));
+				}
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Adds a file part from a byte-array.
+	 * 
+	 * @param name
+	 *            name of the field
+	 * @param fileName
+	 *            name of the file (or null)
+	 * @param content
+	 *            content of the file
+	 * @param contentType
+	 *            MIME type of the content
+	 * 
+	 * @return this generator (for method chaining)
+	 */
+	public MultipartBodyGenerator addBytes(String name, String fileName, byte[] content, String contentType) {
+		body.addPart(name, fileName, contentType, new MultipartBody.BytesPart(content));
+		return this;
+	}
+
+	/**
+	 * Adds a file part (the file is read chunk by chunk, when the connection
+	 * is ready to send the next chunk).
+	 * 
+	 * @param name
+	 *            name of the field
+	 * @param file
+	 *            source file
+	 * 
+	 * @return this generator (for method chaining)
+	 */
+	public MultipartBodyGenerator addFile(String name, Path file) {
+		return addFile(name, file, DEFAULT_CONTENT_TYPE);
+	}
+
+	/**
+	 * Adds a file part (the file is read chunk by chunk, when the connection
+	 * is ready to send the next chunk).
+	 * 
+	 * @param name
+	 *            name of the field
+	 * @param file
+	 *            source file
+	 * @param contentType
+	 *            MIME type of the content
+	 * 
+	 * @return this generator (for method chaining)
+	 */
+	public MultipartBodyGenerator addFile(String name, Path file, String contentType) {
+		body.addPart(name, String.valueOf(file.getFileName()), contentType, new MultipartBody.FilePart(file));
+		return this;
+	}
+
+	/**
+	 * Adds a file part, which is read from a PacketStream (with the default
+	 * watermarks).
+	 * 
+	 * @param name
+	 *            name of the field
+	 * @param fileName
+	 *            name of the file
+	 * @param stream
+	 *            source PacketStream
+	 * @param length
+	 *            length of the content (in bytes, or -1 if unknown)
+	 * 
+	 * @return this generator (for method chaining)
+	 */
+	public MultipartBodyGenerator addStream(String name, String fileName, PacketStream stream, long length) {
+		return addStream(name, fileName, stream, length, DEFAULT_CONTENT_TYPE, DEFAULT_LOW_WATERMARK,
+				DEFAULT_HIGH_WATERMARK);
+	}
+
+	/**
+	 * Adds a file part, which is read from a PacketStream. When the size of
+	 * the queued (not yet sent) packets exceeds the "highWatermark", the
+	 * producer thread is blocked until the size of the queue falls below the
+	 * "lowWatermark" (see PacketStreamBody).
+	 * 
+	 * @param name
+	 *            name of the field
+	 * @param fileName
+	 *            name of the file
+	 * @param stream
+	 *            source PacketStream
+	 * @param length
+	 *            length of the content (in bytes, or -1 if unknown)
+	 * @param contentType
+	 *            MIME type of the content
+	 * @param lowWatermark
+	 *            producer is released below this size of queued bytes
+	 * @param highWatermark
+	 *            producer is blocked above this size of queued bytes
+	 * 
+	 * @return this generator (for method chaining)
+	 */
+	public MultipartBodyGenerator addStream(String name, String fileName, PacketStream stream, long length,
+			String contentType, long lowWatermark, long highWatermark) {
+		body.addPart(name, fileName, contentType, new MultipartBody.StreamPart(
+				new PacketStreamBody(stream, length, lowWatermark, highWatermark)));
+		return this;
+	}
+
+	// --- BODY GENERATOR ---
+
+	@Override
+	public Body createBody() {
+		return body;
+	}
+
+	@Override
+	public boolean feed(ByteBuf buffer, boolean isLast) throws Exception {
+		return false;
+	}
+
+	@Override
+	public void setListener(FeedListener listener) {
+		body.setListener(listener);
+	}
+
+	// --- GETTERS ---
+
+	/**
+	 * Returns the boundary of the parts.
+	 * 
+	 * @return boundary
+	 */
+	public String getBoundary() {
+		return body.boundary;
+	}
+
+	/**
+	 * Returns the value of the "Content-Type" header of the request.
+	 * 
+	 * @return Content-Type
+	 */
+	public String getContentType() {
+		return "multipart/form-data; boundary=" + body.boundary;
+	}
+
+}
\ No newline at end of file
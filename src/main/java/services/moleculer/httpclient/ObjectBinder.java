@@ -0,0 +1,483 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.datatree.Tree;
+import services.moleculer.util.CheckedTree;
+
+/**
+ * Binds parsed JSON values (Maps, Lists, Strings, Numbers, Booleans and nulls,
+ * see IncrementalJsonParser) into Java records and POJOs, without creating
+ * Tree objects. The binders are created once per type (using reflection) and
+ * cached. Supported target types: records (by the canonical constructor),
+ * classes with a no-arg constructor (by the non-static, non-transient
+ * fields), primitives and their wrappers, String, BigDecimal, BigInteger,
+ * enums, arrays, Lists, Sets, Collections, Maps with String keys, Tree and
+ * Object. Unknown JSON properties are ignored; missing properties get default
+ * values (null, 0 or false).
+ */
+public final class ObjectBinder {
+
+	// --- BINDER INTERFACE ---
+
+	@FunctionalInterface
+	protected interface Binder {
+		Object bind(Object value) throws Exception;
+	}
+
+	// --- CACHE OF BINDERS ---
+
+	private static final ConcurrentHashMap<Type, Binder> binders = new ConcurrentHashMap<>();
+
+	// --- CONSTRUCTOR ---
+
+	private ObjectBinder() {
+	}
+
+	// --- PUBLIC API ---
+
+	/**
+	 * Converts the parsed JSON value into the specified type.
+	 * 
+	 * @param value
+	 *            parsed JSON value (eg. a Map)
+	 * @param type
+	 *            target type (eg. MyRecord.class)
+	 * 
+	 * @return converted value
+	 * 
+	 * @throws Exception
+	 *             if the value is not convertible
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T bind(Object value, Class<T> type) throws Exception {
+		return (T) forType(type).bind(value);
+	}
+
+	// --- BINDER FACTORY ---
+
+	protected static Binder forType(Type type) {
+		Binder binder = binders.get(type);
+		if (binder == null) {
+			binder = create(type);
+			Binder previous = binders.putIfAbsent(type, binder);
+			if (previous != null) {
+				binder = previous;
+			}
+		}
+		return binder;
+	}
+
+	protected static Binder create(Type type) {
+		if (type instanceof WildcardType) {
+			return forType(((WildcardType) type).getUpperBounds()[0]);
+		}
+		if (type instanceof GenericArrayType) {
+			Type componentType = ((GenericArrayType) type).getGenericComponentType();
+			return arrayBinder(rawClass(componentType), componentType);
+		}
+		if (type instanceof ParameterizedType) {
+			ParameterizedType parameterized = (ParameterizedType) type;
+			Class<?> raw = rawClass(parameterized);
+			Type[] arguments = parameterized.getActualTypeArguments();
+			if (Map.class.isAssignableFrom(raw)) {
+				return mapBinder(arguments[1]);
+			}
+			if (Collection.class.isAssignableFrom(raw)) {
+				return collectionBinder(raw, arguments[0]);
+			}
+			return forType(raw);
+		}
+		if (!(type instanceof Class)) {
+
+			// Type variable
+			return value -> value;
+		}
+		Class<?> c = (Class<?>) type;
+		if (c == Object.class) {
+			return value -> value;
+		}
+		if (c == Tree.class) {
+			return value -> value == null ? null : new CheckedTree(value);
+		}
+		if (c == String.class) {
+			return value -> value == null ? null : value.toString();
+		}
+		if (c.isPrimitive() || Number.class.isAssignableFrom(c) || c == Boolean.class || c == Character.class) {
+			return scalarBinder(c);
+		}
+		if (c.isEnum()) {
+			return enumBinder(c);
+		}
+		if (c.isArray()) {
+			return arrayBinder(c.getComponentType(), c.getComponentType());
+		}
+		if (Map.class.isAssignableFrom(c)) {
+			return mapBinder(Object.class);
+		}
+		if (Collection.class.isAssignableFrom(c)) {
+			return collectionBinder(c, Object.class);
+		}
+		if (c.isRecord()) {
+			return new RecordBinder(c);
+		}
+		return new PojoBinder(c);
+	}
+
+	// --- SCALARS ---
+
+	protected static Binder scalarBinder(Class<?> c) {
+		if (c == int.class || c == Integer.class) {
+			Object defaultValue = c.isPrimitive() ? Integer.valueOf(0) : null;
+			return value -> value == null ? defaultValue : (Object) toNumber(value).intValue();
+		}
+		if (c == long.class || c == Long.class) {
+			Object defaultValue = c.isPrimitive() ? Long.valueOf(0) : null;
+			return value -> value == null ? defaultValue : (Object) toNumber(value).longValue();
+		}
+		if (c == double.class || c == Double.class) {
+			Object defaultValue = c.isPrimitive() ? Double.valueOf(0) : null;
+			return value -> value == null ? defaultValue : (Object) toNumber(value).doubleValue();
+		}
+		if (c == float.class || c == Float.class) {
+			Object defaultValue = c.isPrimitive() ? Float.valueOf(0) : null;
+			return value -> value == null ? defaultValue : (Object) toNumber(value).floatValue();
+		}
+		if (c == short.class || c == Short.class) {
+			Object defaultValue = c.isPrimitive() ? Short.valueOf((short) 0) : null;
+			return value -> value == null ? defaultValue : (Object) toNumber(value).shortValue();
+		}
+		if (c == byte.class || c == Byte.class) {
+			Object defaultValue = c.isPrimitive() ? Byte.valueOf((byte) 0) : null;
+			return value -> value == null ? defaultValue : (Object) toNumber(value).byteValue();
+		}
+		if (c == boolean.class || c == Boolean.class) {
+			Object defaultValue = c.isPrimitive() ? Boolean.FALSE : null;
+			return value -> {
+				if (value == null) {
+					return defaultValue;
+				}
+				return value instanceof Boolean ? value : Boolean.valueOf(value.toString());
+			};
+		}
+		if (c == char.class || c == Character.class) {
+			Object defaultValue = c.isPrimitive() ? Character.valueOf((char) 0) : null;
+			return value -> {
+				String s = value == null ? "" : value.toString();
+				return s.isEmpty() ? defaultValue : (Object) s.charAt(0);
+			};
+		}
+		if (c == BigDecimal.class) {
+			return value -> value == null ? null : new BigDecimal(value.toString());
+		}
+		if (c == BigInteger.class) {
+			return value -> value == null ? null : new BigInteger(toNumber(value).toString());
+		}
+		return value -> {
+			if (value == null || c.isInstance(value)) {
+				return value;
+			}
+			throw new IllegalArgumentException("Unable to convert " + value.getClass() + " to " + c + "!");
+		};
+	}
+
+	protected static Number toNumber(Object value) {
+		if (value instanceof Number) {
+			return (Number) value;
+		}
+		if (value instanceof Boolean) {
+			return ((Boolean) value) ? 1 : 0;
+		}
+		return new BigDecimal(value.toString().trim());
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected static Binder enumBinder(Class<?> c) {
+		return value -> value == null ? null : Enum.valueOf((Class<? extends Enum>) c, value.toString());
+	}
+
+	// --- ARRAYS AND COLLECTIONS ---
+
+	protected static Binder arrayBinder(Class<?> componentClass, Type componentType) {
+		return new Binder() {
+
+			private Binder component;
+
+			@Override
+			public Object bind(Object value) throws Exception {
+				if (value == null) {
+					return null;
+				}
+				if (component == null) {
+					component = forType(componentType);
+				}
+				List<?> list = toList(value);
+				Object array = Array.newInstance(componentClass, list.size());
+				for (int i = 0; i < list.size(); i++) {
+					Array.set(array, i, component.bind(list.get(i)));
+				}
+				return array;
+			}
+
+		};
+	}
+
+	protected static Binder collectionBinder(Class<?> raw, Type elementType) {
+		boolean set = Set.class.isAssignableFrom(raw);
+		return new Binder() {
+
+			private Binder element;
+
+			@Override
+			public Object bind(Object value) throws Exception {
+				if (value == null) {
+					return null;
+				}
+				if (element == null) {
+					element = forType(elementType);
+				}
+				List<?> list = toList(value);
+				Collection<Object> collection = set ? new LinkedHashSet<>(list.size() * 2)
+						: new ArrayList<>(list.size());
+				for (Object item : list) {
+					collection.add(element.bind(item));
+				}
+				return collection;
+			}
+
+		};
+	}
+
+	protected static Binder mapBinder(Type valueType) {
+		return new Binder() {
+
+			private Binder element;
+
+			@Override
+			public Object bind(Object value) throws Exception {
+				if (value == null) {
+					return null;
+				}
+				if (element == null) {
+					element = forType(valueType);
+				}
+				Map<String, Object> source = toMap(value);
+				LinkedHashMap<String, Object> map = new LinkedHashMap<>(source.size() * 2);
+				for (Map.Entry<String, Object> entry : source.entrySet()) {
+					map.put(entry.getKey(), element.bind(entry.getValue()));
+				}
+				return map;
+			}
+
+		};
+	}
+
+	// --- RECORDS ---
+
+	protected static final class RecordBinder implements Binder {
+
+		private final Class<?> type;
+		private final String[] names;
+		private final Type[] types;
+		private final Constructor<?> constructor;
+		private volatile Binder[] components;
+
+		private RecordBinder(Class<?> type) {
+			this.type = type;
+			RecordComponent[] recordComponents = type.getRecordComponents();
+			names = new String[recordComponents.length];
+			types = new Type[recordComponents.length];
+			Class<?>[] parameterTypes = new Class<?>[recordComponents.length];
+			for (int i = 0; i < recordComponents.length; i++) {
+				names[i] = recordComponents[i].getName();
+				types[i] = recordComponents[i].getGenericType();
+				parameterTypes[i] = recordComponents[i].getType();
+			}
+			try {
+				constructor = type.getDeclaredConstructor(parameterTypes);
+				constructor.setAccessible(true);
+			} catch (Exception cause) {
+				throw new IllegalArgumentException("Unable to bind " + type + "!", cause);
+			}
+		}
+
+		@Override
+		public Object bind(Object value) throws Exception {
+			if (value == null) {
+				return null;
+			}
+			Binder[] binders = components;
+			if (binders == null) {
+				binders = new Binder[types.length];
+				for (int i = 0; i < types.length; i++) {
+					binders[i] = forType(types[i]);
+				}
+				components = binders;
+			}
+			Map<String, Object> map = toMap(value);
+			Object[] args = new Object[names.length];
+			for (int i = 0; i < names.length; i++) {
+				args[i] = binders[i].bind(map.get(names[i]));
+			}
+			try {
+				return constructor.newInstance(args);
+			} catch (Exception cause) {
+				throw new IllegalArgumentException("Unable to create " + type + "!", cause);
+			}
+		}
+
+	}
+
+	// --- POJOS ---
+
+	protected static final class PojoBinder implements Binder {
+
+		private final Class<?> type;
+		private final Constructor<?> constructor;
+		private final HashMap<String, Field> fields = new HashMap<>();
+		private final ConcurrentHashMap<String, Binder> fieldBinders = new ConcurrentHashMap<>();
+
+		private PojoBinder(Class<?> type) {
+			this.type = type;
+			try {
+				constructor = type.getDeclaredConstructor();
+				constructor.setAccessible(true);
+			} catch (Exception cause) {
+				throw new IllegalArgumentException("Unable to bind " + type + " (no-arg constructor is missing)!",
+						cause);
+			}
+			for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					int modifiers = field.getModifiers();
+					if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)
+							|| fields.containsKey(field.getName())) {
+						continue;
+					}
+					field.setAccessible(true);
+					fields.put(field.getName(), field);
+				}
+			}
+		}
+
+		@Override
+		public Object bind(Object value) throws Exception {
+			if (value == null) {
+				return null;
+			}
+			Object instance;
+			try {
+				instance = constructor.newInstance();
+			} catch (Exception cause) {
+				throw new IllegalArgumentException("Unable to create " + type + "!", cause);
+			}
+			for (Map.Entry<String, Object> entry : toMap(value).entrySet()) {
+				Field field = fields.get(entry.getKey());
+				if (field == null) {
+					continue;
+				}
+				Binder binder = fieldBinders.get(field.getName());
+				if (binder == null) {
+					binder = forType(field.getGenericType());
+					fieldBinders.put(field.getName(), binder);
+				}
+				Object fieldValue = binder.bind(entry.getValue());
+				if (fieldValue != null || !field.getType().isPrimitive()) {
+					field.set(instance, fieldValue);
+				}
+			}
+			return instance;
+		}
+
+	}
+
+	// --- UTILITIES ---
+
+	protected static Class<?> rawClass(Type type) {
+		if (type instanceof Class) {
+			return (Class<?>) type;
+		}
+		if (type instanceof ParameterizedType) {
+			return (Class<?>) ((ParameterizedType) type).getRawType();
+		}
+		if (type instanceof GenericArrayType) {
+			return Array.newInstance(rawClass(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+		}
+		return Object.class;
+	}
+
+	@SuppressWarnings("unchecked")
+	protected static Map<String, Object> toMap(Object value) {
+		if (value instanceof Map) {
+			return (Map<String, Object>) value;
+		}
+		if (value instanceof Tree) {
+			return toMap(((Tree) value).asObject());
+		}
+		throw new IllegalArgumentException("JSON object expected (" + value.getClass() + ")!");
+	}
+
+	protected static List<?> toList(Object value) {
+		if (value instanceof List) {
+			return (List<?>) value;
+		}
+		if (value instanceof Collection) {
+			return new ArrayList<>((Collection<?>) value);
+		}
+		if (value instanceof Tree) {
+			return toList(((Tree) value).asObject());
+		}
+		if (value != null && value.getClass().isArray()) {
+			int length = Array.getLength(value);
+			ArrayList<Object> list = new ArrayList<>(length);
+			for (int i = 0; i < length; i++) {
+				list.add(Array.get(value, i));
+			}
+			return list;
+		}
+		throw new IllegalArgumentException("JSON array expected (" + value.getClass() + ")!");
+	}
+
+}
@@ -26,15 +26,25 @@ package services.moleculer.httpclient;
 
 import java.io.IOException;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.asynchttpclient.request.body.Body;
 import org.asynchttpclient.request.body.generator.FeedListener;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocalThread;
 import services.moleculer.stream.PacketStream;
 
 /**
- * PacketStream-based request body.
+ * PacketStream-based request body. If the "highWatermark" is greater than
+ * zero, the queue is bounded: when the size of the queued packets exceeds the
+ * "highWatermark", the thread of the producer (which calls the
+ * "PacketStream.sendData" method) is blocked until the size falls below the
+ * "lowWatermark". Netty's event loop threads are never blocked.<br>
+ * <br>
+ * If the "chunkSize" is greater than zero, small packets are coalesced: one
+ * HTTP chunk contains as many queued packets as fit into the "chunkSize".
  */
 public class PacketStreamBody implements Body {
 
@@ -43,19 +53,50 @@ public class PacketStreamBody implements Body {
 	protected final ConcurrentLinkedQueue<byte[]> queue = new ConcurrentLinkedQueue<>();
 	protected final PacketStream stream;
 	protected final long contentLength;
+
+	// --- BOUNDED QUEUE ---
+
+	protected final long lowWatermark;
+	protected final long highWatermark;
+
+	protected final AtomicInteger queuedPackets = new AtomicInteger();
+	protected final AtomicLong queuedBytes = new AtomicLong();
+	protected final Object lock = new Object();
+	protected volatile boolean closed;
+
+	// --- CHUNK COALESCING ---
+
+	protected volatile int chunkSize;
+
+	/**
+	 * Number of the already sent bytes of the first queued packet (when the
+	 * packet did not fit into the target buffer).
+	 */
+	protected int headOffset;
 	
-	// --- CONSTRUCTOR ---
+	// --- CONSTRUCTORS ---
 	
 	public PacketStreamBody(PacketStream stream, long contentLength) {
+		this(stream, contentLength, 0, 0);
+	}
+
+	public PacketStreamBody(PacketStream stream, long contentLength, long lowWatermark, long highWatermark) {
 		this.stream = stream;
 		this.contentLength = contentLength;
+		this.lowWatermark = Math.min(lowWatermark, highWatermark);
+		this.highWatermark = highWatermark;
 	}
 
 	public void setListener(FeedListener listener) {
 		stream.onPacket((data, error, close) -> {
 			if (data != null && data.length > 0) {
 				queue.add(data);
+				queuedPackets.incrementAndGet();
+				long size = queuedBytes.addAndGet(data.length);
 				listener.onContentAdded();
+				if (highWatermark > 0 && size > highWatermark) {
+					waitForConsumer();
+				}
 			} else if (error != null) {
 				listener.onError(error);
 			}
@@ -65,9 +106,31 @@ public class PacketStreamBody implements Body {
 			}
 		});		
 	}
+
+	protected void waitForConsumer() {
+		if (Thread.currentThread() instanceof FastThreadLocalThread) {
+
+			// Do not block Netty's event loop
+			return;
+		}
+		synchronized (lock) {
+			while (!closed && queuedBytes.get() > lowWatermark) {
+				try {
+					lock.wait(1000);
+				} catch (InterruptedException interrupt) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
 	
 	@Override
 	public void close() throws IOException {
+		closed = true;
+		synchronized (lock) {
+			lock.notifyAll();
+		}
 		stream.sendClose();
 	}
 
@@ -78,15 +141,95 @@ public class PacketStreamBody implements Body {
 
 	@Override
 	public BodyState transferTo(ByteBuf target) throws IOException {
-		byte[] data = queue.poll();
+		byte[] data = queue.peek();
 		if (data == null) {
 			return BodyState.SUSPEND;
 		}
 		if (data.length == 0) {
+			queue.poll();
 			return BodyState.STOP;
 		}
-		target.writeBytes(data);
+
+		// Copy as many packets as fit into the chunk (at least one). The end
+		// marker (empty array) remains in the queue for the next call, because
+		// the chunk must be sent with the CONTINUE state.
+		int limit = chunkSize;
+		int packets = 0;
+		long bytes = 0;
+		while (data != null && data.length > 0) {
+			int length = data.length - headOffset;
+			if (bytes > 0 && bytes + length > limit) {
+				break;
+			}
+			int writable = target.maxWritableBytes();
+			if (length > writable) {
+
+				// The packet is larger than the target buffer, the rest of the
+				// packet is sent in the next chunk
+				target.writeBytes(data, headOffset, writable);
+				headOffset += writable;
+				bytes += writable;
+				break;
+			}
+			queue.poll();
+			target.writeBytes(data, headOffset, length);
+			headOffset = 0;
+			packets++;
+			bytes += length;
+			if (limit < 1) {
+				break;
+			}
+			data = queue.peek();
+		}
+		consumed(packets, bytes);
 		return BodyState.CONTINUE;
 	}
 
+	protected void consumed(int packets, long bytes) {
+		queuedPackets.addAndGet(-packets);
+		long size = queuedBytes.addAndGet(-bytes);
+		if (highWatermark > 0 && size <= lowWatermark) {
+			synchronized (lock) {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	// --- CHUNK SIZE ---
+
+	/**
+	 * Sets the max size of the coalesced HTTP chunks (0 = one packet per
+	 * chunk).
+	 * 
+	 * @param chunkSize
+	 *            max size of a chunk in bytes
+	 */
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	// --- MONITORING ---
+
+	/**
+	 * Returns the number of the queued (not yet sent) packets.
+	 * 
+	 * @return number of packets
+	 */
+	public int getQueuedPackets() {
+		return queuedPackets.get();
+	}
+
+	/**
+	 * Returns the size of the queued (not yet sent) packets.
+	 * 
+	 * @return number of bytes
+	 */
+	public long getQueuedBytes() {
+		return queuedBytes.get();
+	}
+
 }
\ No newline at end of file
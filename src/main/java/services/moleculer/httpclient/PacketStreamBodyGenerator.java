@@ -46,6 +46,11 @@ public class PacketStreamBodyGenerator implements FeedableBodyGenerator {
 		body = new PacketStreamBody(stream, contentLength);
 	}
 
+	public PacketStreamBodyGenerator(PacketStream stream, long contentLength, long lowWatermark,
+			long highWatermark) {
+		body = new PacketStreamBody(stream, contentLength, lowWatermark, highWatermark);
+	}
+
 	@Override
 	public Body createBody() {
 		return body;
@@ -61,4 +66,15 @@ public class PacketStreamBodyGenerator implements FeedableBodyGenerator {
 		body.setListener(listener);
 	}
 
+	// --- GETTERS ---
+
+	/**
+	 * Returns the request body (eg. for monitoring the size of the queue).
+	 * 
+	 * @return request body
+	 */
+	public PacketStreamBody getBody() {
+		return body;
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,305 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming JSON filter (projection). Materializes only the subtrees of the
+ * selected JSON paths; all other values are skipped at the token level (no
+ * Maps, Lists or Strings are created for them). The result has the same
+ * structure as the original document, but contains only the selected values
+ * (and their parent containers). Path syntax:
+ * 
+ * <pre>
+ * data.items[*].id  - the "id" fields of all elements of the "items" array
+ * meta.total        - one field
+ * items[0]          - the first element of an array
+ * data.*.name       - the "name" field of all properties of "data"
+ * </pre>
+ * 
+ * The selected elements of arrays are kept in their original order (the
+ * skipped elements are removed, so the indexes may change). Usage:
+ * 
+ * <pre>
+ * ProjectingJsonParser parser = new ProjectingJsonParser(Arrays.asList("meta.total"));
+ * parser.feed(part1);
+ * parser.feed(part2);
+ * Object document = parser.finish();
+ * </pre>
+ */
+public class ProjectingJsonParser extends IncrementalJsonParser {
+
+	// --- CONSTANTS ---
+
+	/**
+	 * Wildcard path segment ("*" or "[*]").
+	 */
+	protected static final Object WILDCARD = new Object();
+
+	/**
+	 * Placeholders of the skipped containers (on the parser's stack).
+	 */
+	protected static final Map<String, Object> SKIPPED_MAP = Collections.unmodifiableMap(new HashMap<>());
+	protected static final List<Object> SKIPPED_LIST = Collections.unmodifiableList(new ArrayList<>());
+
+	protected static final Object[] EMPTY_PATH = new Object[0];
+
+	// --- MATCH RESULTS ---
+
+	protected static final int NONE = 0;
+	protected static final int PREFIX = 1;
+	protected static final int FULL = 2;
+
+	// --- VARIABLES ---
+
+	/**
+	 * Compiled paths (segments are field names, array indexes or WILDCARDs).
+	 */
+	protected final Object[][] patterns;
+
+	/**
+	 * Open containers (parallel with the parser's stack).
+	 */
+	protected final ArrayList<Frame> frames = new ArrayList<>();
+
+	/**
+	 * The current value is skipped.
+	 */
+	protected boolean skipCurrent;
+
+	/**
+	 * The current value is fully selected.
+	 */
+	protected boolean fullCurrent;
+
+	/**
+	 * Path segment of the current value (field name or index).
+	 */
+	protected Object currentSegment;
+
+	// --- CONSTRUCTOR ---
+
+	public ProjectingJsonParser(Collection<String> paths) {
+		patterns = new Object[paths.size()][];
+		int i = 0;
+		for (String path : paths) {
+			patterns[i++] = compile(path);
+		}
+	}
+
+	// --- PATH COMPILER ---
+
+	protected static Object[] compile(String path) {
+		String p = path.trim();
+		if (p.startsWith("$")) {
+			p = p.substring(1);
+		}
+		ArrayList<Object> segments = new ArrayList<>();
+		for (String part : p.split("\\.")) {
+			int i = part.indexOf('[');
+			String name = i < 0 ? part : part.substring(0, i);
+			if (!name.isEmpty()) {
+				segments.add("*".equals(name) ? WILDCARD : name);
+			}
+			while (i > -1) {
+				int end = part.indexOf(']', i);
+				if (end < 0) {
+					throw new IllegalArgumentException("Invalid JSON path (" + path + ")!");
+				}
+				String index = part.substring(i + 1, end).trim();
+				if ("*".equals(index)) {
+					segments.add(WILDCARD);
+				} else {
+					try {
+						segments.add(Integer.valueOf(index));
+					} catch (NumberFormatException cause) {
+						throw new IllegalArgumentException("Invalid JSON path (" + path + ")!", cause);
+					}
+				}
+				i = part.indexOf('[', end);
+			}
+		}
+		return segments.toArray();
+	}
+
+	/**
+	 * Matches the path of a value against the patterns.
+	 * 
+	 * @param parent
+	 *            path of the parent container
+	 * @param segment
+	 *            field name or index of the value
+	 * 
+	 * @return NONE, PREFIX (some children may be selected) or FULL
+	 */
+	protected int match(Object[] parent, Object segment) {
+		int depth = parent.length + 1;
+		int result = NONE;
+		for (Object[] pattern : patterns) {
+			if (pattern.length < depth || !matches(pattern[depth - 1], segment)) {
+				continue;
+			}
+			boolean matched = true;
+			for (int i = 0; i < parent.length; i++) {
+				if (!matches(pattern[i], parent[i])) {
+					matched = false;
+					break;
+				}
+			}
+			if (matched) {
+				if (pattern.length == depth) {
+					return FULL;
+				}
+				result = PREFIX;
+			}
+		}
+		return result;
+	}
+
+	protected static boolean matches(Object pattern, Object segment) {
+		return pattern == WILDCARD || pattern.equals(segment);
+	}
+
+	// --- BUILD DOCUMENT ---
+
+	@Override
+	protected void startValue(byte b) throws IOException {
+		Frame parent = frames.isEmpty() ? null : frames.get(frames.size() - 1);
+		if (parent == null) {
+
+			// Root value
+			skipCurrent = false;
+			fullCurrent = patterns.length == 0;
+			currentSegment = null;
+		} else if (parent.skipped) {
+			skipCurrent = true;
+		} else if (parent.full) {
+			skipCurrent = false;
+			fullCurrent = true;
+		} else {
+			currentSegment = parent.container instanceof Map ? fieldName : Integer.valueOf(parent.index);
+			int result = match(parent.path, currentSegment);
+			fullCurrent = result == FULL;
+
+			// Scalar values are selected only by a full match
+			skipCurrent = result == NONE || (result == PREFIX && b != '{' && b != '[');
+		}
+		if (skipCurrent && (b == '{' || b == '[')) {
+			if (b == '{') {
+				openContainer(SKIPPED_MAP);
+				state = EXPECT_KEY_OR_END;
+			} else {
+				openContainer(SKIPPED_LIST);
+				state = EXPECT_VALUE_OR_END;
+			}
+			return;
+		}
+		super.startValue(b);
+	}
+
+	@Override
+	protected void openContainer(Object container) throws IOException {
+		Frame parent = frames.isEmpty() ? null : frames.get(frames.size() - 1);
+		Frame frame = new Frame();
+		frame.container = container;
+		frame.skipped = container == SKIPPED_MAP || container == SKIPPED_LIST;
+		frame.full = fullCurrent && !frame.skipped;
+		if (parent == null || parent.full || frame.skipped || frame.full) {
+
+			// The path is not used in these containers
+			frame.path = EMPTY_PATH;
+		} else {
+			Object[] path = new Object[parent.path.length + 1];
+			System.arraycopy(parent.path, 0, path, 0, parent.path.length);
+			path[parent.path.length] = currentSegment;
+			frame.path = path;
+		}
+		super.openContainer(container);
+		frames.add(frame);
+	}
+
+	@Override
+	protected void closeContainer() {
+		frames.remove(frames.size() - 1);
+		super.closeContainer();
+	}
+
+	@Override
+	protected void addValue(Object value) throws IOException {
+		boolean skip = skipCurrent || value == SKIPPED_MAP || value == SKIPPED_LIST;
+		skipCurrent = false;
+		if (!frames.isEmpty()) {
+			frames.get(frames.size() - 1).index++;
+		}
+		if (skip) {
+			fieldName = null;
+			state = AFTER_VALUE;
+			return;
+		}
+		super.addValue(value);
+	}
+
+	// --- SKIP STRINGS AND NUMBERS ---
+
+	@Override
+	protected String parseString() {
+		boolean skip = key ? !frames.isEmpty() && frames.get(frames.size() - 1).skipped : skipCurrent;
+		if (skip) {
+			length = 0;
+			chars = null;
+			return null;
+		}
+		return super.parseString();
+	}
+
+	@Override
+	protected Object parseNumber() throws IOException {
+		if (skipCurrent) {
+			length = 0;
+			return null;
+		}
+		return super.parseNumber();
+	}
+
+	// --- CONTAINER FRAME ---
+
+	protected static final class Frame {
+
+		protected Object container;
+		protected Object[] path;
+		protected boolean skipped;
+		protected boolean full;
+		protected int index;
+
+	}
+
+}
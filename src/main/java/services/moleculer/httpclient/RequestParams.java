@@ -24,15 +24,27 @@
  */
 package services.moleculer.httpclient;
 
-import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.LongSupplier;
 
 import org.asynchttpclient.AsyncHandler;
 import org.asynchttpclient.RequestBuilderBase;
+import org.asynchttpclient.request.body.generator.BodyGenerator;
+import org.asynchttpclient.request.body.generator.ByteArrayBodyGenerator;
+import org.asynchttpclient.request.body.generator.FileBodyGenerator;
 
 import io.datatree.Tree;
+import io.datatree.dom.TreeReader;
+import io.datatree.dom.TreeWriter;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.http.HttpHeaderNames;
 import services.moleculer.stream.PacketStream;
 
 /**
@@ -82,6 +94,163 @@ public class RequestParams extends RequestBuilderBase<RequestParams> {
 	 */
 	protected boolean returnBytes;
 
+	/**
+	 * Parse the JSON response while the body parts arrive.
+	 */
+	protected boolean parseIncrementally;
+
+	/**
+	 * Parse the JSON response on the first access of the response Tree.
+	 */
+	protected boolean parseLazily;
+
+	/**
+	 * Selected JSON paths of the response (null = the whole response).
+	 */
+	protected List<String> projection;
+
+	/**
+	 * Bind the response into this type (null = return a Tree).
+	 */
+	protected Class<?> bindType;
+
+	/**
+	 * Executor of the parsing of large responses. Inherited from the
+	 * HttpClient.
+	 */
+	protected Executor parseExecutor;
+
+	/**
+	 * Responses larger than this size are parsed by the "parseExecutor" (in
+	 * bytes; 0 = disabled). Inherited from the HttpClient.
+	 */
+	protected long parseOffloadThreshold;
+
+	/**
+	 * Executor of the Promise continuations (null = the "callbackExecutor" of
+	 * the HttpClient).
+	 */
+	protected Executor callbackExecutor;
+
+	/**
+	 * Serialize Tree request bodies into the HTTP chunks (instead of a
+	 * byte-array). Inherited from the HttpClient.
+	 */
+	protected boolean serializeIncrementally;
+
+	/**
+	 * Executor for the tasks that should not run on Netty's event loop (eg.
+	 * writing into a slow PacketStream). Inherited from the HttpClient.
+	 */
+	protected Executor executor;
+
+	/**
+	 * Max size of the coalesced HTTP chunks of PacketStream-based uploads (0 =
+	 * one packet per chunk). Inherited from the HttpClient.
+	 */
+	protected int uploadChunkSize;
+
+	/**
+	 * Size of the packets of PacketStream-based responses (0 = one packet per
+	 * received HTTP chunk). Inherited from the HttpClient.
+	 */
+	protected int streamPacketSize;
+
+	/**
+	 * Max delay of an incomplete packet of PacketStream-based responses (in
+	 * milliseconds; 0 = send it at the end of the response). Inherited from
+	 * the HttpClient.
+	 */
+	protected long streamFlushTimeout;
+
+	/**
+	 * Task scheduler (for the flush timers). Inherited from the HttpClient.
+	 */
+	protected ScheduledExecutorService scheduler;
+
+	/**
+	 * Allocator of the pooled buffers (null = pooled mode is disabled).
+	 * Inherited from the HttpClient.
+	 */
+	protected ByteBufAllocator allocator;
+
+	/**
+	 * Responses larger than this size are stored in temp files instead of the
+	 * heap (in bytes; 0 = disabled). Inherited from the HttpClient.
+	 */
+	protected long spillThreshold;
+
+	/**
+	 * Directory of the temp files (null = system's temp directory). Inherited
+	 * from the HttpClient.
+	 */
+	protected Path spillDirectory;
+
+	/**
+	 * Client-wide limit of the response bytes held in the memory (null = no
+	 * limit). Inherited from the HttpClient.
+	 */
+	protected MemoryBudget memoryBudget;
+
+	/**
+	 * Advertise the supported encodings ("Accept-Encoding") and decompress the
+	 * response before the handler. Inherited from the HttpClient.
+	 */
+	protected boolean decompress;
+
+	/**
+	 * The AsyncHttpClient decompresses the responses (so the ResponseDecoder
+	 * is not used). Inherited from the HttpClient.
+	 */
+	protected boolean automaticDecompression;
+
+	/**
+	 * Content-Encoding of the compressed request body (null = the body is not
+	 * compressed).
+	 */
+	protected String compression;
+
+	/**
+	 * Bodies smaller than this size are sent uncompressed (in bytes).
+	 */
+	protected long compressionThreshold;
+
+	/**
+	 * Serialization format of the Tree request bodies and the accepted
+	 * response format (null = JSON, without "Accept" header). Inherited from
+	 * the HttpClient.
+	 */
+	protected String format;
+
+	/**
+	 * Tree request body (serialized by the "format").
+	 */
+	protected Tree treeBody;
+
+	/**
+	 * JSON representation of the Tree request body (null = the Tree is
+	 * serialized incrementally).
+	 */
+	protected byte[] treeBytes;
+
+	/**
+	 * True if the "treeBytes" is an empty placeholder (the Tree is serialized
+	 * when the request is executed, with the last "format" and "jsonWriter").
+	 */
+	protected boolean treeBytesPending;
+
+	/**
+	 * JSON parser of the responses (null = datatree's default JSON reader).
+	 * Inherited from the HttpClient.
+	 */
+	protected TreeReader jsonReader;
+
+	/**
+	 * JSON serializer of the Tree request bodies (null = datatree's default
+	 * JSON writer). Inherited from the HttpClient.
+	 */
+	protected TreeWriter jsonWriter;
+
 	// --- CONSTRUCTOR ---
 
 	protected RequestParams(String method, boolean isDisableUrlEncoding) {
@@ -99,8 +268,47 @@ public class RequestParams extends RequestBuilderBase<RequestParams> {
 	 * @return this builder (for method chaining)
 	 */
 	public RequestParams setBody(Tree data) {
+		return setBody(data, serializeIncrementally);
+	}
+
+	/**
+	 * Set the request body by the specified Tree (~= JSON object). If
+	 * "serializeIncrementally" is true, the Tree is serialized directly into
+	 * the buffers of the HTTP chunks, when the connection is ready to send
+	 * them (executes a chunked HTTP-request, without "Content-Length" header).
+	 * The memory usage remains constant, regardless of the size of the JSON
+	 * document. Recommended for large documents.
+	 * 
+	 * @param data
+	 *            input JSON structure
+	 * @param serializeIncrementally
+	 *            true = serialize chunk by chunk, false = serialize into a
+	 *            byte-array
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setBody(Tree data, boolean serializeIncrementally) {
+		treeBody = data;
+		treeBytes = null;
+		treeBytesPending = false;
 		if (data != null) {
-			setBody(data.toBinary());
+			Object root = data.asObject();
+			byte[] raw = root instanceof LazyJsonMap ? ((LazyJsonMap) root).getRawBytes() : null;
+			if (raw != null) {
+
+				// Unparsed lazy response, forward the original bytes
+				treeBytes = raw;
+				setBody(raw);
+			} else if (serializeIncrementally) {
+				setBody(new TreeBodyGenerator(data));
+			} else {
+
+				// Serialized by the "applyFormat" (the configurator may
+				// change the format or the JSON writer after this call)
+				treeBytes = new byte[0];
+				treeBytesPending = true;
+				setBody(treeBytes);
+			}
 		}
 		return this;
 	}
@@ -134,11 +342,237 @@ public class RequestParams extends RequestBuilderBase<RequestParams> {
 	 */
 	public RequestParams setBody(PacketStream stream, long contentLength) {
 		if (stream != null) {
-			setBody(new PacketStreamBodyGenerator(stream, contentLength));
+			PacketStreamBodyGenerator generator = new PacketStreamBodyGenerator(stream, contentLength);
+			generator.getBody().setChunkSize(uploadChunkSize);
+			setBody(generator);
 		}
 		return this;
 	}
 
+	/**
+	 * Read request body from the specified PacketStream, with a bounded queue.
+	 * When the size of the queued (not yet sent) packets exceeds the
+	 * "highWatermark", the producer thread is blocked in the
+	 * "PacketStream.sendData" method until the size of the queue falls below
+	 * the "lowWatermark". The memory usage of the upload remains constant,
+	 * regardless of the speed of the producer.
+	 * 
+	 * @param stream
+	 *            source PacketStream
+	 * @param contentLength
+	 *            length of the content (in bytes, or -1 if unknown)
+	 * @param lowWatermark
+	 *            producer is released below this size of queued bytes
+	 * @param highWatermark
+	 *            producer is blocked above this size of queued bytes
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setBody(PacketStream stream, long contentLength, long lowWatermark, long highWatermark) {
+		if (stream != null) {
+			PacketStreamBodyGenerator generator = new PacketStreamBodyGenerator(stream, contentLength, lowWatermark,
+					highWatermark);
+			generator.getBody().setChunkSize(uploadChunkSize);
+			setBody(generator);
+		}
+		return this;
+	}
+
+	// --- SET BINARY BODY AS FILE ---
+
+	/**
+	 * Read request body from the specified file. Executes a normal
+	 * HTTP-request, with "Content-Length" header. The file is sent by Netty's
+	 * zero-copy FileRegion ("sendfile") on plain HTTP connections, and in
+	 * chunks (ChunkedNioFile) on TLS connections (or when the zero-copy
+	 * transfer is disabled by "HttpClient.setDisableZeroCopy"). The content of
+	 * the file is not loaded into the Java heap.
+	 * 
+	 * @param file
+	 *            source file
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setBody(Path file) {
+		if (file != null) {
+			setBody(new FileBodyGenerator(file.toFile()));
+		}
+		return this;
+	}
+
+	/**
+	 * Read request body from the specified region of a file (eg. one segment
+	 * of a large file). Executes a normal HTTP-request, with "Content-Length"
+	 * header (see "setBody(Path)").
+	 * 
+	 * @param file
+	 *            source file
+	 * @param position
+	 *            start position in the file
+	 * @param length
+	 *            number of bytes to send
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setBody(Path file, long position, long length) {
+		if (file != null) {
+			setBody(new FileBodyGenerator(file.toFile(), position, length));
+		}
+		return this;
+	}
+
+	// --- SET MULTIPART BODY ---
+
+	/**
+	 * Set a "multipart/form-data" request body (and the "Content-Type"
+	 * header). The parts are streamed one after the other; the request has
+	 * "Content-Length" header only if the lengths of all parts are known.
+	 * Usage:
+	 * 
+	 * <pre>
+	 * MultipartBodyGenerator multipart = new MultipartBodyGenerator();
+	 * multipart.addField("key", "value");
+	 * multipart.addFile("file", path);
+	 * 
+	 * client.post("http://server/path", params -> {
+	 * 	params.setBody(multipart);
+	 * });
+	 * </pre>
+	 * 
+	 * @param multipart
+	 *            multipart body generator
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setBody(MultipartBodyGenerator multipart) {
+		if (multipart != null) {
+			setHeader("Content-Type", multipart.getContentType());
+			setBody((BodyGenerator) multipart);
+		}
+		return this;
+	}
+
+	// --- JSON BACKEND ---
+
+	/**
+	 * Sets the JSON parser of the response (eg. the Jackson or DSL-JSON
+	 * adapter of the datatree library). Null means datatree's default JSON
+	 * reader (the first JSON adapter on the classpath).
+	 * 
+	 * @param jsonReader
+	 *            JSON reader
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setJsonReader(TreeReader jsonReader) {
+		this.jsonReader = jsonReader;
+		return this;
+	}
+
+	/**
+	 * Sets the JSON serializer of the Tree request body. Null means datatree's
+	 * default JSON writer. It can be set before or after the "setBody" call
+	 * (the body is serialized with the last writer, when the request is
+	 * executed). Incrementally serialized bodies (see "setBody(Tree,
+	 * boolean)") always use the built-in serializer.
+	 * 
+	 * @param jsonWriter
+	 *            JSON writer
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setJsonWriter(TreeWriter jsonWriter) {
+		this.jsonWriter = jsonWriter;
+		return this;
+	}
+
+	// --- SERIALIZATION FORMAT ---
+
+	/**
+	 * Sets the serialization format of the request (see ContentFormats). Tree
+	 * request bodies are serialized in this format (with the matching
+	 * "Content-Type" header), and the "Accept" header requests this format
+	 * (with JSON as fallback). The response is always parsed by its
+	 * "Content-Type" header. Binary formats require the matching dataformat
+	 * library (eg. jackson-dataformat-cbor) on the classpath. Usage:
+	 * 
+	 * <pre>
+	 * client.post("http://server/path", req, params -> {
+	 * 	params.setFormat("msgpack");
+	 * });
+	 * </pre>
+	 * 
+	 * @param format
+	 *            "json", "msgpack", "cbor", "smile", "bson" or "ion" (null =
+	 *            JSON, without "Accept" header)
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setFormat(String format) {
+		if (format != null) {
+
+			// Check the format name
+			ContentFormats.getContentType(format);
+			format = format.toLowerCase();
+		}
+		this.format = format;
+		return this;
+	}
+
+	// --- REQUEST BODY COMPRESSION ---
+
+	/**
+	 * Compresses the request body on the fly (see
+	 * {@link #setCompression(String, long)}), with a 1 KB threshold.
+	 * 
+	 * @param encoding
+	 *            "gzip", "deflate" or "zstd" (null = no compression)
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setCompression(String encoding) {
+		return setCompression(encoding, 1024);
+	}
+
+	/**
+	 * Compresses the request body on the fly, and sets the "Content-Encoding"
+	 * header. The body (byte-array, Tree or PacketStream) is compressed chunk
+	 * by chunk, when the connection is ready to send the next chunk, and the
+	 * request is sent in chunked mode, without "Content-Length" header. Bodies
+	 * with known length below the "threshold" are sent uncompressed (bodies
+	 * with unknown length, eg. incrementally serialized Trees, are always
+	 * compressed). File bodies are not compressed (they are sent by zero-copy
+	 * transfer). Usage:
+	 * 
+	 * <pre>
+	 * client.post("http://server/path", params -> {
+	 * 	params.setBody(stream);
+	 * 	params.setCompression("gzip", 4096);
+	 * });
+	 * </pre>
+	 * 
+	 * @param encoding
+	 *            "gzip", "deflate" or "zstd" (null = no compression)
+	 * @param threshold
+	 *            min size of the compressed bodies (in bytes)
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setCompression(String encoding, long threshold) {
+		if (encoding != null) {
+			encoding = encoding.trim().toLowerCase();
+			if (!"gzip".equals(encoding) && !"deflate".equals(encoding) && !"zstd".equals(encoding)) {
+				throw new IllegalArgumentException("Unsupported Content-Encoding (" + encoding + ")!");
+			}
+			if ("zstd".equals(encoding) && !ResponseDecoder.isZstdAvailable()) {
+				throw new IllegalStateException("Zstandard codec (zstd-jni) is not available!");
+			}
+		}
+		this.compression = encoding;
+		this.compressionThreshold = threshold;
+		return this;
+	}
+
 	// --- SET OUTPUT TARGETS ---
 
 	/**
@@ -167,6 +601,74 @@ public class RequestParams extends RequestBuilderBase<RequestParams> {
 		return this;
 	}
 
+	/**
+	 * Redirect response into the specified PacketStream, with flow control.
+	 * The packets are written into the PacketStream by the Executor of the
+	 * client; when the number of the unconsumed bytes exceeds the
+	 * "highWatermark", the client stops reading from the HTTP connection, and
+	 * continues when it falls below the "lowWatermark". The Promise is
+	 * resolved when the whole response has been received (the PacketStream is
+	 * closed after the last packet has been consumed).<br>
+	 * <br>
+	 * The unconsumed bytes are the bytes not yet passed to
+	 * "PacketStream.sendData"; data buffered by the PacketStream (or by an
+	 * asynchronous listener) is not counted. To limit the memory used by a
+	 * slow consumer, use the "transferTo(target, lowWatermark, highWatermark,
+	 * consumedBytes)" method.
+	 * 
+	 * @param target
+	 *            target PacketStream
+	 * @param lowWatermark
+	 *            resume reading below this number of unconsumed bytes
+	 * @param highWatermark
+	 *            pause reading above this number of unconsumed bytes
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams transferTo(PacketStream target, long lowWatermark, long highWatermark) {
+		this.handler = new ResponseToPacketStream(this, target, lowWatermark, highWatermark);
+		return this;
+	}
+
+	/**
+	 * Redirect response into the specified PacketStream, with consumer-side
+	 * flow control. The consumer of the PacketStream reports the number of the
+	 * processed bytes in the "consumedBytes" counter (eg. an AtomicLong, which
+	 * is incremented by the listener after processing a packet). When the
+	 * number of the received, but not yet processed bytes exceeds the
+	 * "highWatermark", the client stops reading from the HTTP connection, and
+	 * continues when it falls below the "lowWatermark".
+	 * 
+	 * <pre>
+	 * AtomicLong consumed = new AtomicLong();
+	 * stream.onPacket((bytes, error, close) -&gt; {
+	 * 	if (bytes != null) {
+	 * 		process(bytes);
+	 * 		consumed.addAndGet(bytes.length);
+	 * 	}
+	 * });
+	 * client.get(url, params -&gt; {
+	 * 	params.transferTo(stream, 64 * 1024, 1024 * 1024, consumed::get);
+	 * });
+	 * </pre>
+	 * 
+	 * @param target
+	 *            target PacketStream
+	 * @param lowWatermark
+	 *            resume reading below this number of unprocessed bytes
+	 * @param highWatermark
+	 *            pause reading above this number of unprocessed bytes
+	 * @param consumedBytes
+	 *            number of the bytes processed by the consumer
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams transferTo(PacketStream target, long lowWatermark, long highWatermark,
+			LongSupplier consumedBytes) {
+		this.handler = new ResponseToPacketStream(this, target, lowWatermark, highWatermark, consumedBytes);
+		return this;
+	}
+
 	/**
 	 * Redirect response into the specified OutputStream.
 	 * 
@@ -189,34 +691,201 @@ public class RequestParams extends RequestBuilderBase<RequestParams> {
 	 * @return this builder (for method chaining)
 	 */
 	public RequestParams transferTo(WritableByteChannel target) {
-		OutputStream out = new OutputStream() {
+		this.handler = new ResponseToChannel(this, target);
+		return this;
+	}
 
-			@Override
-			public final void write(int b) throws IOException {
-				target.write(ByteBuffer.wrap(new byte[] { (byte) b }));
-			}
+	/**
+	 * Redirect response into the specified file. The file is created (or
+	 * truncated) when the response headers arrive.
+	 * 
+	 * @param target
+	 *            path of the target file
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams transferTo(Path target) {
+		return transferTo(target, false);
+	}
 
-			@Override
-			public final void write(byte[] b) throws IOException {
-				target.write(ByteBuffer.wrap(b));
-			}
+	/**
+	 * Redirect response into the specified file. The file is created (or
+	 * truncated) when the response headers arrive.
+	 * 
+	 * @param target
+	 *            path of the target file
+	 * @param preallocate
+	 *            set the size of the file by the "Content-Length" header
+	 *            before writing the first byte
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams transferTo(Path target, boolean preallocate) {
+		this.handler = new ResponseToFile(this, target, preallocate);
+		return this;
+	}
 
-			@Override
-			public final void write(byte[] b, int off, int len) throws IOException {
-				target.write(ByteBuffer.wrap(b, off, len));
-			}
+	// --- BUILDER-STYLE PROPERTY SETTERS ---
 
-			@Override
-			public final void close() throws IOException {
-				target.close();
-			}
+	/**
+	 * Sets the Executor of this request (for the tasks that should not run on
+	 * Netty's event loop).
+	 * 
+	 * @param executor
+	 *            custom Executor
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setExecutor(Executor executor) {
+		this.executor = executor;
+		return this;
+	}
 
-		};
-		this.handler = new ResponseToOutputStream(this, out);
+	/**
+	 * Sets the Executor of the parsing of large responses (see
+	 * "setParseOffloadThreshold").
+	 * 
+	 * @param parseExecutor
+	 *            custom Executor
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setParseExecutor(Executor parseExecutor) {
+		this.parseExecutor = parseExecutor;
 		return this;
 	}
 
-	// --- BUILDER-STYLE PROPERTY SETTERS ---
+	/**
+	 * Sets the size above which the response is parsed by the
+	 * "parseExecutor", instead of Netty's event loop. Zero means the response
+	 * is always parsed on the event loop.
+	 * 
+	 * @param parseOffloadThreshold
+	 *            threshold in bytes (eg. 262144)
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setParseOffloadThreshold(long parseOffloadThreshold) {
+		this.parseOffloadThreshold = parseOffloadThreshold;
+		return this;
+	}
+
+	/**
+	 * Sets the Executor of the Promise continuations of this request (eg. the
+	 * Executor of the calling service, a thread pool, virtual threads, or
+	 * "Runnable::run" to run them inline, on Netty's event loop). Overrides
+	 * the "callbackExecutor" of the HttpClient.
+	 * 
+	 * @param callbackExecutor
+	 *            custom Executor
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setCallbackExecutor(Executor callbackExecutor) {
+		this.callbackExecutor = callbackExecutor;
+		return this;
+	}
+
+	/**
+	 * Sets the max size of the HTTP chunks of PacketStream-based uploads. When
+	 * the producer emits many small packets, the queued packets are coalesced
+	 * into one chunk (up to this size). Zero means one packet per chunk.
+	 * 
+	 * @param uploadChunkSize
+	 *            max size of a chunk in bytes (eg. 65536)
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setUploadChunkSize(int uploadChunkSize) {
+		this.uploadChunkSize = uploadChunkSize;
+		if (bodyGenerator instanceof PacketStreamBodyGenerator) {
+			((PacketStreamBodyGenerator) bodyGenerator).getBody().setChunkSize(uploadChunkSize);
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the minimum size of the packets when the response is redirected
+	 * into a PacketStream. Small HTTP chunks are aggregated into packets of
+	 * this size, instead of sending each chunk as a separate packet; larger
+	 * chunks are forwarded whole (without splitting and copying). Zero means
+	 * one packet per received chunk.
+	 * 
+	 * @param streamPacketSize
+	 *            size of a packet in bytes (eg. 65536)
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setStreamPacketSize(int streamPacketSize) {
+		this.streamPacketSize = streamPacketSize;
+		return this;
+	}
+
+	/**
+	 * Sets the max delay of an incomplete packet when the response is
+	 * redirected into a PacketStream (see "setStreamPacketSize"). Zero means
+	 * the incomplete packet is sent only at the end of the response.
+	 * 
+	 * @param streamFlushTimeout
+	 *            timeout in milliseconds
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setStreamFlushTimeout(long streamFlushTimeout) {
+		this.streamFlushTimeout = streamFlushTimeout;
+		return this;
+	}
+
+	/**
+	 * Sets the max size of the response bodies stored in the heap (when the
+	 * response is returned as JSON or byte-array). Larger bodies are written
+	 * into a temp file, which is memory-mapped when the response is complete,
+	 * and deleted after processing. Zero disables this feature.
+	 * 
+	 * @param spillThreshold
+	 *            threshold in bytes (eg. 16777216)
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setSpillThreshold(long spillThreshold) {
+		this.spillThreshold = spillThreshold;
+		return this;
+	}
+
+	/**
+	 * Sets the directory of the temp files of large responses (see
+	 * "setSpillThreshold").
+	 * 
+	 * @param spillDirectory
+	 *            directory of the temp files (null = system's temp directory)
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setSpillDirectory(Path spillDirectory) {
+		this.spillDirectory = spillDirectory;
+		return this;
+	}
+
+	/**
+	 * Enables or disables the streaming decompression of the response. When
+	 * enabled, the "Accept-Encoding" header is set automatically (gzip,
+	 * deflate, and br / zstd when their codecs are on the classpath), and the
+	 * compressed body is decoded chunk by chunk before the response handler
+	 * (or the target of "transferTo"). Requests with "Range" or custom
+	 * "Accept-Encoding" header are never decompressed. The streaming decoder
+	 * is used only if the automatic decompression of the AsyncHttpClient is
+	 * disabled (see "HttpClient.setDecompressResponses"); otherwise the
+	 * responses are decoded by the AsyncHttpClient.
+	 * 
+	 * @param decompress
+	 *            true = decompress the response
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams setDecompress(boolean decompress) {
+		this.decompress = decompress;
+		return this;
+	}
 
 	/**
 	 * Copy HTTP response headers into the Meta structure of the response Tree.
@@ -295,4 +964,240 @@ public class RequestParams extends RequestBuilderBase<RequestParams> {
 		return this;
 	}
 
+	/**
+	 * Parse the JSON response while the body parts arrive, instead of
+	 * collecting the whole body and parsing it after the last byte. The raw
+	 * response body is not stored in the memory. Recommended for large JSON
+	 * responses on slow links. Usage:
+	 * 
+	 * <pre>
+	 * client.get("http://server/path", params -> {
+	 * 	params.parseIncrementally();
+	 * }).then(rsp -> {
+	 * 
+	 * 	// Success (rsp = JSON response)
+	 * 
+	 * });
+	 * </pre>
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams parseIncrementally() {
+		this.parseIncrementally = true;
+		return this;
+	}
+
+	/**
+	 * Parse the JSON response on the first structural access of the response
+	 * Tree (eg. "rsp.get(...)"), instead of parsing it on Netty's event loop.
+	 * The status code and headers can be read without parsing. If the
+	 * response is passed to "setBody(Tree)" without accessing its content,
+	 * the original bytes are forwarded without re-serialization. Usage:
+	 * 
+	 * <pre>
+	 * client.get("http://server/path", params -> {
+	 * 	params.parseLazily();
+	 * }).then(rsp -> {
+	 * 
+	 * 	// Forward the response without parsing it
+	 * 	return client.post("http://other/path", rsp);
+	 * 
+	 * });
+	 * </pre>
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams parseLazily() {
+		this.parseLazily = true;
+		return this;
+	}
+
+	/**
+	 * Parses only the selected JSON paths of the response. The response is
+	 * parsed while the body parts arrive (see "parseIncrementally"), and the
+	 * values outside of the selected paths are skipped at the token level, so
+	 * they are never materialized. The response Tree has the original
+	 * structure, but contains only the selected values. Usage:
+	 * 
+	 * <pre>
+	 * client.get("http://server/path", params -> {
+	 * 	params.select("data.items[*].id", "meta.total");
+	 * }).then(rsp -> {
+	 * 
+	 * 	// Success
+	 * 	int total = rsp.get("meta.total", 0);
+	 * 
+	 * });
+	 * </pre>
+	 * 
+	 * @param paths
+	 *            JSON paths (see ProjectingJsonParser)
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams select(String... paths) {
+		if (paths != null && paths.length > 0) {
+			projection = Arrays.asList(paths);
+		} else {
+			projection = null;
+		}
+		return this;
+	}
+
+	/**
+	 * Binds the response directly into a record or POJO (see ObjectBinder),
+	 * without building a Tree from the response. The Promise is resolved with
+	 * a Tree that wraps the bound object (non-2xx responses reject the
+	 * Promise). Usage:
+	 * 
+	 * <pre>
+	 * client.get("http://server/path", params -> {
+	 * 	params.bindTo(MyRecord.class);
+	 * }).then(rsp -> {
+	 * 
+	 * 	// Success
+	 * 	MyRecord record = (MyRecord) rsp.asObject();
+	 * 
+	 * });
+	 * </pre>
+	 * 
+	 * @param type
+	 *            target type
+	 * 
+	 * @return this builder (for method chaining)
+	 */
+	public RequestParams bindTo(Class<?> type) {
+		this.bindType = type;
+		return this;
+	}
+
+	// --- DECOMPRESSION ---
+
+	/**
+	 * Inserts the decompression stage in front of the response handler (if
+	 * decompression is enabled). Byte ranges refer to the encoded content, so
+	 * range requests are left untouched.
+	 */
+	protected void addDecoder() {
+		if (!decompress || handler == null || handler instanceof ResponseDecoder) {
+			return;
+		}
+		if (headers.contains(HttpHeaderNames.RANGE) || headers.contains(HttpHeaderNames.ACCEPT_ENCODING)) {
+			return;
+		}
+		setHeader(HttpHeaderNames.ACCEPT_ENCODING, ResponseDecoder.ACCEPT_ENCODING);
+		if (!automaticDecompression) {
+			handler = new ResponseDecoder(handler, allocator);
+		}
+	}
+
+	/**
+	 * Serializes the Tree request body in the selected format (or by the JSON
+	 * writer), and sets the "Content-Type" and "Accept" headers (if they are
+	 * not set). The meta structure is written in every format (like the
+	 * "Tree.toBinary()" method and the TreeBody do).
+	 */
+	protected void applyFormat() {
+		String contentType = null;
+		boolean binary = false;
+		if (format != null) {
+			contentType = ContentFormats.getContentType(format);
+			binary = ContentFormats.isBinary(format);
+			if (!headers.contains(HttpHeaderNames.ACCEPT)) {
+				setHeader(HttpHeaderNames.ACCEPT, binary ? contentType + ", application/json;q=0.9" : contentType);
+			}
+		}
+		if (treeBody == null) {
+			return;
+		}
+		boolean current = (treeBytes != null && byteData == treeBytes) || (bodyGenerator instanceof TreeBodyGenerator
+				&& ((TreeBodyGenerator) bodyGenerator).data == treeBody);
+		if (!current) {
+
+			// The Tree body has been replaced
+			return;
+		}
+		if (binary) {
+			setBody(treeBody.toBinary(format, true));
+		} else if (treeBytesPending) {
+			treeBytes = jsonWriter == null ? treeBody.toBinary()
+					: jsonWriter.toBinary(treeBody.asObject(), treeBody.getMeta(false), true);
+			setBody(treeBytes);
+		}
+		treeBytesPending = false;
+		if (contentType != null && !headers.contains(HttpHeaderNames.CONTENT_TYPE)) {
+			setHeader(HttpHeaderNames.CONTENT_TYPE, contentType);
+		}
+	}
+
+	/**
+	 * Replaces the request body with a compressing body generator (if
+	 * compression is enabled, and the body is large enough).
+	 */
+	protected void addEncoder() {
+		if (compression == null || headers.contains(HttpHeaderNames.CONTENT_ENCODING)) {
+			return;
+		}
+		BodyGenerator source;
+		long length;
+		if (byteData != null) {
+			source = new ByteArrayBodyGenerator(byteData);
+			length = byteData.length;
+		} else if (bodyGenerator instanceof PacketStreamBodyGenerator) {
+			source = bodyGenerator;
+			length = ((PacketStreamBodyGenerator) bodyGenerator).getBody().getContentLength();
+		} else if (bodyGenerator instanceof TreeBodyGenerator) {
+			source = bodyGenerator;
+			length = -1;
+		} else {
+
+			// No body, or unsupported (eg. file) body
+			return;
+		}
+		if (length > -1 && length < compressionThreshold) {
+			return;
+		}
+		setBody(new CompressedBodyGenerator(source, compression));
+		setHeader(HttpHeaderNames.CONTENT_ENCODING, compression);
+		headers.remove(HttpHeaderNames.CONTENT_LENGTH);
+	}
+
+	/**
+	 * Returns true if the response should be parsed by the "parseExecutor"
+	 * (the response handler parses a body larger than the threshold).
+	 * 
+	 * @return true = parse outside of the event loop
+	 */
+	protected boolean isParsingOffloaded() {
+		if (parseOffloadThreshold < 1) {
+			return false;
+		}
+		AsyncHandler<?> target = handler instanceof ResponseDecoder ? ((ResponseDecoder) handler).target : handler;
+		if (target instanceof ResponseHandler) {
+			long cost = ((ResponseHandler) target).getParseCost();
+			return cost >= parseOffloadThreshold;
+		}
+		return false;
+	}
+
+	// --- PROPERTY GETTERS ---
+
+	/**
+	 * Returns the Executor of this request.
+	 * 
+	 * @return Executor (never null)
+	 */
+	public Executor getExecutor() {
+		return executor == null ? ForkJoinPool.commonPool() : executor;
+	}
+
+	/**
+	 * Returns the Executor of the parsing of large responses.
+	 * 
+	 * @return Executor (never null)
+	 */
+	public Executor getParseExecutor() {
+		return parseExecutor == null ? getExecutor() : parseExecutor;
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,232 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.net.InetSocketAddress;
+
+import org.asynchttpclient.AsyncHandler;
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.HttpResponseStatus;
+import org.asynchttpclient.netty.LazyResponseBodyPart;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.compression.Brotli;
+import io.netty.handler.codec.compression.BrotliDecoder;
+import io.netty.handler.codec.compression.ZlibCodecFactory;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import io.netty.handler.codec.compression.Zstd;
+import io.netty.handler.codec.compression.ZstdDecoder;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * Streaming decompression stage in front of a response handler. The encoded
+ * body parts are decoded chunk by chunk (by Netty's zlib, Brotli and Zstandard
+ * decoders) and the decoded parts are passed to the target handler, so the
+ * compressed body is never collected in the memory. Supports "gzip" and
+ * "deflate" encodings, plus "br" and "zstd" when their native codecs (Brotli4j
+ * and zstd-jni) are on the classpath. The decoded parts are released after the
+ * target handler processed them. The output of the zlib decoder is limited
+ * (see MAX_ALLOCATION), so a small, highly compressed body part ("zip bomb")
+ * fails the request instead of exhausting the memory.
+ */
+public class ResponseDecoder implements AsyncHandler<Object> {
+
+	// --- CONSTANTS ---
+
+	/**
+	 * Value of the "Accept-Encoding" header (depends on the available codecs).
+	 */
+	public static final String ACCEPT_ENCODING;
+
+	/**
+	 * Max size of the zlib decoder's output buffer (the decoded size of one
+	 * body part). The larger parts are rejected with DecompressionException.
+	 */
+	public static final int MAX_ALLOCATION = 16 * 1024 * 1024;
+
+	static {
+		StringBuilder encodings = new StringBuilder("gzip, deflate");
+		if (isBrotliAvailable()) {
+			encodings.append(", br");
+		}
+		if (isZstdAvailable()) {
+			encodings.append(", zstd");
+		}
+		ACCEPT_ENCODING = encodings.toString();
+	}
+
+	// --- VARIABLES ---
+
+	protected final AsyncHandler<?> target;
+	protected final ByteBufAllocator allocator;
+
+	/**
+	 * Channel of the decoder (null = the response is not encoded).
+	 */
+	protected EmbeddedChannel decoder;
+
+	// --- CONSTRUCTOR ---
+
+	protected ResponseDecoder(AsyncHandler<?> target, ByteBufAllocator allocator) {
+		this.target = target;
+		this.allocator = allocator;
+	}
+
+	// --- REQUEST PROCESSORS ---
+
+	@Override
+	public State onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+		return target.onStatusReceived(responseStatus);
+	}
+
+	@Override
+	public State onHeadersReceived(HttpHeaders headers) throws Exception {
+		String encoding = headers.get(HttpHeaderNames.CONTENT_ENCODING);
+		if (encoding != null) {
+			decoder = newDecoder(encoding.trim().toLowerCase());
+			if (decoder != null) {
+				if (allocator != null) {
+					decoder.config().setAllocator(allocator);
+				}
+
+				// The target handler receives the decoded body
+				headers = headers.copy();
+				headers.remove(HttpHeaderNames.CONTENT_ENCODING);
+				headers.remove(HttpHeaderNames.CONTENT_LENGTH);
+			}
+		}
+		return target.onHeadersReceived(headers);
+	}
+
+	@Override
+	public State onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+		if (decoder == null) {
+			return target.onBodyPartReceived(bodyPart);
+		}
+		if (bodyPart.length() > 0) {
+			decoder.writeInbound(bodyPart.getBodyByteBuf().retain());
+		}
+		return drain();
+	}
+
+	@Override
+	public void onThrowable(Throwable t) {
+		try {
+			if (decoder != null) {
+				decoder.finishAndReleaseAll();
+				decoder = null;
+			}
+		} finally {
+			target.onThrowable(t);
+		}
+	}
+
+	@Override
+	public Object onCompleted() throws Exception {
+		if (decoder != null) {
+			try {
+				decoder.finish();
+				drain();
+			} finally {
+				decoder.finishAndReleaseAll();
+				decoder = null;
+			}
+		}
+		return target.onCompleted();
+	}
+
+	// --- FLOW CONTROL ---
+
+	@Override
+	public void onTcpConnectSuccess(InetSocketAddress remoteAddress, Channel connection) {
+		target.onTcpConnectSuccess(remoteAddress, connection);
+	}
+
+	@Override
+	public void onConnectionPooled(Channel connection) {
+		target.onConnectionPooled(connection);
+	}
+
+	// --- DECODING ---
+
+	protected State drain() throws Exception {
+		State state = State.CONTINUE;
+		ByteBuf buffer;
+		while ((buffer = decoder.readInbound()) != null) {
+			try {
+				if (state == State.CONTINUE && buffer.isReadable()) {
+					state = target.onBodyPartReceived(new LazyResponseBodyPart(buffer, false));
+				}
+			} finally {
+				buffer.release();
+			}
+		}
+		return state;
+	}
+
+	protected EmbeddedChannel newDecoder(String encoding) {
+		switch (encoding) {
+		case "gzip":
+		case "x-gzip":
+			return new EmbeddedChannel(ZlibCodecFactory.newZlibDecoder(ZlibWrapper.GZIP, MAX_ALLOCATION));
+		case "deflate":
+		case "x-deflate":
+
+			// Some servers send raw deflate data (without zlib header)
+			return new EmbeddedChannel(ZlibCodecFactory.newZlibDecoder(ZlibWrapper.ZLIB_OR_NONE, MAX_ALLOCATION));
+		case "br":
+			return isBrotliAvailable() ? new EmbeddedChannel(new BrotliDecoder()) : null;
+		case "zstd":
+			return isZstdAvailable() ? new EmbeddedChannel(new ZstdDecoder()) : null;
+		default:
+
+			// Unknown or "identity" encoding
+			return null;
+		}
+	}
+
+	// --- CODEC DETECTION ---
+
+	protected static boolean isBrotliAvailable() {
+		try {
+			return Brotli.isAvailable();
+		} catch (Throwable notAvailable) {
+			return false;
+		}
+	}
+
+	protected static boolean isZstdAvailable() {
+		try {
+			return Zstd.isAvailable();
+		} catch (Throwable notAvailable) {
+			return false;
+		}
+	}
+
+}
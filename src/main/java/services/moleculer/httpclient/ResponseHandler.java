@@ -24,6 +24,8 @@
  */
 package services.moleculer.httpclient;
 
+import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.Iterator;
 import java.util.Map.Entry;
 
@@ -32,6 +34,8 @@ import org.asynchttpclient.HttpResponseBodyPart;
 import org.asynchttpclient.HttpResponseStatus;
 
 import io.datatree.Tree;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaders;
 
 /**
@@ -45,6 +49,26 @@ public abstract class ResponseHandler implements AsyncHandler<Tree> {
 		
 	protected volatile int status = 200;
 	protected volatile HttpHeaders httpHeaders;
+
+	/**
+	 * Value of the "Content-Type" response header.
+	 */
+	protected volatile String contentType;
+
+	/**
+	 * Netty Channel of the connection (for flow control).
+	 */
+	protected volatile Channel channel;
+
+	/**
+	 * Reading from the Channel is paused.
+	 */
+	protected volatile boolean paused;
+
+	/**
+	 * Number of bytes reserved from the client's memory budget.
+	 */
+	protected long reserved;
 		
 	// --- CONSTRUCTOR ---
 	
@@ -64,6 +88,7 @@ public abstract class ResponseHandler implements AsyncHandler<Tree> {
 
 	@Override
 	public State onHeadersReceived(HttpHeaders httpHeaders) throws Exception {
+		contentType = httpHeaders.get(HttpHeaderNames.CONTENT_TYPE);
 		if (params.returnHttpHeaders) {
 			this.httpHeaders = httpHeaders;
 		}
@@ -75,7 +100,98 @@ public abstract class ResponseHandler implements AsyncHandler<Tree> {
 		
 		// Do nothing
 	}
+
+	// --- FLOW CONTROL ---
+
+	@Override
+	public void onTcpConnectSuccess(InetSocketAddress remoteAddress, Channel connection) {
+		channel = connection;
+	}
+
+	@Override
+	public void onConnectionPooled(Channel connection) {
+		channel = connection;
+	}
+
+	/**
+	 * Stops reading from the Netty Channel (the data remains in the TCP
+	 * buffers, so the server slows down).
+	 */
+	protected synchronized void pauseReading() {
+		Channel current = channel;
+		if (current != null && !paused) {
+			paused = true;
+			current.config().setAutoRead(false);
+		}
+	}
+
+	/**
+	 * Continues reading from the Netty Channel.
+	 */
+	protected synchronized void resumeReading() {
+		Channel current = channel;
+		if (current != null && paused) {
+			paused = false;
+			current.config().setAutoRead(true);
+		}
+	}
 	
+	// --- MEMORY BUDGET ---
+
+	/**
+	 * Reserves bytes from the client's memory budget (if the budget is
+	 * exhausted, it pauses reading or throws an IOException).
+	 * 
+	 * @param bytes
+	 *            number of bytes held in the memory
+	 * 
+	 * @throws IOException
+	 *             if the budget is exhausted (in "failOnOverflow" mode)
+	 */
+	protected void reserve(long bytes) throws IOException {
+		MemoryBudget budget = params.memoryBudget;
+		if (budget != null && bytes > 0) {
+			budget.reserve(this, bytes);
+			reserved += bytes;
+		}
+	}
+
+	/**
+	 * Releases the reserved bytes.
+	 * 
+	 * @param finished
+	 *            the response is completed or failed
+	 */
+	protected void releaseReserved(boolean finished) {
+		MemoryBudget budget = params.memoryBudget;
+		if (budget != null) {
+			budget.release(this, reserved, finished);
+			reserved = 0;
+		}
+	}
+
+	/**
+	 * Returns the binary serialization format of the response, by the
+	 * "Content-Type" header (see ContentFormats).
+	 * 
+	 * @return format name (eg. "msgpack"), or null for JSON and unknown types
+	 */
+	protected String getBinaryFormat() {
+		String format = ContentFormats.getFormat(contentType);
+		return ContentFormats.isBinary(format) ? format : null;
+	}
+
+	/**
+	 * Returns the number of bytes parsed by the "onCompleted" method (large
+	 * responses are parsed outside of Netty's event loop, see
+	 * "HttpClient.setParseOffloadThreshold").
+	 * 
+	 * @return number of bytes (0 = nothing to parse)
+	 */
+	protected long getParseCost() {
+		return 0;
+	}
+
 	protected void addStatusAndHeaders(Tree rsp) {
 		if (params.returnStatusCode || params.returnHttpHeaders) {
 			Tree meta = rsp.getMeta();
@@ -24,55 +24,154 @@
  */
 package services.moleculer.httpclient;
 
-import java.nio.ByteBuffer;
+import java.io.IOException;
 
 import org.asynchttpclient.HttpResponseBodyPart;
 
 import io.datatree.Tree;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
 import services.moleculer.util.CheckedTree;
 
 /**
- * Returns the response in a byte-array.
+ * Returns the response in a byte-array. If the "spill threshold" is set, and
+ * the body is larger than the threshold, the body is written into a temp file
+ * instead of the heap (the file is memory-mapped at the end of the response,
+ * and it is deleted when the response is processed).
  */
 public class ResponseToBytes extends ResponseHandler {
 
 	// --- VARIABLES ---
 	
+	protected final BodyAccumulator accumulator;
+	
 	protected byte[] bytes;
+
+	/**
+	 * Temp file of a large body (null = the body is in the memory).
+	 */
+	protected SpillFile spillFile;
+
+	/**
+	 * The "Content-Length" is larger than the spill threshold (the temp file
+	 * is created at the first body part).
+	 */
+	protected boolean spill;
 	
 	// --- CONSTRUCTOR ---
 
 	protected ResponseToBytes(RequestParams params) {
 		super(params);
+		accumulator = new BodyAccumulator(params.allocator);
 	}
 	
 	// --- REQUEST PROCESSORS ---
 	
+	@Override
+	public State onHeadersReceived(HttpHeaders httpHeaders) throws Exception {
+
+		// Presize the body buffer by the "Content-Length" header
+		String contentLength = httpHeaders.get(HttpHeaderNames.CONTENT_LENGTH);
+		if (contentLength != null) {
+			try {
+				long length = Long.parseLong(contentLength.trim());
+				if (params.spillThreshold > 0 && length > params.spillThreshold) {
+
+					// Too large, write it directly into a temp file
+					spill = true;
+				} else {
+
+					// The presized array is allocated at the first body part,
+					// so the whole body is reserved from the budget in advance
+					reserve(length);
+					accumulator.setExpectedLength(length);
+				}
+			} catch (NumberFormatException ignored) {
+			}
+		}
+		return super.onHeadersReceived(httpHeaders);
+	}
+
 	@Override
 	public State onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
-		ByteBuffer buffer = bodyPart.getBodyByteBuffer();
-		int len = buffer.capacity();
-		if (bytes == null) {
-			bytes = new byte[len];
-			buffer.get(bytes, 0, len);
-		} else {
-			byte[] expanded = new byte[bytes.length + len];
-			buffer.get(expanded, bytes.length, len);
-			System.arraycopy(bytes, 0, expanded, 0, bytes.length);
-			bytes = expanded;
+		if (spill && spillFile == null) {
+
+			// First body part of a large body (HEAD, 204 and 304 responses have
+			// no body, so no temp file is created for them)
+			spillFile = new SpillFile(params.spillDirectory);
+		}
+		if (spillFile != null) {
+			spillFile.write(bodyPart.getBodyByteBuffer());
+			return State.CONTINUE;
+		}
+		long unreserved = accumulator.length() + bodyPart.length() - reserved;
+		if (unreserved > 0) {
+			reserve(unreserved);
+		}
+		accumulator.append(bodyPart);
+		if (params.spillThreshold > 0 && accumulator.length() > params.spillThreshold) {
+
+			// Move the received parts into a temp file
+			spillFile = new SpillFile(params.spillDirectory);
+			accumulator.writeTo(spillFile);
+			releaseReserved(false);
 		}
 		return State.CONTINUE;
 	}
 
+	@Override
+	public void onThrowable(Throwable t) {
+
+		// Release pooled buffers and delete the temp file
+		accumulator.release();
+		closeSpillFile();
+		releaseReserved(true);
+	}
+
 	@Override
 	public Tree onCompleted() throws Exception {
 
 		// No response body (eg. empty 200/204 response). AsyncHttpClient 3.x
-		// does not invoke onBodyPartReceived when the body is empty, so "bytes"
-		// stays null - return an empty byte-array instead.
-		Tree rsp = new CheckedTree(bytes == null ? new byte[0] : bytes);
+		// does not invoke onBodyPartReceived when the body is empty, so the
+		// accumulator returns an empty byte-array.
+		Tree rsp;
+		try {
+			rsp = new CheckedTree(getBytes());
+		} finally {
+			closeSpillFile();
+			releaseReserved(true);
+		}
 		addStatusAndHeaders(rsp);
 		return rsp;
 	}
 
+	/**
+	 * Returns the received response body (copies the parts into one array, if
+	 * it is necessary).
+	 * 
+	 * @return response body (never null)
+	 * 
+	 * @throws IOException
+	 *             if the spilled body could not be read
+	 */
+	protected byte[] getBytes() throws IOException {
+		if (bytes == null) {
+			if (spillFile == null) {
+				bytes = accumulator.toByteArray();
+			} else {
+				bytes = spillFile.toByteArray();
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Deletes the temp file of the spilled body.
+	 */
+	protected void closeSpillFile() {
+		if (spillFile != null) {
+			spillFile.close();
+		}
+	}
+
 }
\ No newline at end of file
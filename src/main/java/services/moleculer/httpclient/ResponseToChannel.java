@@ -0,0 +1,92 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.asynchttpclient.HttpResponseBodyPart;
+
+import io.datatree.Tree;
+
+/**
+ * Writes the response directly into the specific WritableByteChannel (eg. into
+ * a FileChannel), without copying the body parts into temporary arrays. With
+ * the "LAZY" ResponseBodyPartFactory (see
+ * {@code HttpClient.setResponseBodyPartFactory}) the body parts are written
+ * from Netty's buffers, without any heap allocation.
+ */
+public class ResponseToChannel extends ResponseHandler {
+
+	// --- VARIABLES ---
+
+	protected WritableByteChannel target;
+	protected final AtomicLong transfered = new AtomicLong();
+
+	// --- CONSTRUCTOR ---
+
+	protected ResponseToChannel(RequestParams params, WritableByteChannel target) {
+		super(params);
+		this.target = target;
+	}
+
+	// --- REQUEST PROCESSORS ---
+
+	@Override
+	public void onThrowable(Throwable t) {
+		closeChannel();
+	}
+
+	@Override
+	public State onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+		ByteBuffer buffer = bodyPart.getBodyByteBuffer();
+		int len = buffer.remaining();
+		while (buffer.hasRemaining()) {
+			target.write(buffer);
+		}
+		transfered.addAndGet(len);
+		return State.CONTINUE;
+	}
+
+	@Override
+	public Tree onCompleted() throws Exception {
+		closeChannel();
+		Tree rsp = new Tree();
+		rsp.put("transfered", transfered.get());
+		addStatusAndHeaders(rsp);
+		return rsp;
+	}
+
+	protected void closeChannel() {
+		if (target != null) {
+			try {
+				target.close();
+			} catch (Exception ignored) {
+			}
+		}
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,110 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.asynchttpclient.HttpResponseBodyPart;
+
+import io.datatree.Tree;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * Writes the response into the specified file (via FileChannel). The file is
+ * created (or truncated) when the response headers arrive. If "preallocate"
+ * is true, and the "Content-Length" is known, the size of the file is set
+ * before the first write.
+ */
+public class ResponseToFile extends ResponseToChannel {
+
+	// --- VARIABLES ---
+
+	protected final Path path;
+	protected final boolean preallocate;
+
+	protected FileChannel channel;
+	protected long preallocated;
+
+	// --- CONSTRUCTOR ---
+
+	protected ResponseToFile(RequestParams params, Path path, boolean preallocate) {
+		super(params, null);
+		this.path = path;
+		this.preallocate = preallocate;
+	}
+
+	// --- REQUEST PROCESSORS ---
+
+	@Override
+	public State onHeadersReceived(HttpHeaders httpHeaders) throws Exception {
+		openChannel();
+		if (preallocate) {
+			String contentLength = httpHeaders.get(HttpHeaderNames.CONTENT_LENGTH);
+			if (contentLength != null) {
+				try {
+					long size = Long.parseLong(contentLength.trim());
+					if (size > 0) {
+
+						// Extend the file (the position of the channel remains 0)
+						channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+						preallocated = size;
+					}
+				} catch (NumberFormatException ignored) {
+				}
+			}
+		}
+		return super.onHeadersReceived(httpHeaders);
+	}
+
+	@Override
+	public State onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+		openChannel();
+		return super.onBodyPartReceived(bodyPart);
+	}
+
+	@Override
+	public Tree onCompleted() throws Exception {
+		openChannel();
+
+		// The server sent less bytes than the "Content-Length"
+		if (preallocated > transfered.get()) {
+			channel.truncate(transfered.get());
+		}
+		return super.onCompleted();
+	}
+
+	protected void openChannel() throws Exception {
+		if (channel == null) {
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			target = channel;
+		}
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,151 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.HttpResponseStatus;
+
+import io.datatree.Tree;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * Writes the response of a "Range" request into the specified region of a
+ * file (via positional writes, so more segments can be written into the same
+ * FileChannel concurrently). The FileChannel is not closed by this handler.
+ * The "Content-Range" header of the response must start at the requested
+ * position. The request is aborted when the download is finished (eg. another
+ * segment failed).
+ */
+public class ResponseToFileRange extends ResponseHandler {
+
+	// --- VARIABLES ---
+
+	protected final FileChannel fileChannel;
+	protected final SegmentedDownload.Segment segment;
+
+	// --- CONSTRUCTOR ---
+
+	protected ResponseToFileRange(RequestParams params, FileChannel fileChannel, SegmentedDownload.Segment segment) {
+		super(params);
+		this.fileChannel = fileChannel;
+		this.segment = segment;
+	}
+
+	// --- REQUEST PROCESSORS ---
+
+	@Override
+	public State onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+		int code = responseStatus.getStatusCode();
+		if (code != 206) {
+
+			// The server ignored the "Range" header (or returned an error)
+			throw new HttpStatusException("Invalid response to a Range request (status: " + code + ")!", code);
+		}
+		return super.onStatusReceived(responseStatus);
+	}
+
+	@Override
+	public State onHeadersReceived(HttpHeaders httpHeaders) throws Exception {
+
+		String range = httpHeaders.get(HttpHeaderNames.CONTENT_RANGE);
+		long[] contentRange = parseContentRange(range);
+		if (contentRange == null || contentRange[0] != segment.position) {
+			throw new IOException("Invalid Content-Range (requested: bytes " + segment.position + '-' + segment.end
+					+ ", received: " + range + ")!");
+		}
+		return super.onHeadersReceived(httpHeaders);
+	}
+
+	/**
+	 * Parses the "Content-Range" header of a "206 Partial Content" response
+	 * (eg. "bytes 1000-1999/4000"). Also used by the ResponseToResumableFile.
+	 * 
+	 * @param range
+	 *            value of the "Content-Range" header (or null)
+	 * 
+	 * @return first byte, last byte and the total length (-1 = unknown), or
+	 *         null if the header is missing or invalid
+	 */
+	protected static long[] parseContentRange(String range) {
+		if (range == null || !range.startsWith("bytes ")) {
+			return null;
+		}
+		int dash = range.indexOf('-');
+		int slash = range.indexOf('/');
+		if (dash < 7 || slash < dash) {
+			return null;
+		}
+		try {
+			long start = Long.parseLong(range.substring(6, dash).trim());
+			long end = Long.parseLong(range.substring(dash + 1, slash).trim());
+			String total = range.substring(slash + 1).trim();
+			long length = "*".equals(total) ? -1 : Long.parseLong(total);
+			if (end < start || (length > -1 && end >= length)) {
+				return null;
+			}
+			return new long[] { start, end, length };
+		} catch (NumberFormatException invalid) {
+			return null;
+		}
+	}
+
+	@Override
+	public State onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+		if (segment.download.finished.get()) {
+
+			// Cancelled (another segment failed)
+			return State.ABORT;
+		}
+		ByteBuffer buffer = bodyPart.getBodyByteBuffer();
+
+		// Do not write over the end of the segment
+		long remaining = segment.end - segment.position + 1;
+		if (buffer.remaining() > remaining) {
+			buffer.limit(buffer.position() + (int) remaining);
+		}
+		int len = buffer.remaining();
+		long position = segment.position;
+		while (buffer.hasRemaining()) {
+			position += fileChannel.write(buffer, position);
+		}
+		segment.position = position;
+		segment.download.transfered.addAndGet(len);
+		return State.CONTINUE;
+	}
+
+	@Override
+	public Tree onCompleted() throws Exception {
+		Tree rsp = new Tree();
+		rsp.put("transfered", segment.position - segment.start);
+		addStatusAndHeaders(rsp);
+		return rsp;
+	}
+
+}
\ No newline at end of file
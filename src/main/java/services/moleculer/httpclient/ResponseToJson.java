@@ -24,10 +24,16 @@
  */
 package services.moleculer.httpclient;
 
+import java.nio.MappedByteBuffer;
+
 import io.datatree.Tree;
+import io.datatree.dom.TreeReader;
+import services.moleculer.util.CheckedTree;
 
 /**
- * Returns the response in a Tree object (~= JSON object).
+ * Returns the response in a Tree object (~= JSON object). Binary responses
+ * (eg. MessagePack or CBOR, see ContentFormats) are parsed by the format of
+ * their "Content-Type" header.
  */
 public class ResponseToJson extends ResponseToBytes {
 	
@@ -38,18 +44,46 @@ public class ResponseToJson extends ResponseToBytes {
 	}
 	
 	// --- REQUEST PROCESSORS ---
+
+	@Override
+	protected long getParseCost() {
+		return spillFile == null ? accumulator.length() : spillFile.length();
+	}
 	
 	@Override
 	public Tree onCompleted() throws Exception {
 		Tree rsp;
-		if (bytes == null || bytes.length == 0) {
-
-			// No response body (eg. empty 200/204 response). AsyncHttpClient 3.x
-			// does not invoke onBodyPartReceived when the body is empty, so
-			// "bytes" stays null - treat it as an empty JSON structure.
-			rsp = new Tree();
-		} else {
-			rsp = new Tree(bytes);
+		try {
+			String format = getBinaryFormat();
+			if (format != null) {
+
+				// Binary response (the readers need the whole body)
+				byte[] bytes = getBytes();
+				rsp = bytes.length == 0 ? new Tree() : new Tree(bytes, format);
+			} else if (spillFile != null && spillFile.length() > 0) {
+
+				// Large body, parse the memory-mapped temp file
+				IncrementalJsonParser parser = new IncrementalJsonParser();
+				for (MappedByteBuffer segment : spillFile.map()) {
+					parser.feed(segment);
+				}
+				rsp = new CheckedTree(parser.finish());
+			} else {
+				byte[] bytes = getBytes();
+				if (bytes.length == 0) {
+
+					// No response body (eg. empty 200/204 response). AsyncHttpClient 3.x
+					// does not invoke onBodyPartReceived when the body is empty, so
+					// the body is empty - treat it as an empty JSON structure.
+					rsp = new Tree();
+				} else {
+					TreeReader reader = params.jsonReader;
+					rsp = reader == null ? new Tree(bytes) : new CheckedTree(reader.parse(bytes));
+				}
+			}
+		} finally {
+			closeSpillFile();
+			releaseReserved(true);
 		}
 		addStatusAndHeaders(rsp);
 		return rsp;
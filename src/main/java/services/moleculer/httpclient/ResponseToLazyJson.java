@@ -0,0 +1,86 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import io.datatree.Tree;
+import services.moleculer.util.CheckedTree;
+
+/**
+ * Returns the JSON object response in a lazy Tree (see LazyJsonMap). The body
+ * is not parsed on Netty's event loop; it is parsed on the first structural
+ * access of the Tree, or never, if the Tree is only forwarded. Arrays, binary
+ * formats and spilled (large) bodies are parsed normally.
+ */
+public class ResponseToLazyJson extends ResponseToJson {
+
+	// --- CONSTRUCTOR ---
+
+	protected ResponseToLazyJson(RequestParams params) {
+		super(params);
+	}
+
+	// --- REQUEST PROCESSORS ---
+
+	@Override
+	protected long getParseCost() {
+
+		// JSON objects are not parsed here
+		return spillFile != null || getBinaryFormat() != null ? super.getParseCost() : 0;
+	}
+
+	@Override
+	public Tree onCompleted() throws Exception {
+		if (spillFile != null || getBinaryFormat() != null) {
+			return super.onCompleted();
+		}
+		byte[] bytes = getBytes();
+		if (!isObject(bytes)) {
+			return super.onCompleted();
+		}
+		releaseReserved(true);
+		Tree rsp = new CheckedTree(new LazyJsonMap(bytes, params.jsonReader));
+		addStatusAndHeaders(rsp);
+		return rsp;
+	}
+
+	/**
+	 * Returns true if the body is a JSON object (the first non-whitespace
+	 * character is a "{").
+	 * 
+	 * @param bytes
+	 *            response body
+	 * 
+	 * @return true = JSON object
+	 */
+	protected static boolean isObject(byte[] bytes) {
+		for (byte b : bytes) {
+			if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+				return b == '{';
+			}
+		}
+		return false;
+	}
+
+}
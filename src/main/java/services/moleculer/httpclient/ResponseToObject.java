@@ -0,0 +1,92 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.io.IOException;
+
+import org.asynchttpclient.HttpResponseStatus;
+
+import io.datatree.Tree;
+import services.moleculer.util.CheckedTree;
+
+/**
+ * Binds the response directly into a Java record or POJO (see ObjectBinder).
+ * JSON responses are parsed while the body parts arrive, and the parsed Maps
+ * and Lists are converted into the target type, without creating Tree
+ * objects; binary responses (see ContentFormats) are parsed by their readers.
+ * The Promise is resolved with a Tree that wraps the bound object (use
+ * "rsp.asObject()", and the typed methods of the HttpClient, eg.
+ * "client.getAs(url, MyRecord.class)"). The bound object has no meta
+ * structure, so non-2xx responses (eg. an error page or a JSON error
+ * object) are not bound, they reject the Promise with an IOException.
+ */
+public class ResponseToObject extends ResponseToStreamedJson {
+
+	// --- VARIABLES ---
+
+	protected final Class<?> type;
+
+	// --- CONSTRUCTOR ---
+
+	protected ResponseToObject(RequestParams params) {
+		super(params);
+		this.type = params.bindType;
+	}
+
+	// --- REQUEST PROCESSORS ---
+
+	@Override
+	public State onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+		int code = responseStatus.getStatusCode();
+		if (code < 200 || code > 299) {
+			throw new IOException("Unable to bind response to " + type.getName() + " (status: " + code + ")!");
+		}
+		return super.onStatusReceived(responseStatus);
+	}
+
+	@Override
+	public Tree onCompleted() throws Exception {
+		Object value = null;
+		try {
+			if (binaryBody != null) {
+				byte[] bytes;
+				try {
+					bytes = binaryBody.toByteArray();
+				} finally {
+					binaryBody.release();
+				}
+				if (bytes.length > 0) {
+					value = new Tree(bytes, format).asObject();
+				}
+			} else if (parser.isStarted()) {
+				value = parser.finish();
+			}
+		} finally {
+			releaseReserved(true);
+		}
+		return new CheckedTree(ObjectBinder.bind(value, type));
+	}
+
+}
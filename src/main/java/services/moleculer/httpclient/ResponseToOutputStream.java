@@ -25,12 +25,12 @@
 package services.moleculer.httpclient;
 
 import java.io.OutputStream;
-import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.asynchttpclient.HttpResponseBodyPart;
 
 import io.datatree.Tree;
+import io.netty.buffer.ByteBuf;
 
 /**
  * Redirects response into the specific OutputStream (eg. into file, database
@@ -38,6 +38,19 @@ import io.datatree.Tree;
  */
 public class ResponseToOutputStream extends ResponseHandler {
 
+	// --- CONSTANTS ---
+
+	/**
+	 * Size of the per-thread copy buffer (in pooled mode).
+	 */
+	protected static final int SCRATCH_SIZE = 64 * 1024;
+
+	/**
+	 * Per-thread copy buffer (in pooled mode the body parts are in Netty's
+	 * direct buffers, which cannot be passed to an OutputStream).
+	 */
+	protected static final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[SCRATCH_SIZE]);
+
 	// --- VARIABLES ---
 
 	protected final OutputStream target;
@@ -59,10 +72,32 @@ public class ResponseToOutputStream extends ResponseHandler {
 
 	@Override
 	public State onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
-		ByteBuffer buffer = bodyPart.getBodyByteBuffer();
-		int len = buffer.capacity();
-		byte[] chunk = new byte[len];
-		buffer.get(chunk, 0, len);
+		if (params.allocator != null) {
+
+			// Pooled mode (the buffer is valid only during this call)
+			ByteBuf buffer = bodyPart.getBodyByteBuf();
+			int len = buffer.readableBytes();
+			if (buffer.hasArray()) {
+				target.write(buffer.array(), buffer.arrayOffset() + buffer.readerIndex(), len);
+			} else {
+				byte[] chunk = scratch.get();
+				int index = buffer.readerIndex();
+				int remaining = len;
+				while (remaining > 0) {
+					int n = Math.min(remaining, chunk.length);
+					buffer.getBytes(index, chunk, 0, n);
+					target.write(chunk, 0, n);
+					index += n;
+					remaining -= n;
+				}
+			}
+			transfered.addAndGet(len);
+			return State.CONTINUE;
+		}
+
+		// The default ("eager") body part returns its own array (no copy)
+		byte[] chunk = bodyPart.getBodyPartBytes();
+		int len = chunk.length;
 		target.write(chunk, 0, len);
 		transfered.addAndGet(len);
 		return State.CONTINUE;
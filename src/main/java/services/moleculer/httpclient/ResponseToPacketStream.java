@@ -25,6 +25,14 @@
 package services.moleculer.httpclient;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 import org.asynchttpclient.HttpResponseBodyPart;
 
@@ -33,7 +41,25 @@ import services.moleculer.stream.PacketStream;
 
 /**
  * Redirects response into the specific Moleculer PacketStream (eg. to another
- * Moleculer node / service).
+ * Moleculer node / service). In flow-controlled mode (when the
+ * "highWatermark" is greater than zero) the packets are written into the
+ * PacketStream by the Executor of the HttpClient, and the reading from the
+ * HTTP connection is paused while the number of the unconsumed bytes is above
+ * the "highWatermark" (and resumed below the "lowWatermark").<br>
+ * <br>
+ * Without a "consumedBytes" counter, the unconsumed bytes are the bytes that
+ * have not yet been passed to "PacketStream.sendData". This bounds the queue
+ * of this handler only: the PacketStream buffers the packets while it has no
+ * listener, and asynchronous listeners return before processing the data. To
+ * bound the memory used by a slow consumer, the consumer must report the
+ * number of the processed bytes (eg. via an AtomicLong) in the
+ * "consumedBytes" counter; then the unconsumed bytes are the bytes received
+ * from the server, but not yet processed by the consumer.<br>
+ * <br>
+ * If the "streamPacketSize" of the request is greater than zero, the received
+ * bytes are aggregated into packets of at least this size (the remaining bytes
+ * are sent after the "streamFlushTimeout", or at the end of the response).
+ * Larger body parts are forwarded whole, without splitting.
  */
 public class ResponseToPacketStream extends ResponseHandler {
 
@@ -41,41 +67,282 @@ public class ResponseToPacketStream extends ResponseHandler {
 
 	protected final PacketStream target;
 
-	// --- CONSTRUCTOR ---
+	// --- FLOW CONTROL ---
+
+	protected final long lowWatermark;
+	protected final long highWatermark;
+	protected final LongSupplier consumedBytes;
+
+	protected final ConcurrentLinkedQueue<byte[]> queue = new ConcurrentLinkedQueue<>();
+	protected final AtomicLong pending = new AtomicLong();
+	protected final AtomicLong received = new AtomicLong();
+	protected final AtomicLong forwarded = new AtomicLong();
+	protected final AtomicBoolean draining = new AtomicBoolean();
+	protected final AtomicBoolean completed = new AtomicBoolean();
+	protected final AtomicBoolean closed = new AtomicBoolean();
+
+	// --- PACKET AGGREGATION ---
+
+	protected byte[] packet;
+	protected int packetLength;
+	protected ScheduledFuture<?> flushTimer;
+
+	// --- CONSUMER POLLING ---
+
+	/**
+	 * Polling interval of the "consumedBytes" counter while the reading is
+	 * paused (in milliseconds).
+	 */
+	protected static final long CONSUMER_POLL_INTERVAL = 10;
+
+	protected ScheduledFuture<?> pollTimer;
+
+	// --- CONSTRUCTORS ---
 
 	protected ResponseToPacketStream(RequestParams params, PacketStream target) {
+		this(params, target, 0, 0, null);
+	}
+
+	protected ResponseToPacketStream(RequestParams params, PacketStream target, long lowWatermark,
+			long highWatermark) {
+		this(params, target, lowWatermark, highWatermark, null);
+	}
+
+	protected ResponseToPacketStream(RequestParams params, PacketStream target, long lowWatermark,
+			long highWatermark, LongSupplier consumedBytes) {
 		super(params);
 		this.target = target;
+		this.lowWatermark = Math.min(lowWatermark, highWatermark);
+		this.highWatermark = highWatermark;
+		this.consumedBytes = consumedBytes;
 	}
 
 	// --- REQUEST PROCESSORS ---
 
 	@Override
 	public void onThrowable(Throwable t) {
+		synchronized (this) {
+			packet = null;
+			cancelFlushTimer();
+		}
+		queue.clear();
+		pending.set(0);
+		cancelPollTimer();
+		resumeReading();
 		closeStream();
 	}
 
 	@Override
 	public State onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
-		ByteBuffer buffer = bodyPart.getBodyByteBuffer();
-		int len = buffer.capacity();
-		byte[] chunk = new byte[len];
-		buffer.get(chunk, 0, len);
-		target.sendData(chunk);
+
+		if (params.streamPacketSize < 1) {
+
+			// The "eager" body part returns its own array (no copy), the
+			// "lazy" (pooled) body part returns a new array
+			byte[] chunk = bodyPart.getBodyPartBytes();
+			received.addAndGet(chunk.length);
+			forward(chunk);
+		} else {
+
+			// Copy the bytes directly into the packet
+			ByteBuffer buffer = bodyPart.getBodyByteBuffer();
+			received.addAndGet(buffer.remaining());
+			aggregate(buffer, params.streamPacketSize);
+		}
 		return State.CONTINUE;
 	}
 
 	@Override
 	public Tree onCompleted() throws Exception {
-		closeStream();
+		flush();
 		Tree rsp = new Tree();
-		rsp.put("transfered", target.getTransferedBytes());
+		if (highWatermark < 1) {
+			closeStream();
+			rsp.put("transfered", target.getTransferedBytes());
+		} else {
+
+			// The whole body has been read, the connection can be reused
+			cancelPollTimer();
+			resumeReading();
+
+			// The stream will be closed after the last queued packet
+			completed.set(true);
+			drain();
+			rsp.put("transfered", received.get());
+		}
 		addStatusAndHeaders(rsp);
 		return rsp;
 	}
 
+	// --- PACKET AGGREGATION ---
+
+	protected synchronized void aggregate(ByteBuffer buffer, int packetSize) throws Exception {
+		while (buffer.hasRemaining()) {
+			if (packet == null) {
+				int remaining = buffer.remaining();
+				if (remaining >= packetSize) {
+
+					// Large enough body part (forwarded whole, without buffering)
+					if (params.allocator == null && buffer.hasArray() && buffer.arrayOffset() == 0
+							&& buffer.position() == 0 && buffer.array().length == remaining) {
+
+						// The "eager" body part's own array
+						forward(buffer.array());
+						buffer.position(buffer.limit());
+					} else {
+						byte[] full = new byte[remaining];
+						buffer.get(full);
+						forward(full);
+					}
+					continue;
+				}
+				packet = new byte[packetSize];
+				packetLength = 0;
+			}
+			int len = Math.min(packetSize - packetLength, buffer.remaining());
+			buffer.get(packet, packetLength, len);
+			packetLength += len;
+			if (packetLength == packetSize) {
+				byte[] full = packet;
+				packet = null;
+				cancelFlushTimer();
+				forward(full);
+			}
+		}
+		long timeout = params.streamFlushTimeout;
+		if (packet != null && flushTimer == null && timeout > 0) {
+			flushTimer = params.scheduler.schedule(() -> {
+				try {
+					flush();
+				} catch (Throwable cause) {
+					if (closed.compareAndSet(false, true)) {
+						target.sendError(cause);
+					}
+				}
+			}, timeout, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	protected synchronized void flush() throws Exception {
+		cancelFlushTimer();
+		if (packet != null) {
+			byte[] remaining = packetLength == packet.length ? packet : Arrays.copyOf(packet, packetLength);
+			packet = null;
+			forward(remaining);
+		}
+	}
+
+	protected void cancelFlushTimer() {
+		if (flushTimer != null) {
+			flushTimer.cancel(false);
+			flushTimer = null;
+		}
+	}
+
+	// --- FORWARD PACKET ---
+
+	protected void forward(byte[] chunk) throws Exception {
+		if (highWatermark < 1) {
+			target.sendData(chunk);
+			return;
+		}
+		queue.add(chunk);
+		pending.addAndGet(chunk.length);
+		if (getPendingBytes() > highWatermark) {
+			pauseReading();
+			if (consumedBytes != null) {
+				startPollTimer();
+			}
+		}
+		drain();
+	}
+
+	// --- FLOW-CONTROLLED WRITING ---
+
+	protected void drain() {
+		if (draining.compareAndSet(false, true)) {
+			Executor executor = params.getExecutor();
+			executor.execute(this::writePackets);
+		}
+	}
+
+	protected void writePackets() {
+		try {
+			byte[] chunk;
+			while ((chunk = queue.poll()) != null) {
+				target.sendData(chunk);
+				forwarded.addAndGet(chunk.length);
+				pending.addAndGet(-chunk.length);
+				checkWatermark();
+			}
+			if (completed.get() && queue.isEmpty()) {
+				closeStream();
+			}
+		} catch (Throwable cause) {
+			queue.clear();
+			cancelPollTimer();
+			resumeReading();
+			if (closed.compareAndSet(false, true)) {
+				target.sendError(cause);
+			}
+		} finally {
+			draining.set(false);
+		}
+
+		// New packets (or the end of the response) arrived
+		if (!queue.isEmpty() || (completed.get() && !closed.get())) {
+			drain();
+		}
+	}
+
+	/**
+	 * Resumes reading if the number of the unconsumed bytes is below the
+	 * "lowWatermark".
+	 */
+	protected void checkWatermark() {
+		if (paused && !completed.get() && getPendingBytes() <= lowWatermark) {
+			cancelPollTimer();
+			resumeReading();
+		}
+	}
+
+	/**
+	 * Returns the number of received, but not yet consumed bytes (in
+	 * flow-controlled mode). Without a "consumedBytes" counter, these are the
+	 * bytes that have not yet been passed to the PacketStream.
+	 * 
+	 * @return number of pending bytes
+	 */
+	public long getPendingBytes() {
+		long bytes = pending.get();
+		if (consumedBytes != null) {
+			bytes += Math.max(0, forwarded.get() - consumedBytes.getAsLong());
+		}
+		return bytes;
+	}
+
+	// --- CONSUMER POLLING ---
+
+	/**
+	 * The consumer does not notify the handler, so the "consumedBytes"
+	 * counter is polled while the reading is paused.
+	 */
+	protected synchronized void startPollTimer() {
+		if (pollTimer == null) {
+			pollTimer = params.scheduler.scheduleWithFixedDelay(this::checkWatermark, CONSUMER_POLL_INTERVAL,
+					CONSUMER_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	protected synchronized void cancelPollTimer() {
+		if (pollTimer != null) {
+			pollTimer.cancel(false);
+			pollTimer = null;
+		}
+	}
+
 	protected void closeStream() {
-		if (target != null) {
+		if (target != null && closed.compareAndSet(false, true)) {
 			target.sendClose();
 		}
 	}
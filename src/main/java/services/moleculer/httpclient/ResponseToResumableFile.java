@@ -0,0 +1,195 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.HttpResponseStatus;
+
+import io.datatree.Tree;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+
+/**
+ * Writes the response of a resumable download into the target file (see
+ * ResumableDownload). A "206 Partial Content" response is appended to the
+ * stored bytes (its "Content-Range" must start at the stored position), a
+ * "200 OK" response overwrites the file. The file is opened after the
+ * headers are validated. The progress is saved periodically, and when the
+ * download fails.
+ */
+public class ResponseToResumableFile extends ResponseHandler {
+
+	// --- VARIABLES ---
+
+	protected final ResumableDownload download;
+
+	protected FileChannel channel;
+	protected long position;
+	protected long checkpoint;
+
+	/**
+	 * "206 Partial Content" response.
+	 */
+	protected boolean partial;
+
+	/**
+	 * The file was already complete ("416 Range Not Satisfiable" response).
+	 */
+	protected boolean satisfied;
+
+	// --- CONSTRUCTOR ---
+
+	protected ResponseToResumableFile(RequestParams params, ResumableDownload download) {
+		super(params);
+		this.download = download;
+	}
+
+	// --- REQUEST PROCESSORS ---
+
+	@Override
+	public State onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+		int code = responseStatus.getStatusCode();
+		if (code == 206) {
+			position = download.position;
+			partial = true;
+		} else if (code == 200) {
+
+			// New download (or the resource has been changed)
+			position = 0;
+		} else if (code == 416 && download.length > 0 && download.position == download.length) {
+
+			// All bytes have been received before the failure
+			position = download.position;
+			satisfied = true;
+		} else {
+			if (code == 416) {
+
+				// The stored bytes are invalid (eg. the resource is shorter),
+				// the next attempt starts again from the first byte
+				download.position = 0;
+			}
+			throw new HttpStatusException("Unable to download file (status: " + code + ")!", code);
+		}
+		return super.onStatusReceived(responseStatus);
+	}
+
+	@Override
+	public State onHeadersReceived(HttpHeaders httpHeaders) throws Exception {
+		if (satisfied) {
+			return super.onHeadersReceived(httpHeaders);
+		}
+		if (partial) {
+
+			// Content-Range: bytes [position]-[end]/[length or *]
+			String range = httpHeaders.get(HttpHeaderNames.CONTENT_RANGE);
+			long[] contentRange = ResponseToFileRange.parseContentRange(range);
+			if (contentRange == null || contentRange[0] != position) {
+				throw new IOException(
+						"Invalid Content-Range (requested: bytes " + position + "-, received: " + range + ")!");
+			}
+			download.length = contentRange[2];
+		} else {
+			download.length = -1;
+			String contentLength = httpHeaders.get(HttpHeaderNames.CONTENT_LENGTH);
+			if (contentLength != null) {
+				try {
+					download.length = Long.parseLong(contentLength.trim());
+				} catch (NumberFormatException ignored) {
+				}
+			}
+		}
+		download.etag = httpHeaders.get(HttpHeaderNames.ETAG);
+		download.lastModified = httpHeaders.get(HttpHeaderNames.LAST_MODIFIED);
+		checkpoint = position;
+		channel = FileChannel.open(download.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		channel.truncate(position);
+		download.saveCheckpoint(null, position);
+		return super.onHeadersReceived(httpHeaders);
+	}
+
+	@Override
+	public State onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+		if (satisfied) {
+			return State.CONTINUE;
+		}
+		ByteBuffer buffer = bodyPart.getBodyByteBuffer();
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+		if (position - checkpoint >= ResumableDownload.CHECKPOINT_INTERVAL) {
+			checkpoint = position;
+			download.saveCheckpoint(channel, position);
+		}
+		return State.CONTINUE;
+	}
+
+	@Override
+	public void onThrowable(Throwable t) {
+		try {
+			if (channel != null) {
+				download.saveCheckpoint(channel, position);
+			}
+		} catch (Exception ignored) {
+		} finally {
+			closeChannel();
+		}
+	}
+
+	@Override
+	public Tree onCompleted() throws Exception {
+		try {
+			if (download.length > 0 && position < download.length) {
+				download.saveCheckpoint(channel, position);
+				throw new IOException("Incomplete response (received " + position + " of " + download.length
+						+ " bytes)!");
+			}
+			if (channel != null) {
+				channel.force(false);
+			}
+			download.position = position;
+		} finally {
+			closeChannel();
+		}
+		Tree rsp = new Tree();
+		rsp.put("transfered", position);
+		addStatusAndHeaders(rsp);
+		return rsp;
+	}
+
+	protected void closeChannel() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (Exception ignored) {
+			}
+		}
+	}
+
+}
\ No newline at end of file
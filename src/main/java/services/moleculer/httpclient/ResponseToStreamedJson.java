@@ -0,0 +1,130 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import org.asynchttpclient.HttpResponseBodyPart;
+
+import io.datatree.Tree;
+import io.netty.handler.codec.http.HttpHeaders;
+import services.moleculer.util.CheckedTree;
+
+/**
+ * Parses the JSON response while the body parts arrive (the parsing does not
+ * start after the last byte, and the raw body is not stored in the memory).
+ * If JSON paths are selected, only the selected values are materialized (see
+ * ProjectingJsonParser).
+ * Binary responses (see ContentFormats) are collected and parsed at the end.
+ * The received bytes are reserved from the memory budget of the client (the
+ * parsed structure is held in the memory until the end of the response).
+ */
+public class ResponseToStreamedJson extends ResponseHandler {
+
+	// --- VARIABLES ---
+
+	protected final IncrementalJsonParser parser;
+
+	/**
+	 * Body of a binary (non-JSON) response.
+	 */
+	protected BodyAccumulator binaryBody;
+
+	/**
+	 * Format of a binary response (null = JSON).
+	 */
+	protected String format;
+
+	// --- CONSTRUCTOR ---
+
+	protected ResponseToStreamedJson(RequestParams params) {
+		super(params);
+		if (params.projection == null) {
+			parser = new IncrementalJsonParser();
+		} else {
+			parser = new ProjectingJsonParser(params.projection);
+		}
+	}
+
+	// --- REQUEST PROCESSORS ---
+
+	@Override
+	public State onHeadersReceived(HttpHeaders httpHeaders) throws Exception {
+		State state = super.onHeadersReceived(httpHeaders);
+		format = getBinaryFormat();
+		if (format != null) {
+			binaryBody = new BodyAccumulator(params.allocator);
+		}
+		return state;
+	}
+
+	@Override
+	public State onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+		reserve(bodyPart.length());
+		if (binaryBody != null) {
+			binaryBody.append(bodyPart);
+		} else {
+			parser.feed(bodyPart.getBodyByteBuffer());
+		}
+		return State.CONTINUE;
+	}
+
+	@Override
+	public void onThrowable(Throwable t) {
+		try {
+			if (binaryBody != null) {
+				binaryBody.release();
+			}
+			releaseReserved(true);
+		} finally {
+			super.onThrowable(t);
+		}
+	}
+
+	@Override
+	public Tree onCompleted() throws Exception {
+		Tree rsp;
+		try {
+			if (binaryBody != null) {
+				byte[] bytes;
+				try {
+					bytes = binaryBody.toByteArray();
+				} finally {
+					binaryBody.release();
+				}
+				rsp = bytes.length == 0 ? new Tree() : new Tree(bytes, format);
+			} else if (parser.isStarted()) {
+				rsp = new CheckedTree(parser.finish());
+			} else {
+
+				// No response body (eg. empty 200/204 response)
+				rsp = new Tree();
+			}
+		} finally {
+			releaseReserved(true);
+		}
+		addStatusAndHeaders(rsp);
+		return rsp;
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,263 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+import io.datatree.Promise;
+import io.datatree.Tree;
+
+/**
+ * Resumable file downloader. The progress of the download and the validators
+ * of the resource ("ETag" and "Last-Modified" headers) are stored in a
+ * sidecar file (named "[file].resume"), next to the target file. After a
+ * failure (or a restart of the process) the download continues from the last
+ * checkpoint, with a "Range" and an "If-Range" request header; if the
+ * resource has been changed on the server, the server sends the whole
+ * resource, and the download starts again from the first byte. Failed
+ * attempts are retried with exponential backoff (permanent errors, eg. "404
+ * Not Found", are not retried). The sidecar file is deleted when the
+ * download is completed. The Promise is resolved with the statistics of the
+ * download:
+ * 
+ * <pre>
+ * {
+ *   "length": 104857600,
+ *   "resumedFrom": 52428800,
+ *   "retries": 1
+ * }
+ * </pre>
+ */
+public class ResumableDownload {
+
+	// --- CONSTANTS ---
+
+	/**
+	 * Extension of the sidecar file.
+	 */
+	public static final String SIDECAR_EXTENSION = ".resume";
+
+	/**
+	 * Number of bytes between two checkpoints.
+	 */
+	protected static final long CHECKPOINT_INTERVAL = 4 * 1024 * 1024;
+
+	// --- VARIABLES ---
+
+	protected final HttpClient client;
+	protected final String url;
+	protected final Path file;
+	protected final Path sidecar;
+	protected final int maxRetries;
+	protected final Consumer<RequestParams> configurator;
+	protected final Promise promise = new Promise();
+
+	/**
+	 * Number of stored bytes (at the last checkpoint).
+	 */
+	protected volatile long position;
+
+	/**
+	 * Total length of the resource (-1 = unknown).
+	 */
+	protected volatile long length = -1;
+
+	/**
+	 * Validators of the resource.
+	 */
+	protected volatile String etag;
+	protected volatile String lastModified;
+
+	protected long resumedFrom;
+	protected int retries;
+
+	// --- CONSTRUCTOR ---
+
+	protected ResumableDownload(HttpClient client, String url, Path file, int maxRetries,
+			Consumer<RequestParams> configurator) {
+		this.client = client;
+		this.url = url;
+		this.file = file;
+		this.sidecar = file.resolveSibling(file.getFileName() + SIDECAR_EXTENSION);
+		this.maxRetries = Math.max(0, maxRetries);
+		this.configurator = configurator;
+	}
+
+	// --- START DOWNLOAD ---
+
+	protected Promise start() {
+		try {
+			loadCheckpoint();
+			resumedFrom = position;
+			download();
+		} catch (Throwable cause) {
+			promise.complete(cause);
+		}
+		return promise;
+	}
+
+	protected void download() {
+		client.get(url, params -> {
+			if (configurator != null) {
+				configurator.accept(params);
+			}
+			String validator = getValidator();
+			if (position > 0 && validator != null) {
+				params.setHeader("Range", "bytes=" + position + '-');
+				params.setHeader("If-Range", validator);
+			}
+			params.transferTo(new ResponseToResumableFile(params, this));
+		}).then(rsp -> {
+			try {
+				deleteCheckpoint();
+			} catch (Throwable ignored) {
+			}
+			Tree stats = new Tree();
+			stats.put("length", position);
+			stats.put("resumedFrom", resumedFrom);
+			stats.put("retries", retries);
+			promise.complete(stats);
+			return null;
+		}).catchError(err -> {
+			if (retries < maxRetries && HttpStatusException.isRetryable(err)) {
+				retries++;
+				SegmentedDownload.schedule(client.getScheduler(), this::download, retries);
+			} else {
+				promise.complete(err);
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Returns the validator for the "If-Range" header. A weak ETag can not be
+	 * used in the "If-Range" header.
+	 * 
+	 * @return ETag, Last-Modified or null
+	 */
+	protected String getValidator() {
+		if (etag != null && !etag.startsWith("W/")) {
+			return etag;
+		}
+		return lastModified;
+	}
+
+	// --- CHECKPOINTS ---
+
+	protected void loadCheckpoint() throws IOException {
+		if (!Files.isRegularFile(sidecar) || !Files.isRegularFile(file)) {
+			return;
+		}
+		Properties props = new Properties();
+		try (InputStream in = Files.newInputStream(sidecar)) {
+			props.load(in);
+		}
+		if (!url.equals(props.getProperty("url"))) {
+
+			// Another download
+			return;
+		}
+		etag = props.getProperty("etag");
+		lastModified = props.getProperty("lastModified");
+		length = Long.parseLong(props.getProperty("length", "-1"));
+
+		// The file may contain more (unsaved) bytes than the checkpoint
+		position = Math.min(Long.parseLong(props.getProperty("position", "0")), Files.size(file));
+	}
+
+	/**
+	 * Flushes the file to the disk, then stores the progress in the sidecar
+	 * file.
+	 * 
+	 * @param channel
+	 *            channel of the target file (or null)
+	 * @param stored
+	 *            number of bytes written into the target file
+	 * 
+	 * @throws IOException
+	 *             any I/O error
+	 */
+	protected synchronized void saveCheckpoint(FileChannel channel, long stored) throws IOException {
+		if (channel != null && channel.isOpen()) {
+			channel.force(false);
+		}
+		position = stored;
+		if (etag == null && lastModified == null) {
+
+			// The download can not be resumed safely
+			return;
+		}
+		Properties props = new Properties();
+		props.setProperty("url", url);
+		if (etag != null) {
+			props.setProperty("etag", etag);
+		}
+		if (lastModified != null) {
+			props.setProperty("lastModified", lastModified);
+		}
+		props.setProperty("length", Long.toString(length));
+		props.setProperty("position", Long.toString(stored));
+		Path tmp = sidecar.resolveSibling(sidecar.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(tmp, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			props.store(out, null);
+		}
+		Files.move(tmp, sidecar, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	protected synchronized void deleteCheckpoint() throws IOException {
+		Files.deleteIfExists(sidecar);
+	}
+
+	// --- PROGRESS ---
+
+	/**
+	 * Returns the number of stored bytes (at the last checkpoint).
+	 * 
+	 * @return number of bytes
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Returns the sidecar file of the download.
+	 * 
+	 * @return path of the sidecar file
+	 */
+	public Path getSidecar() {
+		return sidecar;
+	}
+
+}
\ No newline at end of file
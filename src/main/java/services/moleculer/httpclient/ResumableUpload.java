@@ -0,0 +1,367 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+import io.datatree.Promise;
+import io.datatree.Tree;
+import io.netty.util.concurrent.FastThreadLocalThread;
+import services.moleculer.stream.PacketStream;
+
+/**
+ * Resumable (chunked) uploader. Splits the content of a PacketStream into
+ * fixed-size parts, and sends each part in a separate PUT request, with a
+ * "Content-Range" header (eg. "bytes 0-4194303/*"; the total length is sent
+ * only in the header of the last part). A bounded window of parts is sent
+ * concurrently; the failed parts are sent again with exponential backoff (up
+ * to "maxRetries" times per part; permanent errors, eg. "403 Forbidden", are
+ * not retried), the successful ones are never re-sent. The last part is sent
+ * after all the other parts have been acknowledged, so the server can
+ * finalize the upload when it receives the total length. When the window is
+ * full, the thread of the producer (which calls the "PacketStream.sendData"
+ * method) is blocked until a part is acknowledged, so the memory usage is
+ * bounded (approximately "partSize * (window + 2)" bytes). Netty's event loop
+ * threads are never blocked. The Promise is resolved with the statistics of
+ * the upload:
+ * 
+ * <pre>
+ * {
+ *   "length": 104857600,
+ *   "parts": 25,
+ *   "retries": 1
+ * }
+ * </pre>
+ */
+public class ResumableUpload {
+
+	// --- VARIABLES ---
+
+	protected final HttpClient client;
+	protected final String url;
+	protected final int partSize;
+	protected final int window;
+	protected final int maxRetries;
+	protected final Consumer<RequestParams> configurator;
+	protected final Promise promise = new Promise();
+
+	/**
+	 * Parts waiting to be sent.
+	 */
+	protected final ArrayDeque<Part> pending = new ArrayDeque<>();
+
+	/**
+	 * Full part, which is not sent until the next byte arrives (because the
+	 * last part must contain the total length).
+	 */
+	protected Part held;
+
+	/**
+	 * Current (incomplete) part.
+	 */
+	protected byte[] buffer;
+	protected int bufferLength;
+
+	/**
+	 * Number of received bytes.
+	 */
+	protected long received;
+
+	/**
+	 * Number of acknowledged bytes.
+	 */
+	protected long acknowledged;
+
+	protected int inFlight;
+	protected int parts;
+	protected int retries;
+	protected boolean closed;
+	protected boolean finished;
+
+	// --- CONSTRUCTOR ---
+
+	protected ResumableUpload(HttpClient client, String url, int partSize, int window, int maxRetries,
+			Consumer<RequestParams> configurator) {
+		this.client = client;
+		this.url = url;
+		this.partSize = Math.max(1, partSize);
+		this.window = Math.max(1, window);
+		this.maxRetries = Math.max(0, maxRetries);
+		this.configurator = configurator;
+	}
+
+	// --- START UPLOAD ---
+
+	protected Promise start(PacketStream stream) {
+		stream.onPacket((data, error, close) -> {
+			if (data != null && data.length > 0) {
+				append(data);
+			}
+			if (error != null) {
+				fail(error);
+			}
+			if (close) {
+				close();
+			}
+		});
+		return promise;
+	}
+
+	// --- SPLIT STREAM INTO PARTS ---
+
+	protected void append(byte[] data) {
+		int offset = 0;
+		while (offset < data.length) {
+			synchronized (this) {
+				if (finished) {
+					return;
+				}
+				if (buffer == null) {
+					buffer = new byte[partSize];
+				}
+				int len = Math.min(partSize - bufferLength, data.length - offset);
+				System.arraycopy(data, offset, buffer, bufferLength, len);
+				bufferLength += len;
+				offset += len;
+				if (held != null) {
+
+					// More bytes arrived, the held part is not the last one
+					pending.add(held);
+					held = null;
+				}
+				if (bufferLength == partSize) {
+					held = new Part(received, buffer, bufferLength);
+					received += bufferLength;
+					buffer = null;
+					bufferLength = 0;
+				}
+			}
+			schedule();
+			waitForWindow();
+		}
+	}
+
+	protected void close() {
+		synchronized (this) {
+			if (closed || finished) {
+				return;
+			}
+			closed = true;
+			Part last = held;
+			if (bufferLength > 0 || held == null) {
+				if (held != null) {
+					pending.add(held);
+				}
+				last = new Part(received, buffer == null ? new byte[0] : buffer, bufferLength);
+				received += bufferLength;
+				buffer = null;
+				bufferLength = 0;
+			}
+			held = null;
+			last.last = true;
+			pending.add(last);
+		}
+		schedule();
+	}
+
+	protected void waitForWindow() {
+		if (Thread.currentThread() instanceof FastThreadLocalThread) {
+
+			// Do not block Netty's event loop
+			return;
+		}
+		synchronized (this) {
+			while (!finished && pending.size() + inFlight >= window) {
+				try {
+					wait(1000);
+				} catch (InterruptedException interrupt) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	// --- SEND PARTS ---
+
+	protected void schedule() {
+		while (true) {
+			Part part;
+			synchronized (this) {
+				if (finished || inFlight >= window || pending.isEmpty()) {
+					return;
+				}
+				if (pending.peek().last && inFlight > 0) {
+
+					// Wait for the other parts
+					return;
+				}
+				part = pending.poll();
+				inFlight++;
+			}
+			send(part);
+		}
+	}
+
+	protected void send(Part part) {
+		long end = part.start + part.length - 1;
+		String range;
+		if (part.length == 0) {
+
+			// Empty stream
+			range = "bytes */0";
+		} else {
+			range = "bytes " + part.start + '-' + end + '/' + (part.last ? Long.toString(end + 1) : "*");
+		}
+		client.execute(url, "PUT", params -> {
+			if (configurator != null) {
+				configurator.accept(params);
+			}
+			params.setHeader("Content-Range", range);
+			params.setBody(ByteBuffer.wrap(part.data, 0, part.length));
+			params.returnStatusCode();
+			params.returnAsByteArray();
+		}).then(rsp -> {
+			int status = rsp.getMeta().get("$status", 0);
+			if (status >= 200 && status < 300 || status == 308) {
+				acknowledged(part);
+			} else {
+				retry(part, new HttpStatusException(
+						"Unable to upload part (bytes " + part.start + '-' + end + ", status: " + status + ")!",
+						status));
+			}
+			return null;
+		}).catchError(err -> {
+			retry(part, err);
+			return null;
+		});
+	}
+
+	protected void acknowledged(Part part) {
+		boolean done;
+		synchronized (this) {
+			inFlight--;
+			parts++;
+			acknowledged += part.length;
+			done = closed && inFlight == 0 && pending.isEmpty() && held == null;
+			notifyAll();
+		}
+		if (done) {
+			complete();
+		} else {
+			schedule();
+		}
+	}
+
+	protected void retry(Part part, Throwable cause) {
+		boolean failed;
+		synchronized (this) {
+			failed = part.attempts >= maxRetries || !HttpStatusException.isRetryable(cause);
+			if (failed) {
+				inFlight--;
+			} else {
+				part.attempts++;
+				retries++;
+			}
+		}
+		if (failed) {
+			fail(cause);
+			return;
+		}
+
+		// The part remains "in flight" (so the last part can not overtake it)
+		SegmentedDownload.schedule(client.getScheduler(), () -> {
+			synchronized (this) {
+				if (finished) {
+					return;
+				}
+			}
+			send(part);
+		}, part.attempts);
+	}
+
+	// --- FINISH UPLOAD ---
+
+	protected void complete() {
+		Tree rsp = new Tree();
+		synchronized (this) {
+			if (finished) {
+				return;
+			}
+			finished = true;
+			rsp.put("length", acknowledged);
+			rsp.put("parts", parts);
+			rsp.put("retries", retries);
+		}
+		promise.complete(rsp);
+	}
+
+	protected void fail(Throwable cause) {
+		synchronized (this) {
+			if (finished) {
+				return;
+			}
+			finished = true;
+			pending.clear();
+			held = null;
+			buffer = null;
+			notifyAll();
+		}
+		promise.complete(cause);
+	}
+
+	// --- PROGRESS ---
+
+	/**
+	 * Returns the number of acknowledged (uploaded) bytes.
+	 * 
+	 * @return number of bytes
+	 */
+	public synchronized long getAcknowledged() {
+		return acknowledged;
+	}
+
+	// --- PART ---
+
+	protected static class Part {
+
+		protected final long start;
+		protected final byte[] data;
+		protected final int length;
+
+		protected boolean last;
+		protected int attempts;
+
+		protected Part(long start, byte[] data, int length) {
+			this.start = start;
+			this.data = data;
+			this.length = length;
+		}
+
+	}
+
+}
\ No newline at end of file
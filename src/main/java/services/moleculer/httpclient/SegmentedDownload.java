@@ -0,0 +1,387 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.asynchttpclient.HttpResponseStatus;
+
+import io.datatree.Promise;
+import io.datatree.Tree;
+import io.netty.channel.Channel;
+
+/**
+ * Parallel (segmented) file downloader. Probes the URL with a HEAD request; if
+ * the server supports byte ranges ("Accept-Ranges: bytes" header) and the
+ * "Content-Length" is known, the file is preallocated, and its segments are
+ * downloaded concurrently (over separate connections), via positional writes.
+ * A failed segment is continued from its last written byte (with a new
+ * "Range" request), up to "maxRetries" times, with exponential backoff.
+ * Permanent errors (4xx status codes, except 408, 416 and 429) are not
+ * retried. The "Content-Range" of each response must start at the requested
+ * position. If a segment fails, the other segments are cancelled (their
+ * connections are closed). If the server does not support ranges, the file is
+ * downloaded over one connection (non-2xx responses reject the Promise). The
+ * Promise is resolved with the statistics of the download:
+ * 
+ * <pre>
+ * {
+ *   "length": 104857600,
+ *   "segments": 4,
+ *   "ranged": true,
+ *   "retries": 0,
+ *   "duration": 1250,
+ *   "throughput": 83886080
+ * }
+ * </pre>
+ * 
+ * The "duration" is in milliseconds, the "throughput" is in bytes / second.
+ */
+public class SegmentedDownload {
+
+	// --- CONSTANTS ---
+
+	/**
+	 * Min size of a segment.
+	 */
+	protected static final long MIN_SEGMENT_SIZE = 64 * 1024;
+
+	/**
+	 * Delay of the first retry (in milliseconds; doubled at each retry).
+	 */
+	protected static final long RETRY_DELAY = 100;
+
+	/**
+	 * Max delay between two retries (in milliseconds).
+	 */
+	protected static final long MAX_RETRY_DELAY = 5000;
+
+	// --- VARIABLES ---
+
+	protected final HttpClient client;
+	protected final String url;
+	protected final Path file;
+	protected final int segments;
+	protected final int maxRetries;
+	protected final Consumer<RequestParams> configurator;
+
+	/**
+	 * Number of downloaded bytes (in all segments).
+	 */
+	protected final AtomicLong transfered = new AtomicLong();
+
+	/**
+	 * Number of retries (in all segments).
+	 */
+	protected final AtomicInteger retries = new AtomicInteger();
+
+	/**
+	 * Number of running segments.
+	 */
+	protected final AtomicInteger running = new AtomicInteger();
+
+	/**
+	 * Download is finished (completed or failed).
+	 */
+	protected final AtomicBoolean finished = new AtomicBoolean();
+
+	/**
+	 * Handlers of the running segment requests (for cancellation).
+	 */
+	protected final ConcurrentLinkedQueue<ResponseToFileRange> active = new ConcurrentLinkedQueue<>();
+
+	protected final Promise promise = new Promise();
+	protected FileChannel channel;
+	protected long length = -1;
+	protected int count = 1;
+	protected boolean ranged;
+	protected long startTime;
+
+	// --- CONSTRUCTOR ---
+
+	protected SegmentedDownload(HttpClient client, String url, Path file, int segments, int maxRetries,
+			Consumer<RequestParams> configurator) {
+		this.client = client;
+		this.url = url;
+		this.file = file;
+		this.segments = Math.max(1, segments);
+		this.maxRetries = Math.max(0, maxRetries);
+		this.configurator = configurator;
+	}
+
+	// --- START DOWNLOAD ---
+
+	protected Promise start() {
+		startTime = System.currentTimeMillis();
+		client.head(url, params -> {
+			params.returnStatusCode();
+			params.returnHttpHeaders();
+			if (configurator != null) {
+				configurator.accept(params);
+			}
+		}).then(rsp -> {
+			try {
+				probed(rsp);
+			} catch (Throwable cause) {
+				fail(cause);
+			}
+			return null;
+		}).catchError(err -> {
+			fail(err);
+			return null;
+		});
+		return promise;
+	}
+
+	protected void probed(Tree rsp) throws Exception {
+		Tree meta = rsp.getMeta();
+		Tree headers = meta.get("$headers");
+		if (meta.get("$status", 0) == 200 && headers != null) {
+			String contentLength = getHeader(headers, "Content-Length");
+			if (contentLength != null) {
+				try {
+					length = Long.parseLong(contentLength.trim());
+				} catch (NumberFormatException ignored) {
+				}
+			}
+			ranged = "bytes".equalsIgnoreCase(getHeader(headers, "Accept-Ranges"));
+		}
+		if (!ranged || length < 1 || segments < 2) {
+
+			// Download over one connection
+			ranged = false;
+			downloadAll(0);
+			return;
+		}
+
+		// Preallocate file
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		channel.write(ByteBuffer.wrap(new byte[1]), length - 1);
+
+		// Start segments
+		count = (int) Math.min(segments, Math.max(1, (length + MIN_SEGMENT_SIZE - 1) / MIN_SEGMENT_SIZE));
+		long size = (length + count - 1) / count;
+		running.set(count);
+		for (int i = 0; i < count; i++) {
+			long start = i * size;
+			long end = Math.min(length, start + size) - 1;
+			download(new Segment(this, start, end));
+		}
+	}
+
+	protected static String getHeader(Tree headers, String name) {
+		for (Tree header : headers) {
+			if (name.equalsIgnoreCase(header.getName())) {
+				return header.asString();
+			}
+		}
+		return null;
+	}
+
+	// --- DOWNLOAD ONE SEGMENT ---
+
+	protected void download(Segment segment) {
+		if (finished.get()) {
+			return;
+		}
+		ResponseToFileRange[] handler = new ResponseToFileRange[1];
+		client.get(url, params -> {
+			if (configurator != null) {
+				configurator.accept(params);
+			}
+			params.setHeader("Range", "bytes=" + segment.position + '-' + segment.end);
+			handler[0] = new ResponseToFileRange(params, channel, segment);
+			active.add(handler[0]);
+			params.transferTo(handler[0]);
+		}).then(rsp -> {
+			active.remove(handler[0]);
+			if (segment.position > segment.end) {
+				if (running.decrementAndGet() == 0) {
+					complete();
+				}
+			} else {
+
+				// Incomplete segment (connection closed by the server)
+				retry(segment, null);
+			}
+			return null;
+		}).catchError(err -> {
+			active.remove(handler[0]);
+			retry(segment, err);
+			return null;
+		});
+	}
+
+	protected void retry(Segment segment, Throwable cause) {
+		if (segment.attempts >= maxRetries || !HttpStatusException.isRetryable(cause)) {
+			fail(cause == null ? new IllegalStateException("Incomplete segment (bytes " + segment.start + '-'
+					+ segment.end + ", received " + (segment.position - segment.start) + " bytes)!") : cause);
+			return;
+		}
+		segment.attempts++;
+		retries.incrementAndGet();
+		schedule(client.getScheduler(), () -> download(segment), segment.attempts);
+	}
+
+	/**
+	 * Executes the retry after an exponentially growing delay (also used by
+	 * the ResumableDownload and ResumableUpload).
+	 * 
+	 * @param scheduler
+	 *            scheduler of the HttpClient
+	 * @param task
+	 *            retry
+	 * @param attempt
+	 *            number of the retry (1 = first)
+	 */
+	protected static void schedule(ScheduledExecutorService scheduler, Runnable task, int attempt) {
+		long delay = Math.min(MAX_RETRY_DELAY, RETRY_DELAY << Math.min(attempt - 1, 16));
+		scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+	}
+
+	// --- DOWNLOAD OVER ONE CONNECTION ---
+
+	protected void downloadAll(int attempt) {
+		client.get(url, params -> {
+			if (configurator != null) {
+				configurator.accept(params);
+			}
+			params.transferTo(new ResponseToFile(params, file, length > 0) {
+
+				@Override
+				public State onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+					int code = responseStatus.getStatusCode();
+					if (code < 200 || code > 299) {
+
+						// Do not write the error page into the file
+						throw new HttpStatusException("Unable to download file (status: " + code + ")!", code);
+					}
+					return super.onStatusReceived(responseStatus);
+				}
+
+			});
+		}).then(rsp -> {
+			transfered.set(rsp.get("transfered", 0L));
+			length = transfered.get();
+			complete();
+			return null;
+		}).catchError(err -> {
+			if (attempt < maxRetries && HttpStatusException.isRetryable(err)) {
+				retries.incrementAndGet();
+				schedule(client.getScheduler(), () -> downloadAll(attempt + 1), attempt + 1);
+			} else {
+				fail(err);
+			}
+			return null;
+		});
+	}
+
+	// --- FINISH DOWNLOAD ---
+
+	protected void complete() {
+		if (!finished.compareAndSet(false, true)) {
+			return;
+		}
+		closeChannel();
+		long duration = Math.max(1, System.currentTimeMillis() - startTime);
+		Tree rsp = new Tree();
+		rsp.put("length", length);
+		rsp.put("segments", count);
+		rsp.put("ranged", ranged);
+		rsp.put("retries", retries.get());
+		rsp.put("duration", duration);
+		rsp.put("throughput", transfered.get() * 1000 / duration);
+		promise.complete(rsp);
+	}
+
+	protected void fail(Throwable cause) {
+		if (!finished.compareAndSet(false, true)) {
+			return;
+		}
+
+		// Cancel the other segments
+		ResponseToFileRange handler;
+		while ((handler = active.poll()) != null) {
+			Channel connection = handler.channel;
+			if (connection != null) {
+				connection.close();
+			}
+		}
+		closeChannel();
+		promise.complete(cause);
+	}
+
+	protected void closeChannel() {
+		if (channel != null) {
+			try {
+				channel.close();
+			} catch (Exception ignored) {
+			}
+		}
+	}
+
+	// --- PROGRESS ---
+
+	/**
+	 * Returns the number of downloaded bytes.
+	 * 
+	 * @return number of bytes
+	 */
+	public long getTransfered() {
+		return transfered.get();
+	}
+
+	// --- SEGMENT ---
+
+	protected static class Segment {
+
+		protected final SegmentedDownload download;
+		protected final long start;
+		protected final long end;
+
+		protected volatile long position;
+		protected int attempts;
+
+		protected Segment(SegmentedDownload download, long start, long end) {
+			this.download = download;
+			this.start = start;
+			this.end = end;
+			this.position = start;
+		}
+
+	}
+
+}
\ No newline at end of file
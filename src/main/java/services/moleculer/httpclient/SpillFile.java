@@ -0,0 +1,168 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Temporary file for the large response bodies. The file is created in the
+ * specified directory (or in the system's temp directory), and it is deleted
+ * automatically by the "close" method. The content of the file is read back
+ * through memory-mapped buffers (so it is not loaded into the Java heap).
+ */
+public class SpillFile {
+
+	// --- CONSTANTS ---
+
+	/**
+	 * Max size of a mapped region.
+	 */
+	protected static final long MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+	// --- VARIABLES ---
+
+	protected final Path path;
+	protected final FileChannel channel;
+
+	/**
+	 * Number of bytes written into the file.
+	 */
+	protected long length;
+
+	// --- CONSTRUCTOR ---
+
+	/**
+	 * Creates a new temp file.
+	 * 
+	 * @param directory
+	 *            target directory (null = system's temp directory)
+	 * 
+	 * @throws IOException
+	 *             if the file could not be created
+	 */
+	public SpillFile(Path directory) throws IOException {
+		if (directory == null) {
+			path = Files.createTempFile("moleculer-http-", ".tmp");
+		} else {
+			path = Files.createTempFile(directory, "moleculer-http-", ".tmp");
+		}
+		channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.DELETE_ON_CLOSE);
+	}
+
+	// --- WRITE ---
+
+	/**
+	 * Appends the content of the buffer to the file.
+	 * 
+	 * @param buffer
+	 *            source buffer
+	 * 
+	 * @throws IOException
+	 *             any I/O error
+	 */
+	public void write(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			length += channel.write(buffer);
+		}
+	}
+
+	// --- READ ---
+
+	/**
+	 * Returns the number of bytes written into the file.
+	 * 
+	 * @return length of the file
+	 */
+	public long length() {
+		return length;
+	}
+
+	/**
+	 * Maps the content of the file into the memory (in read-only mode). Files
+	 * larger than 2 GB are mapped in more than one segment.
+	 * 
+	 * @return mapped segments (in order)
+	 * 
+	 * @throws IOException
+	 *             any I/O error
+	 */
+	public MappedByteBuffer[] map() throws IOException {
+		int count = (int) ((length + MAX_SEGMENT_SIZE - 1) / MAX_SEGMENT_SIZE);
+		MappedByteBuffer[] segments = new MappedByteBuffer[count];
+		long position = 0;
+		for (int i = 0; i < count; i++) {
+			long size = Math.min(MAX_SEGMENT_SIZE, length - position);
+			segments[i] = channel.map(MapMode.READ_ONLY, position, size);
+			position += size;
+		}
+		return segments;
+	}
+
+	/**
+	 * Reads the content of the file into a byte-array.
+	 * 
+	 * @return content of the file
+	 * 
+	 * @throws IOException
+	 *             if the file is larger than the max size of a Java array
+	 */
+	public byte[] toByteArray() throws IOException {
+		if (length > BodyAccumulator.MAX_ARRAY_SIZE) {
+			throw new IOException("Response body is too large (" + length + " bytes)!");
+		}
+		byte[] bytes = new byte[(int) length];
+		if (length > 0) {
+			map()[0].get(bytes);
+		}
+		return bytes;
+	}
+
+	// --- CLOSE AND DELETE ---
+
+	/**
+	 * Closes and deletes the file.
+	 */
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException ignored) {
+		}
+		try {
+			Files.deleteIfExists(path);
+		} catch (IOException ignored) {
+
+			// Mapped file on Windows (the "DELETE_ON_CLOSE" removes it later)
+		}
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,337 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.asynchttpclient.request.body.Body;
+
+import io.datatree.Tree;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Tree-based request body. Serializes the Tree into JSON format, directly
+ * into the (pooled) buffers of the HTTP chunks, when the connection is ready
+ * to send the next chunk. The whole JSON document never exists in the memory,
+ * only the current token (eg. a long String value) is buffered. Maps and
+ * collections are written as JSON objects and arrays, numbers, booleans and
+ * strings (with JSON escape sequences) directly. Other values (eg. byte
+ * arrays, Dates, UUIDs, enums) are encoded by datatree's JSON writer, and
+ * the meta structure is written into the "_meta" entry of
+ * the root object, so the output is the same as the result of the
+ * "Tree.toBinary()" method.
+ */
+public class TreeBody implements Body {
+
+	// --- CONSTANTS ---
+
+	protected static final String META = "_meta";
+
+	protected static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	// --- VARIABLES ---
+
+	/**
+	 * Containers (objects and arrays) being written.
+	 */
+	protected final ArrayDeque<Frame> stack = new ArrayDeque<>();
+
+	/**
+	 * Buffer of the current token.
+	 */
+	protected final StringBuilder token = new StringBuilder(64);
+
+	/**
+	 * Root value.
+	 */
+	protected Object root;
+
+	/**
+	 * Meta structure of the root (null = no meta).
+	 */
+	protected Object meta;
+
+	/**
+	 * The root value has been written.
+	 */
+	protected boolean started;
+
+	/**
+	 * Bytes of the current token.
+	 */
+	protected byte[] pending;
+
+	/**
+	 * Number of written bytes of the current token.
+	 */
+	protected int offset;
+
+	/**
+	 * Total number of written bytes.
+	 */
+	protected long transfered;
+
+	// --- CONSTRUCTOR ---
+
+	public TreeBody(Tree data) {
+		root = data.asObject();
+		Tree metaNode = data.getMeta(false);
+		if (metaNode != null) {
+			meta = metaNode.asObject();
+		}
+	}
+
+	// --- BODY IMPLEMENTATION ---
+
+	@Override
+	public long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	public BodyState transferTo(ByteBuf target) {
+		while (target.isWritable()) {
+			if (pending == null || offset == pending.length) {
+				if (!nextToken()) {
+					return BodyState.STOP;
+				}
+			}
+			int len = Math.min(target.writableBytes(), pending.length - offset);
+			target.writeBytes(pending, offset, len);
+			offset += len;
+			transfered += len;
+		}
+		return BodyState.CONTINUE;
+	}
+
+	@Override
+	public void close() {
+		stack.clear();
+		root = null;
+		meta = null;
+		pending = null;
+	}
+
+	/**
+	 * Returns the number of serialized bytes.
+	 * 
+	 * @return number of bytes
+	 */
+	public long getTransfered() {
+		return transfered;
+	}
+
+	// --- JSON SERIALIZER ---
+
+	/**
+	 * Generates the next token into the "pending" array.
+	 * 
+	 * @return false = end of the document
+	 */
+	protected boolean nextToken() {
+		token.setLength(0);
+		if (stack.isEmpty()) {
+			if (started) {
+				return false;
+			}
+			started = true;
+			writeValue(root);
+		} else {
+			Frame frame = stack.peek();
+			boolean hasNext = frame.iterator.hasNext();
+			Object value = hasNext ? frame.iterator.next() : null;
+			if (hasNext && frame.root && META.equals(((Map.Entry<?, ?>) value).getKey())) {
+
+				// The meta is written at the end of the root object
+				hasNext = frame.iterator.hasNext();
+				value = hasNext ? frame.iterator.next() : null;
+			}
+			if (!hasNext && frame.root && meta != null) {
+				hasNext = true;
+				value = new AbstractMap.SimpleEntry<Object, Object>(META, meta);
+				meta = null;
+			}
+			if (hasNext) {
+				if (frame.first) {
+					frame.first = false;
+				} else {
+					token.append(',');
+				}
+				if (frame.map) {
+					Map.Entry<?, ?> entry = (Map.Entry<?, ?>) value;
+					writeString(String.valueOf(entry.getKey()));
+					token.append(':');
+					value = entry.getValue();
+				}
+				writeValue(value);
+			} else {
+				stack.pop();
+				token.append(frame.map ? '}' : ']');
+			}
+		}
+		pending = token.toString().getBytes(StandardCharsets.UTF_8);
+		offset = 0;
+		return true;
+	}
+
+	protected void writeValue(Object value) {
+		if (value instanceof Tree) {
+			value = ((Tree) value).asObject();
+		}
+		if (value == null) {
+			token.append("null");
+		} else if (value instanceof Map) {
+			stack.push(new Frame(((Map<?, ?>) value).entrySet().iterator(), true, stack.isEmpty()));
+			token.append('{');
+		} else if (value instanceof Collection) {
+			stack.push(new Frame(((Collection<?>) value).iterator(), false, false));
+			token.append('[');
+		} else if (value instanceof byte[]) {
+			writeConverted(value);
+		} else if (value.getClass().isArray()) {
+			stack.push(new Frame(new ArrayIterator(value), false, false));
+			token.append('[');
+		} else if (value instanceof Double || value instanceof Float) {
+			double d = ((Number) value).doubleValue();
+			if (Double.isNaN(d) || Double.isInfinite(d)) {
+				writeConverted(value);
+			} else {
+				token.append(value);
+			}
+		} else if (value instanceof Number || value instanceof Boolean) {
+			token.append(value);
+		} else if (value instanceof String) {
+			writeString((String) value);
+		} else {
+			writeConverted(value);
+		}
+	}
+
+	/**
+	 * Writes a non-JSON value (eg. Date, UUID, enum) in the same format as
+	 * datatree's JSON writer.
+	 * 
+	 * @param value
+	 *            value to write
+	 */
+	protected void writeConverted(Object value) {
+		Tree wrapper = new Tree();
+		wrapper.putObject("v", value);
+		String json = new String(wrapper.toBinary(null, false), StandardCharsets.UTF_8);
+		token.append(json.substring(json.indexOf(':') + 1, json.lastIndexOf('}')).trim());
+	}
+
+	protected void writeString(String value) {
+		token.append('"');
+		int len = value.length();
+		char c;
+		for (int i = 0; i < len; i++) {
+			c = value.charAt(i);
+			switch (c) {
+			case '"':
+				token.append("\\\"");
+				break;
+			case '\\':
+				token.append("\\\\");
+				break;
+			case '\b':
+				token.append("\\b");
+				break;
+			case '\f':
+				token.append("\\f");
+				break;
+			case '\n':
+				token.append("\\n");
+				break;
+			case '\r':
+				token.append("\\r");
+				break;
+			case '\t':
+				token.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+
+					// Other control characters
+					token.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+				} else {
+					token.append(c);
+				}
+			}
+		}
+		token.append('"');
+	}
+
+	// --- CONTAINERS ---
+
+	protected static final class Frame {
+
+		protected final Iterator<?> iterator;
+		protected final boolean map;
+		protected final boolean root;
+		protected boolean first = true;
+
+		protected Frame(Iterator<?> iterator, boolean map, boolean root) {
+			this.iterator = iterator;
+			this.map = map;
+			this.root = root;
+		}
+
+	}
+
+	protected static final class ArrayIterator implements Iterator<Object> {
+
+		protected final Object array;
+		protected final int length;
+		protected int index;
+
+		protected ArrayIterator(Object array) {
+			this.array = array;
+			this.length = Array.getLength(array);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return index < length;
+		}
+
+		@Override
+		public Object next() {
+			if (index >= length) {
+				throw new NoSuchElementException();
+			}
+			return Array.get(array, index++);
+		}
+
+	}
+
+}
\ No newline at end of file
@@ -52,9 +52,9 @@ public class TreeConfigurator implements Consumer<RequestParams> {
 	
 	@Override
 	public void accept(RequestParams params) {
-		if (request != null && !request.isEmpty()) {
+		if (request != null && !isEmpty(request)) {
 			if (post) {
-				params.setBody(request.toBinary());
+				params.setBody(request);
 			} else {
 				LinkedList<Param> list = new LinkedList<>();
 				for (Tree item : request) {
@@ -68,4 +68,24 @@ public class TreeConfigurator implements Consumer<RequestParams> {
 		}		
 	}
 
+	/**
+	 * Checks the request without parsing a lazy response (an unparsed
+	 * response is forwarded as is, see "RequestParams.setBody(Tree)").
+	 * 
+	 * @param request
+	 *            Tree request
+	 * 
+	 * @return true = no request body / query parameters
+	 */
+	protected static boolean isEmpty(Tree request) {
+		Object root = request.asObject();
+		if (root instanceof LazyJsonMap) {
+			byte[] raw = ((LazyJsonMap) root).getRawBytes();
+			if (raw != null) {
+				return LazyJsonMap.isEmptyObject(raw);
+			}
+		}
+		return request.isEmpty();
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,133 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compares the old "reallocate on every part" body collection with the
+ * BodyAccumulator (with and without a known Content-Length). Run it as a
+ * simple Java application (it is not a JUnit test).
+ */
+public class BodyAccumulatorBenchmark {
+
+	// --- CONSTANTS ---
+
+	/**
+	 * Size of a body part (similar to Netty's max read size).
+	 */
+	private static final int PART_SIZE = 64 * 1024;
+
+	// --- MAIN ---
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = { 1024, 1024 * 1024, 100 * 1024 * 1024 };
+		for (int size : sizes) {
+			byte[][] parts = split(size);
+
+			// The reallocating version is O(n^2), measure it only once for
+			// the largest body
+			int loops = size < 1024 * 1024 ? 10000 : size < 10 * 1024 * 1024 ? 100 : 1;
+
+			// Warm up
+			for (int i = 0; i < Math.min(loops, 100); i++) {
+				reallocating(parts);
+				accumulator(parts, size);
+				accumulator(parts, -1);
+			}
+			System.out.println("Body size: " + size + " bytes (" + parts.length + " parts)");
+			measure("  reallocating      ", loops, () -> reallocating(parts));
+			measure("  presized          ", loops, () -> accumulator(parts, size));
+			measure("  chunk list        ", loops, () -> accumulator(parts, -1));
+		}
+	}
+
+	// --- IMPLEMENTATIONS ---
+
+	private static byte[] reallocating(byte[][] parts) {
+		byte[] bytes = null;
+		for (byte[] part : parts) {
+			ByteBuffer buffer = ByteBuffer.wrap(part);
+			int len = buffer.capacity();
+			if (bytes == null) {
+				bytes = new byte[len];
+				buffer.get(bytes, 0, len);
+			} else {
+				byte[] expanded = new byte[bytes.length + len];
+				buffer.get(expanded, bytes.length, len);
+				System.arraycopy(bytes, 0, expanded, 0, bytes.length);
+				bytes = expanded;
+			}
+		}
+		return bytes;
+	}
+
+	private static byte[] accumulator(byte[][] parts, int contentLength) throws Exception {
+		BodyAccumulator accumulator = new BodyAccumulator();
+		accumulator.setExpectedLength(contentLength);
+		for (byte[] part : parts) {
+			if (contentLength > 0) {
+				accumulator.append(ByteBuffer.wrap(part));
+			} else {
+
+				// AsyncHttpClient creates a new array for each part
+				accumulator.append(part.clone());
+			}
+		}
+		return accumulator.toByteArray();
+	}
+
+	// --- UTILITIES ---
+
+	@FunctionalInterface
+	private interface Task {
+		byte[] run() throws Exception;
+	}
+
+	private static void measure(String name, int loops, Task task) throws Exception {
+		long checksum = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < loops; i++) {
+			checksum += task.run().length;
+		}
+		long duration = System.nanoTime() - start;
+		System.out.println(name + String.format("%12.3f", duration / 1000000d / loops) + " msec / response"
+				+ (checksum == 0 ? "!" : ""));
+	}
+
+	private static byte[][] split(int size) {
+		int count = (size + PART_SIZE - 1) / PART_SIZE;
+		byte[][] parts = new byte[count][];
+		for (int i = 0; i < count; i++) {
+			int len = Math.min(PART_SIZE, size - i * PART_SIZE);
+			parts[i] = new byte[len];
+			for (int j = 0; j < len; j++) {
+				parts[i][j] = (byte) j;
+			}
+		}
+		return parts;
+	}
+
+}
@@ -0,0 +1,179 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.asynchttpclient.netty.LazyResponseBodyPart;
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.AbstractByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+public class BodyAccumulatorTest {
+
+	@Test
+	public void testAccumulator() throws Exception {
+
+		// Empty body
+		BodyAccumulator acc = new BodyAccumulator();
+		assertEquals(0, acc.toByteArray().length);
+
+		// Unknown length, one part (no copy)
+		byte[] part = "abc".getBytes();
+		acc = new BodyAccumulator();
+		acc.append(part);
+		assertSame(part, acc.toByteArray());
+
+		// Unknown length, more parts
+		acc = new BodyAccumulator();
+		acc.append("abc".getBytes());
+		acc.append(ByteBuffer.wrap("def".getBytes()));
+		acc.append(new byte[0]);
+		assertEquals(6, acc.length());
+		assertArrayEquals("abcdef".getBytes(), acc.toByteArray());
+
+		// Known length
+		acc = new BodyAccumulator();
+		acc.setExpectedLength(6);
+		acc.append(ByteBuffer.wrap("abc".getBytes()));
+		acc.append("def".getBytes());
+		byte[] bytes = acc.toByteArray();
+		assertArrayEquals("abcdef".getBytes(), bytes);
+		assertSame(bytes, acc.toByteArray());
+
+		// Less bytes than expected
+		acc = new BodyAccumulator();
+		acc.setExpectedLength(10);
+		acc.append(ByteBuffer.wrap("abc".getBytes()));
+		assertArrayEquals("abc".getBytes(), acc.toByteArray());
+
+		// More bytes than expected
+		acc = new BodyAccumulator();
+		acc.setExpectedLength(4);
+		acc.append(ByteBuffer.wrap("abc".getBytes()));
+		acc.append(ByteBuffer.wrap("def".getBytes()));
+		acc.append("ghi".getBytes());
+		assertArrayEquals("abcdefghi".getBytes(), acc.toByteArray());
+	}
+
+	@Test
+	public void testPooledMode() throws Exception {
+
+		// Completed response
+		TrackingAllocator allocator = new TrackingAllocator();
+		BodyAccumulator acc = new BodyAccumulator(allocator);
+		byte[] part = new byte[100 * 1024];
+		for (int i = 0; i < part.length; i++) {
+			part[i] = (byte) i;
+		}
+		acc.append(ByteBuffer.wrap(part));
+		acc.append(part);
+		assertEquals(4, allocator.buffers.size());
+		byte[] bytes = acc.toByteArray();
+		assertEquals(part.length * 2, bytes.length);
+		for (int i = 0; i < bytes.length; i++) {
+			assertEquals((byte) i, bytes[i]);
+		}
+		allocator.assertReleased();
+
+		// Failed response
+		allocator = new TrackingAllocator();
+		acc = new BodyAccumulator(allocator);
+		acc.append(part);
+		acc.release();
+		acc.release();
+		allocator.assertReleased();
+
+		// Lazy body parts (retained, without copying)
+		allocator = new TrackingAllocator();
+		acc = new BodyAccumulator(allocator);
+		for (int n = 0; n < 2; n++) {
+			ByteBuf source = allocator.heapBuffer(part.length);
+			source.writeBytes(part);
+			acc.append(new LazyResponseBodyPart(source, false));
+
+			// Released by the AsyncHttpClient after the callback
+			source.release();
+		}
+		assertEquals(2, allocator.buffers.size());
+		bytes = acc.toByteArray();
+		assertEquals(part.length * 2, bytes.length);
+		for (int i = 0; i < bytes.length; i++) {
+			assertEquals((byte) i, bytes[i]);
+		}
+		allocator.assertReleased();
+
+		// Presized body (no pooled buffers)
+		allocator = new TrackingAllocator();
+		acc = new BodyAccumulator(allocator);
+		acc.setExpectedLength(part.length);
+		acc.append(part);
+		assertEquals(part.length, acc.toByteArray().length);
+		assertTrue(allocator.buffers.isEmpty());
+	}
+
+	/**
+	 * Leak detector; records the allocated buffers.
+	 */
+	protected static class TrackingAllocator extends AbstractByteBufAllocator {
+
+		protected final ArrayList<ByteBuf> buffers = new ArrayList<>();
+
+		@Override
+		protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+			ByteBuf buffer = Unpooled.directBuffer(initialCapacity, maxCapacity);
+			buffers.add(buffer);
+			return buffer;
+		}
+
+		@Override
+		protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+			ByteBuf buffer = Unpooled.buffer(initialCapacity, maxCapacity);
+			buffers.add(buffer);
+			return buffer;
+		}
+
+		@Override
+		public boolean isDirectBufferPooled() {
+			return false;
+		}
+
+		protected void assertReleased() {
+			for (ByteBuf buffer : buffers) {
+				assertEquals(0, buffer.refCnt(), "Leaked buffer: " + buffer);
+			}
+		}
+
+	}
+
+}
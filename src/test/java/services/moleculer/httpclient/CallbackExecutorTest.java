@@ -0,0 +1,197 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import io.datatree.Promise;
+import io.datatree.Tree;
+import io.netty.util.concurrent.FastThreadLocalThread;
+
+public class CallbackExecutorTest {
+
+	// --- VARIABLES ---
+
+	protected TestServer server;
+	protected HttpClient cl = new HttpClient();
+	protected String url;
+
+	protected ExecutorService clientExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "client-callback"));
+	protected ExecutorService requestExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "request-callback"));
+
+	// --- INIT / DESTROY TEST ---
+
+	@BeforeEach
+	protected void setUp() throws Exception {
+		server = new TestServer().handle("/", this::handle);
+		url = server.url("");
+	}
+
+	@AfterEach
+	protected void tearDown() throws Exception {
+		if (cl != null) {
+			cl.stop();
+		}
+		if (server != null) {
+			server.close();
+		}
+		clientExecutor.shutdownNow();
+		requestExecutor.shutdownNow();
+	}
+
+	/**
+	 * Sends a delayed JSON response (the continuations are registered before
+	 * the Promise is resolved).
+	 */
+	protected void handle(HttpExchange exchange) throws Exception {
+		Thread.sleep(200);
+		TestServer.send(exchange, 200, "application/json", "{\"a\":1}".getBytes(StandardCharsets.UTF_8));
+	}
+
+	// ---------------- TESTS ----------------
+
+	@Test
+	public void testInline() throws Exception {
+		cl.start();
+		assertTrue(continuationThread(cl.get(url)) instanceof FastThreadLocalThread);
+	}
+
+	@Test
+	public void testClientExecutor() throws Exception {
+		cl.setCallbackExecutor(clientExecutor);
+		cl.start();
+		assertEquals("client-callback", continuationThread(cl.get(url)).getName());
+
+		// Overridden per request
+		assertEquals("request-callback", continuationThread(cl.get(url, params -> {
+			params.setCallbackExecutor(requestExecutor);
+		})).getName());
+
+		// Inline per request
+		assertTrue(continuationThread(cl.get(url, params -> {
+			params.setCallbackExecutor(null);
+		})) instanceof FastThreadLocalThread);
+	}
+
+	@Test
+	public void testRequestExecutor() throws Exception {
+		cl.start();
+		assertEquals("request-callback", continuationThread(cl.get(url, params -> {
+			params.setCallbackExecutor(requestExecutor);
+		})).getName());
+	}
+
+	@Test
+	public void testRejectedExecution() throws Exception {
+		cl.setCallbackExecutor(command -> {
+			throw new RejectedExecutionException();
+		});
+		cl.start();
+
+		// Settled inline
+		assertTrue(continuationThread(cl.get(url)) instanceof FastThreadLocalThread);
+	}
+
+	@Test
+	public void testSlowContinuation() throws Exception {
+		AtomicReference<String> warning = new AtomicReference<>();
+		Handler handler = new Handler() {
+
+			@Override
+			public void publish(LogRecord record) {
+				if (record.getLevel() == Level.WARNING && record.getMessage().startsWith("Slow Promise continuation")) {
+					warning.set(record.getMessage());
+				}
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+
+		};
+		Logger logger = Logger.getLogger(HttpClient.class.getName());
+		logger.addHandler(handler);
+		try {
+			cl.setSlowCallbackThreshold(50);
+			cl.start();
+
+			// Fast continuation
+			cl.get(url).then(rsp -> {
+			}).waitFor(5000);
+			Thread.sleep(100);
+			assertNull(warning.get());
+
+			// Blocking continuation on the event loop
+			cl.get(url).then(rsp -> {
+				LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(200));
+			}).waitFor(5000);
+			long timeout = System.currentTimeMillis() + 2000;
+			while (warning.get() == null && System.currentTimeMillis() < timeout) {
+				Thread.sleep(20);
+			}
+			assertTrue(warning.get() != null, "Missing warning");
+			assertTrue(warning.get().contains("GET"), warning.get());
+		} finally {
+			logger.removeHandler(handler);
+		}
+	}
+
+	// --- UTILITIES ---
+
+	protected static Thread continuationThread(Promise promise) throws Exception {
+		AtomicReference<Thread> thread = new AtomicReference<>();
+		Tree rsp = promise.then(data -> {
+			thread.set(Thread.currentThread());
+			return data;
+		}).waitFor(5000);
+		assertEquals(1, rsp.get("a", 0));
+		return thread.get();
+	}
+
+}
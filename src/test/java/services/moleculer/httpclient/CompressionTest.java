@@ -0,0 +1,192 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import io.datatree.Promise;
+import io.datatree.Tree;
+import services.moleculer.stream.PacketStream;
+
+public class CompressionTest {
+
+	// --- VARIABLES ---
+
+	protected TestServer server;
+	protected ScheduledExecutorService scheduler;
+	protected HttpClient cl = new HttpClient();
+	protected String url;
+
+	// --- INIT / DESTROY TEST ---
+
+	@BeforeEach
+	protected void setUp() throws Exception {
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		server = new TestServer().handle("/echo", this::handle);
+		url = server.url("/echo");
+		cl.setDecompressResponses(true);
+		cl.start();
+	}
+
+	@AfterEach
+	protected void tearDown() throws Exception {
+		if (cl != null) {
+			cl.stop();
+		}
+		if (server != null) {
+			server.close();
+		}
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Echoes the (decompressed) request body. The response is compressed if
+	 * the client accepts gzip. The "Content-Encoding" of the request is
+	 * returned in the "X-Request-Encoding" header.
+	 */
+	protected void handle(HttpExchange exchange) throws Exception {
+		String requestEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+		InputStream in = exchange.getRequestBody();
+		if ("gzip".equals(requestEncoding)) {
+			in = new GZIPInputStream(in);
+		}
+		byte[] body = TestServer.readAll(in);
+		exchange.getResponseHeaders().set("X-Request-Encoding", String.valueOf(requestEncoding));
+		String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (accept != null && accept.contains("gzip")) {
+			exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+			exchange.sendResponseHeaders(200, 0);
+			OutputStream out = new GZIPOutputStream(exchange.getResponseBody());
+			out.write(body);
+			out.close();
+		} else {
+			TestServer.send(exchange, 200, null, body);
+		}
+	}
+
+	// ---------------- TESTS ----------------
+
+	@Test
+	public void testTree() throws Exception {
+		Tree req = new Tree();
+		for (int i = 0; i < 1000; i++) {
+			req.putMap("item" + i).put("a", i).put("b", "value" + i);
+		}
+		Tree rsp = cl.post(url, req, params -> {
+			params.setCompression("gzip", 0);
+			params.returnHttpHeaders();
+		}).waitFor(5000);
+		assertEquals("gzip", requestEncoding(rsp));
+		assertEquals(1000, rsp.size());
+		assertEquals(999, rsp.get("item999.a", 0));
+		assertEquals("value999", rsp.get("item999.b", ""));
+	}
+
+	@Test
+	public void testPacketStream() throws Exception {
+		byte[] content = new byte[300000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i % 64);
+		}
+		PacketStream stream = new PacketStream("node1", scheduler);
+		Promise p = cl.post(url, params -> {
+			params.setBody(stream);
+			params.setCompression("gzip");
+			params.returnAsByteArray();
+		});
+		for (int i = 0; i < content.length; i += 10000) {
+			byte[] packet = new byte[10000];
+			System.arraycopy(content, i, packet, 0, packet.length);
+			stream.sendData(packet);
+		}
+		stream.sendClose();
+		Tree rsp = p.waitFor(5000);
+		assertArrayEquals(content, rsp.asBytes());
+	}
+
+	@Test
+	public void testThreshold() throws Exception {
+		byte[] content = "small".getBytes("UTF-8");
+		Tree rsp = cl.post(url, params -> {
+			params.setBody(content);
+			params.setCompression("gzip", 1024);
+			params.returnAsByteArray();
+			params.returnHttpHeaders();
+		}).waitFor(5000);
+		assertEquals("null", requestEncoding(rsp));
+		assertArrayEquals(content, rsp.asBytes());
+	}
+
+	@Test
+	public void testStreamingDecoder() throws Exception {
+
+		// The built-in decompressor of the AsyncHttpClient is disabled
+		assertFalse(cl.getAsyncHttpClient().getConfig().isEnableAutomaticDecompression());
+
+		byte[] content = new byte[100000];
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i % 32);
+		}
+		AtomicReference<RequestParams> request = new AtomicReference<>();
+		Tree rsp = cl.post(url, params -> {
+			params.setBody(content);
+			params.returnAsByteArray();
+			request.set(params);
+		}).waitFor(5000);
+
+		// The gzipped response is decoded by the ResponseDecoder
+		assertTrue(request.get().handler instanceof ResponseDecoder);
+		assertArrayEquals(content, rsp.asBytes());
+	}
+
+	protected String requestEncoding(Tree rsp) {
+		for (Tree header : rsp.getMeta().get("$headers")) {
+			if ("x-request-encoding".equalsIgnoreCase(header.getName())) {
+				return header.asString();
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,132 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.datatree.Tree;
+
+public class ContentFormatsTest {
+
+	// --- VARIABLES ---
+
+	protected TestServer server;
+	protected HttpClient cl = new HttpClient();
+	protected String url;
+
+	// --- INIT / DESTROY TEST ---
+
+	@BeforeEach
+	protected void setUp() throws Exception {
+		server = new TestServer().echo("/echo", null);
+		url = server.url("/echo");
+		cl.start();
+	}
+
+	@AfterEach
+	protected void tearDown() throws Exception {
+		if (cl != null) {
+			cl.stop();
+		}
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	// ---------------- TESTS ----------------
+
+	@Test
+	public void testContentTypes() throws Exception {
+		assertEquals("application/json", ContentFormats.getContentType("json"));
+		assertEquals("application/msgpack", ContentFormats.getContentType("MsgPack"));
+		assertEquals("application/cbor", ContentFormats.getContentType("cbor"));
+		assertEquals("application/x-jackson-smile", ContentFormats.getContentType("smile"));
+		assertThrows(IllegalArgumentException.class, () -> ContentFormats.getContentType("xyz"));
+	}
+
+	@Test
+	public void testFormats() throws Exception {
+		assertEquals("json", ContentFormats.getFormat("application/json; charset=UTF-8"));
+		assertEquals("msgpack", ContentFormats.getFormat("application/x-msgpack"));
+		assertEquals("cbor", ContentFormats.getFormat("Application/CBOR"));
+		assertNull(ContentFormats.getFormat("text/html"));
+		assertNull(ContentFormats.getFormat(null));
+	}
+
+	@Test
+	public void testBinary() throws Exception {
+		assertFalse(ContentFormats.isBinary(null));
+		assertFalse(ContentFormats.isBinary("json"));
+		assertTrue(ContentFormats.isBinary("smile"));
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		int tested = 0;
+		for (String format : new String[] { "msgpack", "cbor", "smile" }) {
+			if (!isAvailable(format)) {
+				continue;
+			}
+			Tree req = new Tree();
+			req.put("a", 1).put("b", "text").putList("c").add(1).add(2);
+
+			// The body is serialized and parsed by the Content-Type
+			Tree rsp = cl.post(url, req, params -> {
+				params.setFormat(format);
+			}).waitFor(5000);
+			assertEquals(1, rsp.get("a", 0), format);
+			assertEquals("text", rsp.get("b", ""), format);
+			assertEquals(2, rsp.get("c").size(), format);
+
+			// Binary response of the incremental parser
+			rsp = cl.post(url, req, params -> {
+				params.setFormat(format);
+				params.parseIncrementally();
+			}).waitFor(5000);
+			assertEquals("text", rsp.get("b", ""), format);
+			tested++;
+		}
+		assumeTrue(tested > 0, "No binary dataformat library on the classpath.");
+	}
+
+	protected static boolean isAvailable(String format) {
+		try {
+			new Tree(new Tree().put("a", 1).toBinary(format, false), format);
+			return true;
+		} catch (Throwable missing) {
+			return false;
+		}
+	}
+
+}
@@ -38,6 +38,7 @@ import java.io.RandomAccessFile;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.util.Iterator;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -400,6 +401,18 @@ public class HttpClientTest {
 		assertEquals(s1.replace("\"", ""), s2.replace("\"", ""));
 		fos.close();
 
+		for (boolean preallocate : new boolean[] { false, true }) {
+			File out = File.createTempFile("test", ".tmp");
+			rsp = cl.post(TEST_URL, params -> {
+				params.transferTo(out.toPath(), preallocate);
+				params.setBody(req);
+			}).waitFor(2000);
+			s2 = new String(Files.readAllBytes(out.toPath()));
+			assertEquals(s1.replace("\"", ""), s2.replace("\"", ""));
+			assertEquals(out.length(), rsp.get("transfered", 0L));
+			out.delete();
+		}
+
 		PacketStream ps = br.createStream();
 		rsp = cl.post(TEST_URL, params -> {
 			params.transferTo(ps);
@@ -409,6 +422,30 @@ public class HttpClientTest {
 		ps.transferTo(buff).waitFor(2000);
 		s2 = new String(buff.toByteArray());
 		assertEquals(s1.replace("\"", ""), s2.replace("\"", ""));
+
+		// Transfer to PacketStream with flow control
+		PacketStream ps2 = br.createStream();
+		rsp = cl.post(TEST_URL, params -> {
+			params.transferTo(ps2, 4, 8);
+			params.setBody(req);
+		}).waitFor(2000);
+		buff.reset();
+		ps2.transferTo(buff).waitFor(2000);
+		s2 = new String(buff.toByteArray());
+		assertEquals(s1.replace("\"", ""), s2.replace("\"", ""));
+		assertEquals(buff.size(), rsp.get("transfered", 0L));
+
+		// Transfer to PacketStream in fixed-size packets
+		PacketStream ps3 = br.createStream();
+		rsp = cl.post(TEST_URL, params -> {
+			params.transferTo(ps3);
+			params.setStreamPacketSize(5);
+			params.setBody(req);
+		}).waitFor(2000);
+		buff.reset();
+		ps3.transferTo(buff).waitFor(2000);
+		s2 = new String(buff.toByteArray());
+		assertEquals(s1.replace("\"", ""), s2.replace("\"", ""));
 		
 		AtomicBoolean invoked = new AtomicBoolean();
 		rsp = cl.post(TEST_URL, params -> {
@@ -454,6 +491,38 @@ public class HttpClientTest {
 		bytes = rsp.asBytes();
 		s2 = new String(bytes);
 		assertEquals(s1.replace("\"", ""), s2.replace("\"", ""));
+
+		// Parse JSON while the body parts arrive
+		rsp = cl.post(TEST_URL, req, params -> {
+			params.parseIncrementally();
+		}).waitFor(2000);
+		s2 = rsp.toString(null, false, false);
+		assertEquals(s1.replace("\"", ""), s2.replace("\"", ""));
+
+		// Serialize the request body chunk by chunk
+		rsp = cl.post(TEST_URL, params -> {
+			params.setBody(req, true);
+		}).waitFor(2000);
+		s2 = rsp.toString(null, false, false);
+		assertEquals(s1.replace("\"", ""), s2.replace("\"", ""));
+
+		// Spill large responses into temp files
+		File spillDirectory = Files.createTempDirectory("spill").toFile();
+		rsp = cl.post(TEST_URL, req, params -> {
+			params.setSpillThreshold(5);
+			params.setSpillDirectory(spillDirectory.toPath());
+		}).waitFor(2000);
+		s2 = rsp.toString(null, false, false);
+		assertEquals(s1.replace("\"", ""), s2.replace("\"", ""));
+		rsp = cl.post(TEST_URL, req, params -> {
+			params.returnAsByteArray();
+			params.setSpillThreshold(5);
+			params.setSpillDirectory(spillDirectory.toPath());
+		}).waitFor(2000);
+		s2 = new String(rsp.asBytes());
+		assertEquals(s1.replace("\"", ""), s2.replace("\"", ""));
+		assertEquals(0, spillDirectory.list().length);
+		spillDirectory.delete();
 		
 		// PUT
 		check("PUT", null, false, cl.put(TEST_URL));
@@ -474,6 +543,37 @@ public class HttpClientTest {
 		stream.sendData(req.toBinary());
 		stream.sendClose();
 		checkStream("PUT", req, true, p);
+
+		// Send file
+		File upload = File.createTempFile("upload", ".tmp");
+		Files.write(upload.toPath(), req.toBinary());
+		checkStream("POST", req, false, cl.post(TEST_URL, upload.toPath()));
+		checkStream("PUT", req, true, cl.put(TEST_URL, upload.toPath(), returnAll));
+		upload.delete();
+
+		// Send multipart form
+		stream = br.createStream();
+		MultipartBodyGenerator multipart = new MultipartBodyGenerator();
+		multipart.addFields(req);
+		multipart.addStream("data", "data.bin", stream, -1);
+		p = cl.post(TEST_URL, params -> {
+			params.setBody(multipart);
+		});
+		stream.sendData(req.toBinary());
+		stream.sendClose();
+		p.waitFor(2000);
+		ctx = reset();
+		assertTrue(ctx.params.getMeta().get("multipart", false));
+		assertEquals("POST", ctx.params.getMeta().get("method", ""));
+
+		// Send stream (with bounded queue)
+		PacketStream bounded = br.createStream();
+		p = cl.put(TEST_URL, params -> {
+			params.setBody(bounded, -1, 4, 8);
+		});
+		bounded.sendData(req.toBinary());
+		bounded.sendClose();
+		checkStream("PUT", req, false, p);
 		
 		// DELETE
 		check("DELETE", null, false, cl.delete(TEST_URL));
@@ -0,0 +1,83 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class IncrementalJsonParserTest {
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testParser() throws Exception {
+		String json = "{\"a\":1,\"b\":[true,false,null,-1.5e3,\"x\\u00e9\\n\\uD83D\\uDE00y\"],"
+				+ "\"c\":{},\"d\":[],\"e\":\"őű\",\"f\":12345678901}";
+
+		// Feed the document in parts of different sizes
+		for (int step : new int[] { 1, 2, 3, 7, 1000 }) {
+			Map<String, Object> map = (Map<String, Object>) parse(json, step);
+			assertEquals(1, map.get("a"));
+			List<Object> list = (List<Object>) map.get("b");
+			assertEquals(Boolean.TRUE, list.get(0));
+			assertEquals(Boolean.FALSE, list.get(1));
+			assertNull(list.get(2));
+			assertEquals(-1500d, list.get(3));
+			assertEquals("xé\n😀y", list.get(4));
+			assertTrue(((Map<String, Object>) map.get("c")).isEmpty());
+			assertTrue(((List<Object>) map.get("d")).isEmpty());
+			assertEquals("őű", map.get("e"));
+			assertEquals(12345678901L, map.get("f"));
+		}
+
+		// Scalar roots
+		assertEquals(42, parse(" 42 ", 1));
+		assertEquals("s", parse("\"s\"", 1));
+
+		// Syntax errors
+		assertThrows(IOException.class, () -> parse("{\"a\":}", 1));
+		assertThrows(IOException.class, () -> parse("[1,]", 1));
+		assertThrows(IOException.class, () -> parse("{\"a\":1", 1));
+		assertThrows(IOException.class, () -> parse("[1] 2", 1));
+	}
+
+	protected Object parse(String json, int step) throws IOException {
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		IncrementalJsonParser parser = new IncrementalJsonParser();
+		for (int i = 0; i < bytes.length; i += step) {
+			parser.feed(bytes, i, Math.min(step, bytes.length - i));
+		}
+		return parser.finish();
+	}
+
+}
\ No newline at end of file
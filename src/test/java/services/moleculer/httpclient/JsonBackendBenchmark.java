@@ -0,0 +1,166 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.nio.ByteBuffer;
+
+import org.asynchttpclient.request.body.Body.BodyState;
+
+import io.datatree.Tree;
+import io.datatree.dom.TreeReader;
+import io.datatree.dom.TreeWriter;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+/**
+ * Compares the parse and serialize throughput of the JSON backends (see
+ * "HttpClient.setJsonReader" and "HttpClient.setJsonWriter") on small, medium
+ * and large payloads. Measures datatree's default JSON adapter, the built-in
+ * incremental parser / serializer, and the datatree adapters found on the
+ * classpath (the class names of other adapters can be passed as arguments).
+ * Run it as a simple Java application (it is not a JUnit test).
+ */
+public class JsonBackendBenchmark {
+
+	// --- CONSTANTS ---
+
+	/**
+	 * Adapters of the datatree library (measured if they are on the
+	 * classpath).
+	 */
+	private static final String[] ADAPTERS = { "io.datatree.dom.adapters.JsonJackson",
+			"io.datatree.dom.adapters.JsonDSL", "io.datatree.dom.adapters.JsonGson",
+			"io.datatree.dom.adapters.JsonFast", "io.datatree.dom.builtin.JsonBuiltin" };
+
+	// --- MAIN ---
+
+	public static void main(String[] args) throws Exception {
+		String[] adapters = args.length > 0 ? args : ADAPTERS;
+		int[] items = { 1, 100, 10000 };
+		for (int count : items) {
+			Tree payload = payload(count);
+			byte[] bytes = payload.toBinary();
+			int loops = Math.max(10, 10000 / count);
+			System.out.println("Payload: " + bytes.length + " bytes (" + count + " items)");
+
+			// Datatree's default adapter and the built-in implementations
+			run("  default reader    ", loops, () -> new Tree(bytes).size());
+			run("  default writer    ", loops, () -> payload.toBinary().length);
+			run("  incremental parser", loops, () -> parse(bytes));
+			run("  TreeBody writer   ", loops, () -> serialize(payload));
+
+			// Adapters on the classpath
+			for (String className : adapters) {
+				Object adapter;
+				try {
+					adapter = Class.forName(className).getDeclaredConstructor().newInstance();
+				} catch (Throwable notAvailable) {
+					continue;
+				}
+				String name = className.substring(className.lastIndexOf('.') + 1);
+				if (adapter instanceof TreeReader) {
+					TreeReader reader = (TreeReader) adapter;
+					run(pad("  " + name + " reader"), loops, () -> reader.parse(bytes) == null ? 0 : 1);
+				}
+				if (adapter instanceof TreeWriter) {
+					TreeWriter writer = (TreeWriter) adapter;
+					Object value = payload.asObject();
+					run(pad("  " + name + " writer"), loops, () -> writer.toBinary(value, null, false).length);
+				}
+			}
+		}
+	}
+
+	// --- IMPLEMENTATIONS ---
+
+	private static int parse(byte[] bytes) throws Exception {
+		IncrementalJsonParser parser = new IncrementalJsonParser();
+		parser.feed(ByteBuffer.wrap(bytes));
+		return parser.finish() == null ? 0 : 1;
+	}
+
+	private static int serialize(Tree payload) throws Exception {
+		TreeBody body = new TreeBody(payload);
+		ByteBuf buffer = Unpooled.buffer(8192);
+		int length = 0;
+		while (true) {
+			buffer.clear();
+			boolean finished = body.transferTo(buffer) == BodyState.STOP;
+			length += buffer.readableBytes();
+			if (finished) {
+				break;
+			}
+		}
+		body.close();
+		return length;
+	}
+
+	// --- UTILITIES ---
+
+	@FunctionalInterface
+	private interface Task {
+		int run() throws Exception;
+	}
+
+	private static void run(String name, int loops, Task task) throws Exception {
+
+		// Warm up
+		for (int i = 0; i < loops; i++) {
+			task.run();
+		}
+		long checksum = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < loops; i++) {
+			checksum += task.run();
+		}
+		long duration = System.nanoTime() - start;
+		System.out.println(name + String.format("%12.3f", duration / 1000d / loops) + " usec / operation"
+				+ (checksum == 0 ? "!" : ""));
+	}
+
+	private static String pad(String name) {
+		StringBuilder tmp = new StringBuilder(name);
+		while (tmp.length() < 20) {
+			tmp.append(' ');
+		}
+		return tmp.toString();
+	}
+
+	private static Tree payload(int count) {
+		Tree root = new Tree();
+		Tree list = root.putList("items");
+		for (int i = 0; i < count; i++) {
+			Tree item = list.addMap();
+			item.put("id", i);
+			item.put("name", "Item #" + i);
+			item.put("price", i * 1.25);
+			item.put("active", i % 2 == 0);
+			item.putList("tags").add("tag" + (i % 10)).add("common");
+		}
+		root.put("total", count);
+		return root;
+	}
+
+}
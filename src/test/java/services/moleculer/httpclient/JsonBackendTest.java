@@ -0,0 +1,174 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.datatree.Tree;
+import io.datatree.dom.builtin.JsonBuiltin;
+
+public class JsonBackendTest {
+
+	// --- VARIABLES ---
+
+	protected TestServer server;
+	protected HttpClient cl = new HttpClient();
+	protected String url;
+
+	// --- INIT / DESTROY TEST ---
+
+	@BeforeEach
+	protected void setUp() throws Exception {
+		server = new TestServer().echo("/echo", "application/json");
+		url = server.url("/echo");
+		cl.start();
+	}
+
+	@AfterEach
+	protected void tearDown() throws Exception {
+		if (cl != null) {
+			cl.stop();
+		}
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	// ---------------- TESTS ----------------
+
+	@Test
+	public void testRequestWriter() throws Exception {
+		CountingJson json = new CountingJson();
+
+		// The writer is set by the configurator, after the "setBody" call
+		Tree rsp = cl.post(url, request(), params -> {
+			params.setJsonWriter(json);
+		}).waitFor(5000);
+		assertEquals(1, json.written.get());
+		assertEquals(0, json.parsed.get());
+		assertResponse(rsp);
+	}
+
+	@Test
+	public void testRequestReader() throws Exception {
+		CountingJson json = new CountingJson();
+		Tree rsp = cl.post(url, request(), params -> {
+			params.setJsonReader(json);
+		}).waitFor(5000);
+		assertEquals(0, json.written.get());
+		assertEquals(1, json.parsed.get());
+		assertResponse(rsp);
+	}
+
+	@Test
+	public void testClientBackends() throws Exception {
+		CountingJson json = new CountingJson();
+		cl.setJsonReader(json);
+		cl.setJsonWriter(json);
+		assertResponse(cl.post(url, request()).waitFor(5000));
+		assertEquals(1, json.written.get());
+		assertEquals(1, json.parsed.get());
+
+		// The configurator overrides the client's backends
+		CountingJson other = new CountingJson();
+		assertResponse(cl.post(url, request(), params -> {
+			params.setJsonReader(other);
+			params.setJsonWriter(other);
+		}).waitFor(5000));
+		assertEquals(1, json.written.get());
+		assertEquals(1, json.parsed.get());
+		assertEquals(1, other.written.get());
+		assertEquals(1, other.parsed.get());
+	}
+
+	@Test
+	public void testMeta() throws Exception {
+		Tree req = request();
+		req.getMeta().put("id", "meta-value");
+
+		// The custom writer writes the meta structure (like Tree.toBinary)
+		CountingJson json = new CountingJson();
+		Tree rsp = cl.post(url, req, params -> {
+			params.setJsonWriter(json);
+			params.returnAsByteArray();
+		}).waitFor(5000);
+		assertEquals(1, json.written.get());
+		String body = new String(rsp.asBytes(), StandardCharsets.UTF_8);
+		assertTrue(body.contains("\"_meta\""), body);
+		assertTrue(body.contains("meta-value"), body);
+
+		// Default writer
+		rsp = cl.post(url, req, params -> {
+			params.returnAsByteArray();
+		}).waitFor(5000);
+		assertEquals(new String(req.toBinary(), StandardCharsets.UTF_8),
+				new String(rsp.asBytes(), StandardCharsets.UTF_8));
+	}
+
+	// --- UTILITIES ---
+
+	protected static Tree request() {
+		Tree req = new Tree();
+		req.put("a", 1).put("b", "text").putList("c").add(1).add(2);
+		return req;
+	}
+
+	protected static void assertResponse(Tree rsp) {
+		assertEquals(1, rsp.get("a", 0));
+		assertEquals("text", rsp.get("b", ""));
+		assertEquals(2, rsp.get("c").size());
+	}
+
+	/**
+	 * Built-in JSON adapter that counts the parse and serialize calls.
+	 */
+	protected static class CountingJson extends JsonBuiltin {
+
+		protected final AtomicInteger parsed = new AtomicInteger();
+		protected final AtomicInteger written = new AtomicInteger();
+
+		@Override
+		public Object parse(byte[] source) throws Exception {
+			parsed.incrementAndGet();
+			return super.parse(source);
+		}
+
+		@Override
+		public byte[] toBinary(Object value, Tree meta, boolean insertMeta) {
+			written.incrementAndGet();
+			return super.toBinary(value, meta, insertMeta);
+		}
+
+	}
+
+}
@@ -0,0 +1,153 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import io.datatree.Tree;
+import services.moleculer.util.CheckedTree;
+
+public class LazyJsonMapTest {
+
+	// --- CONSTANTS ---
+
+	private static final byte[] JSON = "{\"a\":1,\"b\":{\"c\":\"text\"},\"d\":[1,2,3]}"
+			.getBytes(StandardCharsets.UTF_8);
+
+	// ---------------- TESTS ----------------
+
+	@Test
+	public void testLazyParsing() throws Exception {
+		LazyJsonMap map = new LazyJsonMap(JSON, null);
+		Tree rsp = new CheckedTree(map);
+
+		// Meta data does not trigger the parsing
+		rsp.getMeta().put("$status", 200);
+		assertEquals(200, rsp.getMeta().get("$status", 0));
+		assertFalse(map.isParsed());
+		assertSame(JSON, map.getRawBytes());
+
+		// First structural access
+		assertEquals(1, rsp.get("a", 0));
+		assertEquals("text", rsp.get("b.c", ""));
+		assertEquals(3, rsp.get("d").size());
+		assertTrue(map.isParsed());
+		assertNull(map.getRawBytes());
+		assertEquals(200, rsp.getMeta().get("$status", 0));
+	}
+
+	@Test
+	public void testForwarding() throws Exception {
+		Tree rsp = new CheckedTree(new LazyJsonMap(JSON, null));
+		RequestParams params = new RequestParams("POST", false);
+		params.setUrl("http://localhost/path");
+		params.setBody(rsp);
+		assertSame(JSON, params.build().getByteData());
+
+		// Parsed (maybe modified) Tree is serialized again
+		rsp.put("e", true);
+		params.setBody(rsp, false);
+		params.applyFormat();
+		Tree sent = new Tree(params.build().getByteData());
+		assertTrue(sent.get("e", false));
+		assertEquals(1, sent.get("a", 0));
+	}
+
+	@Test
+	public void testIsEmpty() throws Exception {
+		LazyJsonMap map = new LazyJsonMap(JSON, null);
+		assertFalse(map.isEmpty());
+		assertFalse(map.isParsed());
+
+		map = new LazyJsonMap(" { \r\n} ".getBytes(StandardCharsets.UTF_8), null);
+		assertTrue(map.isEmpty());
+		assertEquals(0, map.size());
+		assertFalse(map.isParsed());
+
+		// Meta data is an entry of the parsed Map
+		map.put("_meta", new Tree().asObject());
+		assertFalse(map.isEmpty());
+		assertEquals(1, map.size());
+		assertFalse(map.isParsed());
+	}
+
+	@Test
+	public void testForwardingOverHttp() throws Exception {
+		AtomicReference<byte[]> received = new AtomicReference<>();
+		HttpClient cl = new HttpClient();
+		try (TestServer server = new TestServer()) {
+			server.handle("/", exchange -> {
+				byte[] body = TestServer.readBody(exchange);
+				byte[] bytes = JSON;
+				if ("POST".equals(exchange.getRequestMethod())) {
+					received.set(body);
+					bytes = "{}".getBytes(StandardCharsets.UTF_8);
+				}
+				TestServer.send(exchange, 200, "application/json", bytes);
+			});
+			cl.start();
+			String url = server.url("/");
+
+			// Lazy response
+			Tree rsp = cl.get(url, params -> {
+				params.parseLazily();
+			}).waitFor(5000);
+			LazyJsonMap map = (LazyJsonMap) rsp.asObject();
+			assertFalse(map.isParsed());
+
+			// Forwarded without parsing and re-serialization
+			cl.post(url, rsp).waitFor(5000);
+			assertFalse(map.isParsed());
+			assertArrayEquals(JSON, received.get());
+		} finally {
+			cl.stop();
+		}
+	}
+
+	@Test
+	public void testInvalidJson() throws Exception {
+		Tree rsp = new CheckedTree(new LazyJsonMap("{\"a\":".getBytes(StandardCharsets.UTF_8), null));
+		assertThrows(IllegalArgumentException.class, () -> rsp.get("a", 0));
+	}
+
+	@Test
+	public void testIsObject() throws Exception {
+		assertTrue(ResponseToLazyJson.isObject(" \r\n{}".getBytes(StandardCharsets.UTF_8)));
+		assertFalse(ResponseToLazyJson.isObject("[1]".getBytes(StandardCharsets.UTF_8)));
+		assertFalse(ResponseToLazyJson.isObject(new byte[0]));
+	}
+
+}
@@ -0,0 +1,134 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.asynchttpclient.netty.EagerResponseBodyPart;
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+
+public class MemoryBudgetTest {
+
+	@Test
+	public void testPauseMode() throws Exception {
+		MemoryBudget budget = new MemoryBudget(100, false);
+		ResponseToBytes h1 = createHandler(budget);
+		ResponseToBytes h2 = createHandler(budget);
+
+		h1.reserve(60);
+		h2.reserve(30);
+		assertEquals(90, budget.getUsedBytes());
+		assertEquals(0.9, budget.getUtilization(), 0.0001);
+
+		// The first handler that exceeds the limit may continue
+		h1.reserve(20);
+		assertEquals(0, budget.getWaitingCount());
+		assertEquals(110, budget.getPeakBytes());
+
+		// The others are paused
+		h2.reserve(10);
+		assertEquals(1, budget.getWaitingCount());
+		assertEquals(1, budget.getPausedCount());
+
+		// The first handler completes, the second one resumes
+		h1.releaseReserved(true);
+		assertEquals(40, budget.getUsedBytes());
+		assertEquals(0, budget.getWaitingCount());
+		h2.releaseReserved(true);
+		assertEquals(0, budget.getUsedBytes());
+		assertEquals(120, budget.getPeakBytes());
+	}
+
+	@Test
+	public void testFailMode() throws Exception {
+		MemoryBudget budget = new MemoryBudget(100, true);
+		ResponseToBytes h1 = createHandler(budget);
+		ResponseToBytes h2 = createHandler(budget);
+
+		h1.reserve(80);
+		IOException error = assertThrows(IOException.class, () -> {
+			h2.reserve(30);
+		});
+		assertTrue(error.getMessage().contains("budget"));
+		assertEquals(80, budget.getUsedBytes());
+		assertEquals(1, budget.getRejectedCount());
+
+		// Failed request
+		h2.onThrowable(error);
+		h1.onThrowable(error);
+		assertEquals(0, budget.getUsedBytes());
+	}
+
+	@Test
+	public void testContentLength() throws Exception {
+		MemoryBudget budget = new MemoryBudget(100, true);
+		ResponseToBytes h1 = createHandler(budget);
+		ResponseToBytes h2 = createHandler(budget);
+
+		// The whole body is reserved before the array is presized
+		h1.onHeadersReceived(new DefaultHttpHeaders().set(HttpHeaderNames.CONTENT_LENGTH, 80));
+		assertEquals(80, budget.getUsedBytes());
+		h1.onBodyPartReceived(new EagerResponseBodyPart(Unpooled.wrappedBuffer(new byte[40]), false));
+		h1.onBodyPartReceived(new EagerResponseBodyPart(Unpooled.wrappedBuffer(new byte[40]), true));
+		assertEquals(80, budget.getUsedBytes());
+
+		// The second body does not fit into the budget
+		assertThrows(IOException.class, () -> {
+			h2.onHeadersReceived(new DefaultHttpHeaders().set(HttpHeaderNames.CONTENT_LENGTH, 30));
+		});
+		assertEquals(80, budget.getUsedBytes());
+		assertEquals(80, h1.onCompleted().asBytes().length);
+		assertEquals(0, budget.getUsedBytes());
+	}
+
+	@Test
+	public void testStreamedJson() throws Exception {
+		MemoryBudget budget = new MemoryBudget(100, false);
+		RequestParams params = new RequestParams("GET", false);
+		params.memoryBudget = budget;
+		ResponseToStreamedJson handler = new ResponseToStreamedJson(params);
+		handler.onHeadersReceived(new DefaultHttpHeaders());
+		byte[] json = "{\"a\":1}".getBytes("UTF-8");
+		handler.onBodyPartReceived(new EagerResponseBodyPart(Unpooled.wrappedBuffer(json), true));
+		assertEquals(json.length, budget.getUsedBytes());
+		assertEquals(1, handler.onCompleted().get("a", 0));
+		assertEquals(0, budget.getUsedBytes());
+	}
+
+	protected ResponseToBytes createHandler(MemoryBudget budget) {
+		RequestParams params = new RequestParams("GET", false);
+		params.memoryBudget = budget;
+		return new ResponseToBytes(params);
+	}
+
+}
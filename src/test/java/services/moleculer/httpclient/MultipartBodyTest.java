@@ -0,0 +1,199 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.asynchttpclient.request.body.Body;
+import org.asynchttpclient.request.body.Body.BodyState;
+import org.junit.jupiter.api.Test;
+
+import io.datatree.Promise;
+import io.datatree.Tree;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import services.moleculer.stream.PacketStream;
+
+public class MultipartBodyTest {
+
+	// --- DECODED PART ---
+
+	public record Part(String headers, byte[] content) {
+
+		public String text() {
+			return new String(content, StandardCharsets.UTF_8);
+		}
+
+	}
+
+	// ---------------- TESTS ----------------
+
+	@Test
+	public void testMultipartBody() throws Exception {
+		File file = File.createTempFile("multipart", ".txt");
+		Files.write(file.toPath(), "file content".getBytes(StandardCharsets.UTF_8));
+
+		MultipartBodyGenerator multipart = new MultipartBodyGenerator("xyz");
+		multipart.addField("field\"1", "value1");
+		multipart.addBytes("bytes", "a.bin", new byte[] { 'a', 'b', 'c' }, "application/test");
+		multipart.addFile("file", file.toPath(), "text/plain");
+		assertEquals("multipart/form-data; boundary=xyz", multipart.getContentType());
+
+		String expected = "--xyz\r\n" //
+				+ "Content-Disposition: form-data; name=\"field%221\"\r\n" //
+				+ "\r\n" //
+				+ "value1\r\n" //
+				+ "--xyz\r\n" //
+				+ "Content-Disposition: form-data; name=\"bytes\"; filename=\"a.bin\"\r\n" //
+				+ "Content-Type: application/test\r\n" //
+				+ "\r\n" //
+				+ "abc\r\n" //
+				+ "--xyz\r\n" //
+				+ "Content-Disposition: form-data; name=\"file\"; filename=\"" + file.getName() + "\"\r\n" //
+				+ "Content-Type: text/plain\r\n" //
+				+ "\r\n" //
+				+ "file content\r\n" //
+				+ "--xyz--\r\n";
+
+		// Read body in small chunks
+		Body body = multipart.createBody();
+		assertEquals(expected.length(), body.getContentLength());
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BodyState state = BodyState.CONTINUE;
+		while (state != BodyState.STOP) {
+			ByteBuf chunk = Unpooled.buffer(5);
+			state = body.transferTo(chunk);
+			chunk.readBytes(out, chunk.readableBytes());
+			chunk.release();
+		}
+		body.close();
+		assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+		file.delete();
+	}
+
+	@Test
+	public void testRequest() throws Exception {
+		File file = File.createTempFile("multipart", ".txt");
+		Files.write(file.toPath(), "file content".getBytes(StandardCharsets.UTF_8));
+		byte[] streamed = new byte[100000];
+		for (int i = 0; i < streamed.length; i++) {
+			streamed[i] = (byte) (i * 31);
+		}
+		AtomicReference<String> contentType = new AtomicReference<>();
+		AtomicReference<byte[]> received = new AtomicReference<>();
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		HttpClient cl = new HttpClient();
+		try (TestServer server = new TestServer()) {
+			server.handle("/form", exchange -> {
+				contentType.set(exchange.getRequestHeaders().getFirst("Content-Type"));
+				received.set(TestServer.readBody(exchange));
+				TestServer.send(exchange, 200, "application/json", "{}".getBytes(StandardCharsets.UTF_8));
+			});
+			cl.start();
+
+			// Fields, byte-array, file and PacketStream parts
+			Tree fields = new Tree();
+			fields.put("a", 1).put("b", "text");
+			PacketStream stream = new PacketStream("node1", scheduler);
+			MultipartBodyGenerator multipart = new MultipartBodyGenerator();
+			multipart.addFields(fields);
+			multipart.addField("c", "value");
+			multipart.addBytes("bytes", "a.bin", new byte[] { 1, 2, 3 }, "application/test");
+			multipart.addFile("file", file.toPath(), "text/plain");
+			multipart.addStream("data", "data.bin", stream, -1);
+			Promise p = cl.post(server.url("/form"), params -> {
+				params.setBody(multipart);
+			});
+			for (int i = 0; i < streamed.length; i += 10000) {
+				byte[] packet = new byte[10000];
+				System.arraycopy(streamed, i, packet, 0, packet.length);
+				stream.sendData(packet);
+			}
+			stream.sendClose();
+			p.waitFor(5000);
+		} finally {
+			cl.stop();
+			scheduler.shutdownNow();
+			file.delete();
+		}
+
+		// Decode the received form
+		assertTrue(contentType.get().startsWith("multipart/form-data; boundary="), contentType.get());
+		Map<String, Part> parts = decode(contentType.get(), received.get());
+		assertEquals(6, parts.size());
+		assertEquals("1", parts.get("a").text());
+		assertEquals("text", parts.get("b").text());
+		assertEquals("value", parts.get("c").text());
+
+		Part part = parts.get("bytes");
+		assertTrue(part.headers().contains("filename=\"a.bin\""), part.headers());
+		assertTrue(part.headers().contains("Content-Type: application/test"), part.headers());
+		assertArrayEquals(new byte[] { 1, 2, 3 }, part.content());
+
+		part = parts.get("file");
+		assertTrue(part.headers().contains("filename=\"" + file.getName() + "\""), part.headers());
+		assertTrue(part.headers().contains("Content-Type: text/plain"), part.headers());
+		assertEquals("file content", part.text());
+
+		part = parts.get("data");
+		assertTrue(part.headers().contains("filename=\"data.bin\""), part.headers());
+		assertTrue(part.headers().contains("Content-Type: " + MultipartBodyGenerator.DEFAULT_CONTENT_TYPE),
+				part.headers());
+		assertArrayEquals(streamed, part.content());
+	}
+
+	// --- MULTIPART DECODER ---
+
+	protected static Map<String, Part> decode(String contentType, byte[] body) {
+		String delimiter = "--" + contentType.substring(contentType.indexOf("boundary=") + 9);
+		String text = new String(body, StandardCharsets.ISO_8859_1);
+		Map<String, Part> parts = new LinkedHashMap<>();
+		int pos = text.indexOf(delimiter) + delimiter.length();
+		while (!text.startsWith("--", pos)) {
+			int headerEnd = text.indexOf("\r\n\r\n", pos);
+			String headers = text.substring(pos + 2, headerEnd);
+			int next = text.indexOf("\r\n" + delimiter, headerEnd + 4);
+			byte[] content = text.substring(headerEnd + 4, next).getBytes(StandardCharsets.ISO_8859_1);
+			int nameStart = headers.indexOf("name=\"") + 6;
+			String name = headers.substring(nameStart, headers.indexOf('"', nameStart));
+			parts.put(name, new Part(headers, content));
+			pos = next + 2 + delimiter.length();
+		}
+		return parts;
+	}
+
+}
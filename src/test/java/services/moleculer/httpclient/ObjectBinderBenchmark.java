@@ -0,0 +1,119 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.datatree.Tree;
+
+/**
+ * Compares the Tree-based response processing (parse into a Tree, then copy
+ * the values into records) with the direct binding of the ObjectBinder (parse
+ * into Maps and Lists, then bind them into records). Run it as a simple Java
+ * application (it is not a JUnit test).
+ */
+public class ObjectBinderBenchmark {
+
+	// --- TEST TYPES ---
+
+	public record Item(int id, String name, double price, boolean active) {
+	}
+
+	public record Page(int total, List<Item> items) {
+	}
+
+	// --- MAIN ---
+
+	public static void main(String[] args) throws Exception {
+		int[] sizes = { 10, 1000, 100000 };
+		for (int size : sizes) {
+			byte[] json = payload(size);
+			int loops = Math.max(10, 100000 / size);
+
+			// Warm up
+			for (int i = 0; i < loops; i++) {
+				viaTree(json);
+				direct(json);
+			}
+			System.out.println("Payload: " + json.length + " bytes (" + size + " items)");
+			measure("  Tree + copy       ", loops, () -> viaTree(json));
+			measure("  direct binding    ", loops, () -> direct(json));
+		}
+	}
+
+	// --- IMPLEMENTATIONS ---
+
+	private static Page viaTree(byte[] json) throws Exception {
+		Tree rsp = new Tree(json);
+		Tree list = rsp.get("items");
+		ArrayList<Item> items = new ArrayList<>(list.size());
+		for (Tree item : list) {
+			items.add(new Item(item.get("id", 0), item.get("name", (String) null), item.get("price", 0d),
+					item.get("active", false)));
+		}
+		return new Page(rsp.get("total", 0), items);
+	}
+
+	private static Page direct(byte[] json) throws Exception {
+		IncrementalJsonParser parser = new IncrementalJsonParser();
+		parser.feed(ByteBuffer.wrap(json));
+		return ObjectBinder.bind(parser.finish(), Page.class);
+	}
+
+	// --- UTILITIES ---
+
+	@FunctionalInterface
+	private interface Task {
+		Page run() throws Exception;
+	}
+
+	private static void measure(String name, int loops, Task task) throws Exception {
+		long checksum = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < loops; i++) {
+			checksum += task.run().items().size();
+		}
+		long duration = System.nanoTime() - start;
+		System.out.println(name + String.format("%12.3f", duration / 1000d / loops) + " usec / response"
+				+ (checksum == 0 ? "!" : ""));
+	}
+
+	private static byte[] payload(int size) {
+		Tree root = new Tree();
+		root.put("total", size);
+		Tree items = root.putList("items");
+		for (int i = 0; i < size; i++) {
+			Tree item = items.addMap();
+			item.put("id", i);
+			item.put("name", "Item #" + i);
+			item.put("price", i * 1.5);
+			item.put("active", i % 2 == 0);
+		}
+		return root.toBinary();
+	}
+
+}
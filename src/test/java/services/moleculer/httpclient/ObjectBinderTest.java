@@ -0,0 +1,163 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import io.datatree.Tree;
+
+public class ObjectBinderTest {
+
+	// --- TEST TYPES ---
+
+	public enum Status {
+		ACTIVE, DELETED
+	}
+
+	public record Item(int id, String name, double price, Status status, List<String> tags) {
+	}
+
+	public record Page(long total, List<Item> items, Map<String, Integer> counts) {
+	}
+
+	public static class Pojo {
+
+		protected String name;
+		protected boolean active;
+		protected int[] numbers;
+		protected Set<String> labels;
+		protected Pojo child;
+		protected transient String ignored;
+
+	}
+
+	// ---------------- TESTS ----------------
+
+	@Test
+	public void testRecord() throws Exception {
+		Page page = ObjectBinder.bind(parse("{\"total\":12345678901,\"items\":[{\"id\":1,\"name\":\"a\",\"price\":2,"
+				+ "\"status\":\"ACTIVE\",\"tags\":[\"x\",\"y\"],\"unknown\":{\"a\":[1]}},{\"id\":2}],"
+				+ "\"counts\":{\"a\":1,\"b\":2}}"), Page.class);
+		assertEquals(12345678901L, page.total());
+		assertEquals(2, page.items().size());
+		Item item = page.items().get(0);
+		assertEquals(1, item.id());
+		assertEquals("a", item.name());
+		assertEquals(2d, item.price());
+		assertEquals(Status.ACTIVE, item.status());
+		assertEquals(List.of("x", "y"), item.tags());
+		Item empty = page.items().get(1);
+		assertEquals(2, empty.id());
+		assertNull(empty.name());
+		assertEquals(0d, empty.price());
+		assertNull(empty.tags());
+		assertEquals(2, page.counts().get("b"));
+	}
+
+	@Test
+	public void testPojo() throws Exception {
+		Pojo pojo = ObjectBinder.bind(parse("{\"name\":\"p\",\"active\":true,\"numbers\":[1,2,3],"
+				+ "\"labels\":[\"a\",\"a\",\"b\"],\"child\":{\"name\":\"c\"},\"ignored\":\"x\"}"), Pojo.class);
+		assertEquals("p", pojo.name);
+		assertTrue(pojo.active);
+		assertArrayEquals(new int[] { 1, 2, 3 }, pojo.numbers);
+		assertEquals(Set.of("a", "b"), pojo.labels);
+		assertEquals("c", pojo.child.name);
+		assertNull(pojo.child.child);
+		assertNull(pojo.ignored);
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		assertThrows(IllegalArgumentException.class, () -> ObjectBinder.bind(parse("[1,2]"), Item.class));
+		assertThrows(IllegalArgumentException.class, () -> ObjectBinder.bind(parse("{\"status\":\"X\"}"), Item.class));
+	}
+
+	@Test
+	public void testTypedRequests() throws Exception {
+		HttpClient cl = new HttpClient();
+		try (TestServer server = new TestServer()) {
+			server.handle("/", exchange -> {
+				byte[] body = TestServer.readBody(exchange);
+				int status = 200;
+				byte[] bytes;
+				if ("POST".equals(exchange.getRequestMethod())) {
+					bytes = body;
+				} else if (exchange.getRequestURI().getPath().equals("/item")) {
+					bytes = "{\"id\":1,\"name\":\"a\",\"tags\":[\"x\"]}".getBytes(StandardCharsets.UTF_8);
+				} else {
+					status = 404;
+					bytes = "{\"error\":\"Not Found\"}".getBytes(StandardCharsets.UTF_8);
+				}
+				TestServer.send(exchange, status, "application/json", bytes);
+			});
+			cl.start();
+			String url = server.url("");
+
+			// GET
+			Item item = (Item) cl.getAs(url + "/item", Item.class).waitFor(5000).asObject();
+			assertEquals(1, item.id());
+			assertEquals("a", item.name());
+			assertEquals(List.of("x"), item.tags());
+
+			// POST
+			Tree req = new Tree();
+			req.put("id", 2).put("name", "b");
+			item = (Item) cl.postAs(url + "/echo", req, Item.class, null).waitFor(5000).asObject();
+			assertEquals(2, item.id());
+			assertEquals("b", item.name());
+
+			// Error responses are not bound
+			Throwable cause = assertThrows(Throwable.class, () -> cl.getAs(url + "/missing", Item.class).waitFor(5000));
+			while (cause.getCause() != null && !(cause instanceof IOException)) {
+				cause = cause.getCause();
+			}
+			assertTrue(cause instanceof IOException);
+			assertTrue(cause.getMessage().contains("404"), cause.getMessage());
+		} finally {
+			cl.stop();
+		}
+	}
+
+	protected Object parse(String json) throws Exception {
+		IncrementalJsonParser parser = new IncrementalJsonParser();
+		parser.feed(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+		return parser.finish();
+	}
+
+}
@@ -0,0 +1,231 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.asynchttpclient.request.body.Body.BodyState;
+import org.asynchttpclient.request.body.generator.FeedListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.FastThreadLocalThread;
+import services.moleculer.stream.PacketStream;
+
+public class PacketStreamBodyTest {
+
+	// --- VARIABLES ---
+
+	protected ScheduledExecutorService scheduler;
+	protected PacketStream stream;
+
+	// --- INIT / DESTROY TEST ---
+
+	@BeforeEach
+	protected void setUp() throws Exception {
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		stream = new PacketStream("node1", scheduler);
+	}
+
+	@AfterEach
+	protected void tearDown() throws Exception {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	// ---------------- TESTS ----------------
+
+	@Test
+	public void testBlockedProducer() throws Exception {
+		PacketStreamBody body = new PacketStreamBody(stream, -1, 4, 8);
+		body.setListener(new NoopListener());
+
+		// The producer sends 40 bytes in 4-byte packets
+		Thread producer = new Thread(() -> {
+			try {
+				for (int i = 0; i < 10; i++) {
+					stream.sendData(bytes(4, i * 4));
+				}
+				stream.sendClose();
+			} catch (Throwable cause) {
+				cause.printStackTrace();
+			}
+		});
+		producer.start();
+
+		// The producer is blocked above the "highWatermark"
+		waitForState(producer, Thread.State.TIMED_WAITING);
+		assertEquals(12, body.getQueuedBytes());
+		assertEquals(3, body.getQueuedPackets());
+		Thread.sleep(100);
+		assertEquals(12, body.getQueuedBytes());
+		assertTrue(producer.isAlive());
+
+		// The queue never exceeds the "highWatermark" plus one packet
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		long maxQueued = 0;
+		BodyState state;
+		do {
+			maxQueued = Math.max(maxQueued, body.getQueuedBytes());
+			ByteBuf chunk = Unpooled.buffer();
+			state = body.transferTo(chunk);
+			if (state == BodyState.SUSPEND) {
+				Thread.sleep(1);
+			}
+			out.write(chunk.array(), chunk.arrayOffset(), chunk.readableBytes());
+		} while (state != BodyState.STOP);
+		producer.join(2000);
+		assertFalse(producer.isAlive());
+		assertTrue(maxQueued <= 12, "queued bytes: " + maxQueued);
+		assertArrayEquals(bytes(40, 0), out.toByteArray());
+		assertEquals(0, body.getQueuedBytes());
+	}
+
+	@Test
+	public void testEventLoopProducer() throws Exception {
+		PacketStreamBody body = new PacketStreamBody(stream, -1, 4, 8);
+		body.setListener(new NoopListener());
+
+		// Netty's event loop threads are never blocked
+		Thread producer = new FastThreadLocalThread(() -> {
+			try {
+				for (int i = 0; i < 10; i++) {
+					stream.sendData(bytes(4, i * 4));
+				}
+			} catch (Throwable cause) {
+				cause.printStackTrace();
+			}
+		});
+		producer.start();
+		producer.join(2000);
+		assertFalse(producer.isAlive());
+		assertEquals(40, body.getQueuedBytes());
+		assertEquals(10, body.getQueuedPackets());
+	}
+
+	@Test
+	public void testCoalescing() throws Exception {
+		PacketStreamBody body = new PacketStreamBody(stream, -1);
+		body.setChunkSize(4);
+		body.setListener(new NoopListener());
+		assertEquals(BodyState.SUSPEND, body.transferTo(Unpooled.buffer()));
+
+		// Packet larger than the chunk (sent in one chunk)
+		stream.sendData(bytes(10, 0));
+		assertChunk(body, BodyState.CONTINUE, bytes(10, 0));
+
+		// Small packets are coalesced up to the chunk size
+		stream.sendData(bytes(2, 10));
+		stream.sendData(bytes(2, 12));
+		stream.sendData(bytes(3, 14));
+		assertEquals(3, body.getQueuedPackets());
+		assertChunk(body, BodyState.CONTINUE, bytes(4, 10));
+		assertEquals(1, body.getQueuedPackets());
+		assertEquals(3, body.getQueuedBytes());
+
+		// The end marker remains in the queue for the next call
+		stream.sendClose();
+		assertChunk(body, BodyState.CONTINUE, bytes(3, 14));
+		assertEquals(0, body.getQueuedBytes());
+		assertEquals(BodyState.STOP, body.transferTo(Unpooled.buffer()));
+	}
+
+	@Test
+	public void testPartialPacket() throws Exception {
+		PacketStreamBody body = new PacketStreamBody(stream, -1);
+		body.setChunkSize(64);
+		body.setListener(new NoopListener());
+		stream.sendData(bytes(8, 0));
+		stream.sendData(bytes(4, 8));
+		stream.sendClose();
+
+		// The target buffer is smaller than the first packet
+		ByteBuf small = Unpooled.buffer(5, 5);
+		assertEquals(BodyState.CONTINUE, body.transferTo(small));
+		assertArrayEquals(bytes(5, 0), toArray(small));
+		assertEquals(2, body.getQueuedPackets());
+		assertEquals(7, body.getQueuedBytes());
+
+		// The rest of the packet and the next packet
+		assertChunk(body, BodyState.CONTINUE, bytes(7, 5));
+		assertEquals(0, body.getQueuedBytes());
+		assertEquals(BodyState.STOP, body.transferTo(Unpooled.buffer()));
+	}
+
+	// --- UTILITIES ---
+
+	protected static void assertChunk(PacketStreamBody body, BodyState expectedState, byte[] expectedBytes)
+			throws Exception {
+		ByteBuf chunk = Unpooled.buffer();
+		assertEquals(expectedState, body.transferTo(chunk));
+		assertArrayEquals(expectedBytes, toArray(chunk));
+	}
+
+	protected static byte[] toArray(ByteBuf buffer) {
+		byte[] bytes = new byte[buffer.readableBytes()];
+		buffer.getBytes(buffer.readerIndex(), bytes);
+		return bytes;
+	}
+
+	protected static void waitForState(Thread thread, Thread.State state) throws InterruptedException {
+		long timeout = System.currentTimeMillis() + 2000;
+		while (thread.getState() != state && System.currentTimeMillis() < timeout) {
+			Thread.sleep(5);
+		}
+		assertEquals(state, thread.getState());
+	}
+
+	protected static byte[] bytes(int length, int offset) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (offset + i);
+		}
+		return bytes;
+	}
+
+	protected static class NoopListener implements FeedListener {
+
+		@Override
+		public void onContentAdded() {
+		}
+
+		@Override
+		public void onError(Throwable t) {
+		}
+
+	}
+
+}
\ No newline at end of file
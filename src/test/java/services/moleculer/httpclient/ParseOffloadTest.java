@@ -0,0 +1,170 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import io.datatree.Promise;
+import io.datatree.Tree;
+import io.datatree.dom.builtin.JsonBuiltin;
+import io.netty.util.concurrent.FastThreadLocalThread;
+
+public class ParseOffloadTest {
+
+	// --- CONSTANTS ---
+
+	private static final int ITEMS = 1000;
+
+	// --- VARIABLES ---
+
+	protected TestServer server;
+	protected HttpClient cl = new HttpClient();
+	protected String url;
+
+	protected final AtomicReference<Thread> parserThread = new AtomicReference<>();
+	protected final AtomicInteger offloaded = new AtomicInteger();
+
+	// --- INIT / DESTROY TEST ---
+
+	@BeforeEach
+	protected void setUp() throws Exception {
+		server = new TestServer().handle("/", this::handle);
+		url = server.url("");
+
+		// Records the thread of the parser
+		cl.setJsonReader(new JsonBuiltin() {
+
+			@Override
+			public Object parse(byte[] source) throws Exception {
+				parserThread.set(Thread.currentThread());
+				return super.parse(source);
+			}
+
+		});
+		cl.setParseExecutor(command -> {
+			offloaded.incrementAndGet();
+			Thread thread = new Thread(command, "parser");
+			thread.start();
+		});
+		cl.setParseOffloadThreshold(1024);
+		cl.start();
+	}
+
+	@AfterEach
+	protected void tearDown() throws Exception {
+		if (cl != null) {
+			cl.stop();
+		}
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	/**
+	 * Sends a small ("/small"), large ("/large") or large and invalid
+	 * ("/invalid") JSON response.
+	 */
+	protected void handle(HttpExchange exchange) throws Exception {
+		String path = exchange.getRequestURI().getPath();
+		StringBuilder json = new StringBuilder("{\"items\":[");
+		int items = path.equals("/small") ? 1 : ITEMS;
+		for (int i = 0; i < items; i++) {
+			if (i > 0) {
+				json.append(',');
+			}
+			json.append(i);
+		}
+		if (!path.equals("/invalid")) {
+			json.append("]}");
+		}
+		byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+		TestServer.send(exchange, 200, "application/json", bytes);
+	}
+
+	// ---------------- TESTS ----------------
+
+	@Test
+	public void testLargeResponse() throws Exception {
+		Tree rsp = cl.get(url + "/large").waitFor(5000);
+		assertEquals(ITEMS, rsp.get("items").size());
+		assertEquals(1, offloaded.get());
+		assertEquals("parser", parserThread.get().getName());
+	}
+
+	@Test
+	public void testSmallResponse() throws Exception {
+		Tree rsp = cl.get(url + "/small").waitFor(5000);
+		assertEquals(1, rsp.get("items").size());
+		assertEquals(0, offloaded.get());
+		assertTrue(parserThread.get() instanceof FastThreadLocalThread);
+	}
+
+	@Test
+	public void testParseError() throws Exception {
+		AtomicInteger resolved = new AtomicInteger();
+		AtomicInteger rejected = new AtomicInteger();
+		Promise promise = cl.get(url + "/invalid");
+		promise.then(rsp -> {
+			resolved.incrementAndGet();
+		}).catchError(err -> {
+			rejected.incrementAndGet();
+		});
+		assertThrows(Exception.class, () -> promise.waitFor(5000));
+		assertEquals(1, offloaded.get());
+		assertEquals("parser", parserThread.get().getName());
+
+		// Rejected only once, never resolved
+		Thread.sleep(200);
+		assertEquals(0, resolved.get());
+		assertEquals(1, rejected.get());
+	}
+
+	@Test
+	public void testRejectedExecution() throws Exception {
+		cl.setParseExecutor(command -> {
+			throw new RejectedExecutionException();
+		});
+
+		// Parsed on the I/O thread
+		Tree rsp = cl.get(url + "/large").waitFor(5000);
+		assertEquals(ITEMS, rsp.get("items").size());
+		assertFalse(parserThread.get().getName().equals("parser"));
+	}
+
+}
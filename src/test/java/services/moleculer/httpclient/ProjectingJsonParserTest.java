@@ -0,0 +1,106 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class ProjectingJsonParserTest {
+
+	private static final String JSON = "{\"data\":{\"items\":[{\"id\":1,\"name\":\"a\",\"tags\":[\"x\"]},"
+			+ "{\"id\":2,\"name\":\"b\\\"c\",\"tags\":[]},{\"name\":\"d\"}]},"
+			+ "\"meta\":{\"total\":3,\"page\":{\"size\":10}},\"other\":[1,2,{\"id\":4}]}";
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testProjection() throws Exception {
+		for (int step : new int[] { 1, 3, 1000 }) {
+			Map<String, Object> map = (Map<String, Object>) parse(JSON, step, "data.items[*].id", "meta.total");
+			assertEquals(2, map.size());
+			assertFalse(map.containsKey("other"));
+			List<Object> items = (List<Object>) ((Map<String, Object>) map.get("data")).get("items");
+			assertEquals(3, items.size());
+			assertEquals(1, ((Map<String, Object>) items.get(0)).get("id"));
+			assertEquals(1, ((Map<String, Object>) items.get(0)).size());
+			assertEquals(2, ((Map<String, Object>) items.get(1)).get("id"));
+			assertTrue(((Map<String, Object>) items.get(2)).isEmpty());
+			Map<String, Object> meta = (Map<String, Object>) map.get("meta");
+			assertEquals(1, meta.size());
+			assertEquals(3, meta.get("total"));
+		}
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testSubtreesAndIndexes() throws Exception {
+		Map<String, Object> map = (Map<String, Object>) parse(JSON, 1, "meta.page", "data.items[1]", "$.other[2].id");
+		Map<String, Object> page = (Map<String, Object>) ((Map<String, Object>) map.get("meta")).get("page");
+		assertEquals(10, page.get("size"));
+		List<Object> items = (List<Object>) ((Map<String, Object>) map.get("data")).get("items");
+		assertEquals(1, items.size());
+		assertEquals("b\"c", ((Map<String, Object>) items.get(0)).get("name"));
+		List<Object> other = (List<Object>) map.get("other");
+		assertEquals(1, other.size());
+		assertEquals(4, ((Map<String, Object>) other.get(0)).get("id"));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testWildcardField() throws Exception {
+		Map<String, Object> map = (Map<String, Object>) parse(JSON, 1, "*.total");
+		assertEquals(3, ((Map<String, Object>) map.get("meta")).get("total"));
+		assertTrue(((Map<String, Object>) map.get("data")).isEmpty());
+
+		// The wildcard matches the array, but not its elements
+		assertTrue(((List<Object>) map.get("other")).isEmpty());
+	}
+
+	@Test
+	public void testErrors() throws Exception {
+		assertThrows(IOException.class, () -> parse("{\"a\":{\"b\":}}", 1, "x"));
+		assertThrows(IOException.class, () -> parse("{\"a\":[1,2", 1, "x"));
+		assertThrows(IllegalArgumentException.class, () -> parse("{}", 1, "a[x]"));
+	}
+
+	protected Object parse(String json, int step, String... paths) throws IOException {
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		ProjectingJsonParser parser = new ProjectingJsonParser(Arrays.asList(paths));
+		for (int i = 0; i < bytes.length; i += step) {
+			parser.feed(bytes, i, Math.min(step, bytes.length - i));
+		}
+		return parser.finish();
+	}
+
+}
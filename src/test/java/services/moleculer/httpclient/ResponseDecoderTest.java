@@ -0,0 +1,184 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.asynchttpclient.AsyncHandler;
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.HttpResponseStatus;
+import org.asynchttpclient.netty.EagerResponseBodyPart;
+import org.junit.jupiter.api.Test;
+
+import io.datatree.Tree;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.compression.DecompressionException;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+
+public class ResponseDecoderTest {
+
+	// --- VARIABLES ---
+
+	protected final byte[] content = new byte[200 * 1024];
+
+	{
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) ((i / 7) % 100);
+		}
+	}
+
+	// ---------------- TESTS ----------------
+
+	@Test
+	public void testGzip() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(content);
+		gzip.close();
+		assertDecoded("gzip", out.toByteArray());
+	}
+
+	@Test
+	public void testDeflate() throws Exception {
+
+		// Zlib format
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DeflaterOutputStream deflate = new DeflaterOutputStream(out);
+		deflate.write(content);
+		deflate.close();
+		assertDecoded("deflate", out.toByteArray());
+
+		// Raw deflate data (without zlib header)
+		out = new ByteArrayOutputStream();
+		deflate = new DeflaterOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+		deflate.write(content);
+		deflate.close();
+		assertDecoded("deflate", out.toByteArray());
+	}
+
+	@Test
+	public void testDecompressionBomb() throws Exception {
+
+		// 64 MB of zeros in a ~64 KB body part
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		byte[] zeros = new byte[1024 * 1024];
+		for (int i = 0; i < 64; i++) {
+			gzip.write(zeros);
+		}
+		gzip.close();
+		byte[] encoded = out.toByteArray();
+
+		RequestParams params = new RequestParams("GET", false);
+		ResponseDecoder decoder = new ResponseDecoder(new ResponseToBytes(params), null);
+		HttpHeaders headers = new DefaultHttpHeaders();
+		headers.set(HttpHeaderNames.CONTENT_ENCODING, "gzip");
+		decoder.onHeadersReceived(headers);
+		assertThrows(DecompressionException.class, () -> decoder
+				.onBodyPartReceived(new EagerResponseBodyPart(Unpooled.wrappedBuffer(encoded), true)));
+		decoder.onThrowable(new DecompressionException());
+	}
+
+	@Test
+	public void testIdentity() throws Exception {
+		assertDecoded(null, content);
+	}
+
+	// --- UTILITIES ---
+
+	protected void assertDecoded(String encoding, byte[] encoded) throws Exception {
+		RequestParams params = new RequestParams("GET", false);
+		HeaderRecorder target = new HeaderRecorder(new ResponseToBytes(params));
+		ResponseDecoder decoder = new ResponseDecoder(target, null);
+		HttpHeaders headers = new DefaultHttpHeaders();
+		headers.set(HttpHeaderNames.CONTENT_LENGTH, encoded.length);
+		if (encoding != null) {
+			headers.set(HttpHeaderNames.CONTENT_ENCODING, encoding);
+		}
+		decoder.onHeadersReceived(headers);
+
+		// The target handler receives the decoded body
+		assertNull(target.headers.get(HttpHeaderNames.CONTENT_ENCODING));
+
+		// Small encoded parts
+		for (int offset = 0; offset < encoded.length; offset += 1000) {
+			int len = Math.min(1000, encoded.length - offset);
+			decoder.onBodyPartReceived(new EagerResponseBodyPart(Unpooled.wrappedBuffer(encoded, offset, len),
+					offset + len == encoded.length));
+		}
+		Tree rsp = (Tree) decoder.onCompleted();
+		assertArrayEquals(content, rsp.asBytes());
+	}
+
+	/**
+	 * Records the headers received by the target handler.
+	 */
+	protected static class HeaderRecorder implements AsyncHandler<Tree> {
+
+		protected final ResponseToBytes handler;
+		protected HttpHeaders headers;
+
+		protected HeaderRecorder(ResponseToBytes handler) {
+			this.handler = handler;
+		}
+
+		@Override
+		public State onStatusReceived(HttpResponseStatus responseStatus) throws Exception {
+			return handler.onStatusReceived(responseStatus);
+		}
+
+		@Override
+		public State onHeadersReceived(HttpHeaders headers) throws Exception {
+			this.headers = headers;
+			return handler.onHeadersReceived(headers);
+		}
+
+		@Override
+		public State onBodyPartReceived(HttpResponseBodyPart bodyPart) throws Exception {
+			return handler.onBodyPartReceived(bodyPart);
+		}
+
+		@Override
+		public void onThrowable(Throwable t) {
+			handler.onThrowable(t);
+		}
+
+		@Override
+		public Tree onCompleted() throws Exception {
+			return handler.onCompleted();
+		}
+
+	}
+
+}
\ No newline at end of file
@@ -0,0 +1,205 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.asynchttpclient.HttpResponseBodyPart;
+import org.asynchttpclient.netty.EagerResponseBodyPart;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import services.moleculer.stream.PacketStream;
+
+public class ResponseToPacketStreamTest {
+
+	// --- VARIABLES ---
+
+	protected ScheduledExecutorService scheduler;
+	protected ArrayDeque<Runnable> tasks;
+	protected RequestParams params;
+	protected EmbeddedChannel channel;
+	protected PacketStream stream;
+	protected ByteArrayOutputStream received;
+
+	// --- INIT / DESTROY TEST ---
+
+	@BeforeEach
+	protected void setUp() throws Exception {
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+
+		// The writer tasks are executed manually
+		tasks = new ArrayDeque<>();
+		params = new RequestParams("GET", false);
+		params.executor = tasks::add;
+		params.scheduler = scheduler;
+
+		channel = new EmbeddedChannel();
+		stream = new PacketStream("node1", scheduler);
+		received = new ByteArrayOutputStream();
+		stream.onPacket((bytes, error, close) -> {
+			if (bytes != null) {
+				received.write(bytes);
+			}
+		});
+	}
+
+	@AfterEach
+	protected void tearDown() throws Exception {
+		if (channel != null) {
+			channel.finishAndReleaseAll();
+		}
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	// ---------------- TESTS ----------------
+
+	@Test
+	public void testWatermarks() throws Exception {
+		ResponseToPacketStream handler = new ResponseToPacketStream(params, stream, 4, 8);
+		handler.onTcpConnectSuccess(null, channel);
+
+		// Below the "highWatermark"
+		handler.onBodyPartReceived(part(6, 0));
+		assertEquals(6, handler.getPendingBytes());
+		assertTrue(channel.config().isAutoRead());
+
+		// Above the "highWatermark"
+		handler.onBodyPartReceived(part(6, 6));
+		assertEquals(12, handler.getPendingBytes());
+		assertFalse(channel.config().isAutoRead());
+
+		// The writer task resumes reading below the "lowWatermark"
+		runTasks();
+		assertEquals(0, handler.getPendingBytes());
+		assertTrue(channel.config().isAutoRead());
+		assertArrayEquals(bytes(12, 0), received.toByteArray());
+	}
+
+	@Test
+	public void testConsumedBytes() throws Exception {
+		AtomicLong consumed = new AtomicLong();
+		ResponseToPacketStream handler = new ResponseToPacketStream(params, stream, 4, 8, consumed::get);
+		handler.onTcpConnectSuccess(null, channel);
+
+		handler.onBodyPartReceived(part(10, 0));
+		assertFalse(channel.config().isAutoRead());
+
+		// Passed to the PacketStream, but not processed by the consumer
+		runTasks();
+		assertEquals(10, handler.getPendingBytes());
+		assertFalse(channel.config().isAutoRead());
+
+		// Still above the "lowWatermark"
+		consumed.set(5);
+		Thread.sleep(100);
+		assertEquals(5, handler.getPendingBytes());
+		assertFalse(channel.config().isAutoRead());
+
+		// Processed by the consumer (the counter is polled)
+		consumed.set(10);
+		long timeout = System.currentTimeMillis() + 2000;
+		while (!channel.config().isAutoRead() && System.currentTimeMillis() < timeout) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, handler.getPendingBytes());
+		assertTrue(channel.config().isAutoRead());
+		assertArrayEquals(bytes(10, 0), received.toByteArray());
+	}
+
+	@Test
+	public void testAggregation() throws Exception {
+		ArrayList<Integer> packets = new ArrayList<>();
+		PacketStream target = new PacketStream("node1", scheduler);
+		target.onPacket((bytes, error, close) -> {
+			if (bytes != null) {
+				packets.add(bytes.length);
+				received.write(bytes);
+			}
+		});
+		params.streamPacketSize = 4;
+		ResponseToPacketStream handler = new ResponseToPacketStream(params, target);
+
+		// Small parts are aggregated
+		handler.onBodyPartReceived(part(1, 0));
+		handler.onBodyPartReceived(part(1, 1));
+		assertEquals(0, packets.size());
+
+		// The packet is completed, the rest of the part is forwarded whole
+		handler.onBodyPartReceived(part(10, 2));
+		assertEquals(2, packets.size());
+		assertEquals(4, packets.get(0));
+		assertEquals(8, packets.get(1));
+
+		// Large part (not split)
+		handler.onBodyPartReceived(part(9, 12));
+		assertEquals(3, packets.size());
+		assertEquals(9, packets.get(2));
+
+		// The remaining bytes are sent at the end of the response
+		handler.onBodyPartReceived(part(3, 21));
+		handler.onCompleted();
+		assertEquals(4, packets.size());
+		assertEquals(3, packets.get(3));
+		assertArrayEquals(bytes(24, 0), received.toByteArray());
+	}
+
+	// --- UTILITIES ---
+
+	protected void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+		}
+	}
+
+	protected static HttpResponseBodyPart part(int length, int offset) {
+		return new EagerResponseBodyPart(Unpooled.wrappedBuffer(bytes(length, offset)), false);
+	}
+
+	protected static byte[] bytes(int length, int offset) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (offset + i);
+		}
+		return bytes;
+	}
+
+}
\ No newline at end of file
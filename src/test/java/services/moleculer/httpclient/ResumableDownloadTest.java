@@ -0,0 +1,214 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import io.datatree.Tree;
+
+public class ResumableDownloadTest {
+
+	// --- CONSTANTS ---
+
+	private static final String ETAG = "\"v1\"";
+
+	// --- VARIABLES ---
+
+	protected final byte[] content = new byte[1024 * 1024];
+	protected final AtomicBoolean failFirst = new AtomicBoolean();
+	protected final AtomicInteger errorRequests = new AtomicInteger();
+
+	protected TestServer server;
+	protected HttpClient cl = new HttpClient();
+	protected String url;
+
+	// --- INIT / DESTROY TEST ---
+
+	@BeforeEach
+	protected void setUp() throws Exception {
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i * 17);
+		}
+		server = new TestServer();
+		server.handle("/file", this::handle);
+		server.handle("/shifted", this::handleShifted);
+		server.handle("/missing", exchange -> {
+			errorRequests.incrementAndGet();
+			TestServer.send(exchange, 404, "text/plain", "Not Found".getBytes("UTF-8"));
+		});
+		url = server.url("/file");
+		cl.start();
+	}
+
+	@AfterEach
+	protected void tearDown() throws Exception {
+		if (cl != null) {
+			cl.stop();
+		}
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	protected void handle(HttpExchange exchange) throws Exception {
+		exchange.getResponseHeaders().set("ETag", ETAG);
+		exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		String ifRange = exchange.getRequestHeaders().getFirst("If-Range");
+		int start = 0;
+		if (range != null && (ifRange == null || ETAG.equals(ifRange))) {
+			start = Integer.parseInt(range.substring(6, range.length() - 1));
+			exchange.getResponseHeaders().set("Content-Range",
+					"bytes " + start + '-' + (content.length - 1) + '/' + content.length);
+			exchange.sendResponseHeaders(206, content.length - start);
+		} else {
+			exchange.sendResponseHeaders(200, content.length);
+		}
+		OutputStream out = exchange.getResponseBody();
+		int len = content.length - start;
+		if (failFirst.compareAndSet(true, false)) {
+
+			// Send the half of the content, then drop the connection
+			out.write(content, start, len / 2);
+			out.flush();
+			return;
+		}
+		out.write(content, start, len);
+		out.close();
+	}
+
+	protected void handleShifted(HttpExchange exchange) throws Exception {
+
+		// Broken server: "206 Partial Content" response from the first byte
+		exchange.getResponseHeaders().set("ETag", ETAG);
+		exchange.getResponseHeaders().set("Content-Range",
+				"bytes 0-" + (content.length - 1) + '/' + content.length);
+		exchange.sendResponseHeaders(206, content.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(content);
+		out.close();
+	}
+
+	// ---------------- TESTS ----------------
+
+	@Test
+	public void testRetry() throws Exception {
+		failFirst.set(true);
+		File file = File.createTempFile("resumable", ".tmp");
+		Tree rsp = cl.downloadResumable(url, file.toPath()).waitFor(5000);
+		assertEquals(1, rsp.get("retries", 0));
+		assertEquals(content.length, rsp.get("length", 0L));
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+		assertFalse(Files.exists(sidecar(file)));
+		file.delete();
+	}
+
+	@Test
+	public void testResumeAfterRestart() throws Exception {
+		File file = File.createTempFile("resumable", ".tmp");
+		int half = content.length / 2;
+		Files.write(file.toPath(), Arrays.copyOf(content, half));
+		writeSidecar(file, url, ETAG, half);
+		Tree rsp = cl.downloadResumable(url, file.toPath()).waitFor(5000);
+		assertEquals(half, rsp.get("resumedFrom", 0L));
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+		assertFalse(Files.exists(sidecar(file)));
+		file.delete();
+	}
+
+	@Test
+	public void testChangedResource() throws Exception {
+		File file = File.createTempFile("resumable", ".tmp");
+		int half = content.length / 2;
+		byte[] old = new byte[half];
+		Files.write(file.toPath(), old);
+		writeSidecar(file, url, "\"v0\"", half);
+		cl.downloadResumable(url, file.toPath()).waitFor(5000);
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+		file.delete();
+	}
+
+	@Test
+	public void testInvalidContentRange() throws Exception {
+		String shifted = server.url("/shifted");
+		File file = File.createTempFile("resumable", ".tmp");
+		int half = content.length / 2;
+		byte[] stored = Arrays.copyOf(content, half);
+		Files.write(file.toPath(), stored);
+		writeSidecar(file, shifted, ETAG, half);
+		Exception e = assertThrows(Exception.class,
+				() -> cl.downloadResumable(shifted, file.toPath(), 1, null).waitFor(5000));
+		assertTrue(String.valueOf(e.getMessage()).contains("Content-Range"), String.valueOf(e.getMessage()));
+
+		// The stored bytes are not overwritten
+		assertArrayEquals(stored, Files.readAllBytes(file.toPath()));
+		assertTrue(Files.exists(sidecar(file)));
+		Files.deleteIfExists(sidecar(file));
+		file.delete();
+	}
+
+	@Test
+	public void testErrorStatus() throws Exception {
+		File file = File.createTempFile("resumable", ".tmp");
+		Exception e = assertThrows(Exception.class,
+				() -> cl.downloadResumable(server.url("/missing"), file.toPath()).waitFor(5000));
+		assertTrue(String.valueOf(e.getMessage()).contains("404"), String.valueOf(e.getMessage()));
+
+		// "404 Not Found" is not retried
+		assertEquals(1, errorRequests.get());
+		assertEquals(0, Files.size(file.toPath()));
+		Files.deleteIfExists(sidecar(file));
+		file.delete();
+	}
+
+	protected Path sidecar(File file) {
+		return file.toPath().resolveSibling(file.getName() + ResumableDownload.SIDECAR_EXTENSION);
+	}
+
+	protected void writeSidecar(File file, String url, String etag, long position) throws Exception {
+		String props = "url=" + url.replace(":", "\\:") + "\netag=" + etag + "\nlength=" + content.length
+				+ "\nposition=" + position + '\n';
+		Files.write(sidecar(file), props.getBytes("UTF-8"));
+	}
+
+}
@@ -0,0 +1,173 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import io.datatree.Promise;
+import io.datatree.Tree;
+import services.moleculer.stream.PacketStream;
+
+public class ResumableUploadTest {
+
+	// --- CONSTANTS ---
+
+	private static final int PART_SIZE = 64 * 1024;
+
+	// --- VARIABLES ---
+
+	protected final byte[] content = new byte[PART_SIZE * 5 + 123];
+	protected final byte[] received = new byte[content.length];
+	protected final AtomicBoolean failSecond = new AtomicBoolean();
+	protected final AtomicInteger errorRequests = new AtomicInteger();
+
+	protected volatile long total = -1;
+
+	protected TestServer server;
+	protected ScheduledExecutorService scheduler;
+	protected HttpClient cl = new HttpClient();
+	protected String url;
+
+	// --- INIT / DESTROY TEST ---
+
+	@BeforeEach
+	protected void setUp() throws Exception {
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i * 31);
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		server = new TestServer();
+		server.handle("/upload", this::handle);
+		server.handle("/forbidden", exchange -> {
+			errorRequests.incrementAndGet();
+			TestServer.readBody(exchange);
+			TestServer.send(exchange, 403, "text/plain", "Forbidden".getBytes("UTF-8"));
+		});
+		url = server.url("/upload");
+		cl.start();
+	}
+
+	@AfterEach
+	protected void tearDown() throws Exception {
+		if (cl != null) {
+			cl.stop();
+		}
+		if (server != null) {
+			server.close();
+		}
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+		}
+	}
+
+	protected void handle(HttpExchange exchange) throws Exception {
+
+		// Content-Range: bytes [start]-[end]/[total or *]
+		String range = exchange.getRequestHeaders().getFirst("Content-Range");
+		int dash = range.indexOf('-');
+		int slash = range.indexOf('/');
+		int start = Integer.parseInt(range.substring(6, dash));
+		String length = range.substring(slash + 1);
+		InputStream in = exchange.getRequestBody();
+		byte[] buffer = new byte[8192];
+		int pos = start;
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			System.arraycopy(buffer, 0, received, pos, n);
+			pos += n;
+		}
+		if (start == PART_SIZE && failSecond.compareAndSet(true, false)) {
+			exchange.sendResponseHeaders(500, -1);
+			return;
+		}
+		if (!"*".equals(length)) {
+			total = Long.parseLong(length);
+		}
+		exchange.sendResponseHeaders(200, -1);
+	}
+
+	// ---------------- TESTS ----------------
+
+	@Test
+	public void testUpload() throws Exception {
+		Tree rsp = upload();
+		assertEquals(6, rsp.get("parts", 0));
+		assertEquals(0, rsp.get("retries", 0));
+		assertEquals(content.length, rsp.get("length", 0L));
+		assertEquals(content.length, total);
+		assertArrayEquals(content, received);
+	}
+
+	@Test
+	public void testRetry() throws Exception {
+		failSecond.set(true);
+		Tree rsp = upload();
+		assertEquals(6, rsp.get("parts", 0));
+		assertEquals(1, rsp.get("retries", 0));
+		assertEquals(content.length, total);
+		assertArrayEquals(content, received);
+	}
+
+	@Test
+	public void testPermanentError() throws Exception {
+		Exception e = assertThrows(Exception.class, () -> upload(server.url("/forbidden")));
+		assertTrue(String.valueOf(e.getMessage()).contains("403"), String.valueOf(e.getMessage()));
+
+		// "403 Forbidden" is not retried (max. one request per part of the window)
+		assertTrue(errorRequests.get() <= 2, "requests: " + errorRequests.get());
+	}
+
+	protected Tree upload() throws Exception {
+		return upload(url);
+	}
+
+	protected Tree upload(String url) throws Exception {
+		PacketStream stream = new PacketStream("node1", scheduler);
+		Promise p = cl.uploadResumable(url, stream, PART_SIZE, 2, 3, null);
+		for (int i = 0; i < content.length; i += 1000) {
+			byte[] packet = new byte[Math.min(1000, content.length - i)];
+			System.arraycopy(content, i, packet, 0, packet.length);
+			stream.sendData(packet);
+		}
+		stream.sendClose();
+		return p.waitFor(10000);
+	}
+
+}
@@ -0,0 +1,241 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import io.datatree.Tree;
+
+public class SegmentedDownloadTest {
+
+	// --- VARIABLES ---
+
+	protected final byte[] content = new byte[1024 * 1024];
+	protected final AtomicInteger rangeRequests = new AtomicInteger();
+	protected final AtomicBoolean failFirst = new AtomicBoolean();
+	protected final AtomicBoolean invalidRange = new AtomicBoolean();
+	protected final AtomicBoolean slowFirst = new AtomicBoolean();
+	protected final AtomicBoolean aborted = new AtomicBoolean();
+
+	protected final AtomicInteger errorRequests = new AtomicInteger();
+
+	protected TestServer server;
+	protected HttpClient cl = new HttpClient();
+	protected String baseUrl;
+
+	// --- INIT / DESTROY TEST ---
+
+	@BeforeEach
+	protected void setUp() throws Exception {
+		for (int i = 0; i < content.length; i++) {
+			content[i] = (byte) (i * 31);
+		}
+		server = new TestServer();
+		server.handle("/ranged", exchange -> handle(exchange, true));
+		server.handle("/plain", exchange -> handle(exchange, false));
+		server.handle("/missing", exchange -> {
+			errorRequests.incrementAndGet();
+			TestServer.send(exchange, 404, "text/html", "Not Found".getBytes(StandardCharsets.UTF_8));
+		});
+		baseUrl = server.url("");
+		cl.start();
+	}
+
+	@AfterEach
+	protected void tearDown() throws Exception {
+		if (cl != null) {
+			cl.stop();
+		}
+		if (server != null) {
+			server.close();
+		}
+	}
+
+	protected void handle(HttpExchange exchange, boolean ranged) throws Exception {
+		if (ranged) {
+			exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+		}
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders().set("Content-Length", Integer.toString(content.length));
+			exchange.sendResponseHeaders(200, -1);
+			return;
+		}
+		OutputStream out = exchange.getResponseBody();
+		if (ranged && range != null) {
+			rangeRequests.incrementAndGet();
+			String[] limits = range.substring(6).split("-");
+			int start = Integer.parseInt(limits[0]);
+			int end = Integer.parseInt(limits[1]);
+			int len = end - start + 1;
+			int rangeStart = invalidRange.get() && start > 0 ? start + 1 : start;
+			exchange.getResponseHeaders().set("Content-Range", "bytes " + rangeStart + '-' + end + '/' + content.length);
+			exchange.sendResponseHeaders(206, len);
+			if (slowFirst.get() && start == 0) {
+
+				// Send a part of the segment, then wait for the cancellation
+				out.write(content, start, 1024);
+				out.flush();
+				try {
+					Thread.sleep(1000);
+					for (int i = 1024; i < len; i += 1024) {
+						out.write(content, start + i, Math.min(1024, len - i));
+						out.flush();
+					}
+				} catch (IOException closed) {
+					aborted.set(true);
+					return;
+				}
+			}
+			if (failFirst.compareAndSet(true, false)) {
+
+				// Send the half of the segment, then drop the connection
+				out.write(content, start, len / 2);
+				out.flush();
+				return;
+			}
+			out.write(content, start, len);
+		} else {
+			exchange.sendResponseHeaders(200, content.length);
+			out.write(content);
+		}
+		out.close();
+	}
+
+	// ---------------- TESTS ----------------
+
+	@Test
+	public void testRangedDownload() throws Exception {
+		File file = File.createTempFile("download", ".tmp");
+		Tree rsp = cl.download(baseUrl + "/ranged", file.toPath(), 4).waitFor(5000);
+		assertTrue(rsp.get("ranged", false));
+		assertEquals(4, rsp.get("segments", 0));
+		assertEquals(content.length, rsp.get("length", 0L));
+		assertEquals(4, rangeRequests.get());
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+		assertTrue(rsp.get("throughput", 0L) > 0);
+		file.delete();
+	}
+
+	@Test
+	public void testPlainDownload() throws Exception {
+		File file = File.createTempFile("download", ".tmp");
+		Tree rsp = cl.download(baseUrl + "/plain", file.toPath(), 4).waitFor(5000);
+		assertFalse(rsp.get("ranged", true));
+		assertEquals(1, rsp.get("segments", 0));
+		assertEquals(0, rangeRequests.get());
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+		file.delete();
+	}
+
+	@Test
+	public void testRetry() throws Exception {
+		failFirst.set(true);
+		File file = File.createTempFile("download", ".tmp");
+		Tree rsp = cl.download(baseUrl + "/ranged", file.toPath(), 2).waitFor(5000);
+		assertEquals(1, rsp.get("retries", 0));
+		assertEquals(3, rangeRequests.get());
+		assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+		file.delete();
+	}
+
+	@Test
+	public void testInvalidContentRange() throws Exception {
+		invalidRange.set(true);
+		File file = File.createTempFile("download", ".tmp");
+		long start = System.currentTimeMillis();
+		Throwable error = null;
+		try {
+			cl.download(baseUrl + "/ranged", file.toPath(), 2, 2, null).waitFor(5000);
+		} catch (Throwable cause) {
+			error = cause;
+		}
+		assertTrue(error != null && String.valueOf(error.getMessage()).contains("Content-Range"),
+				String.valueOf(error));
+
+		// Two retries with backoff (100 + 200 msec)
+		assertTrue(System.currentTimeMillis() - start >= 300);
+		file.delete();
+	}
+
+	@Test
+	public void testCancelOnFailure() throws Exception {
+		invalidRange.set(true);
+		slowFirst.set(true);
+		File file = File.createTempFile("download", ".tmp");
+		Throwable error = null;
+		try {
+			cl.download(baseUrl + "/ranged", file.toPath(), 2, 0, null).waitFor(5000);
+		} catch (Throwable cause) {
+			error = cause;
+		}
+		assertTrue(error != null);
+
+		// The first (slow) segment is cancelled, the server can not write
+		long timeout = System.currentTimeMillis() + 5000;
+		while (!aborted.get() && System.currentTimeMillis() < timeout) {
+			Thread.sleep(50);
+		}
+		assertTrue(aborted.get());
+		file.delete();
+	}
+
+	@Test
+	public void testErrorStatus() throws Exception {
+		File file = File.createTempFile("download", ".tmp");
+		byte[] old = "old content".getBytes(StandardCharsets.UTF_8);
+		Files.write(file.toPath(), old);
+		Throwable error = null;
+		try {
+			cl.download(baseUrl + "/missing", file.toPath(), 4, 3, null).waitFor(5000);
+		} catch (Throwable cause) {
+			error = cause;
+		}
+		assertTrue(error != null && String.valueOf(error.getMessage()).contains("404"), String.valueOf(error));
+
+		// HEAD + one GET (permanent error, no retries), the file is untouched
+		assertEquals(2, errorRequests.get());
+		assertArrayEquals(old, Files.readAllBytes(file.toPath()));
+		file.delete();
+	}
+
+}
@@ -0,0 +1,123 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+
+import org.asynchttpclient.netty.EagerResponseBodyPart;
+import org.junit.jupiter.api.Test;
+
+import io.datatree.Tree;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+
+public class SpillFileTest {
+
+	@Test
+	public void testSpillFile() throws Exception {
+		byte[] part = new byte[100000];
+		for (int i = 0; i < part.length; i++) {
+			part[i] = (byte) i;
+		}
+
+		// Move the accumulated parts into the file
+		BodyAccumulator acc = new BodyAccumulator();
+		acc.append(part);
+		acc.append(ByteBuffer.wrap(part));
+		SpillFile file = new SpillFile(null);
+		acc.writeTo(file);
+		assertEquals(0, acc.length());
+		file.write(ByteBuffer.wrap(part));
+		assertEquals(part.length * 3, file.length());
+
+		// Read the content of the file
+		byte[] bytes = file.toByteArray();
+		assertEquals(part.length * 3, bytes.length);
+		for (int i = 0; i < bytes.length; i++) {
+			assertEquals(part[i % part.length], bytes[i]);
+		}
+		MappedByteBuffer[] segments = file.map();
+		assertEquals(1, segments.length);
+		assertEquals(bytes.length, segments[0].remaining());
+
+		// Delete file
+		file.close();
+		assertFalse(Files.exists(file.path));
+
+		// Pooled buffers
+		acc = new BodyAccumulator(UnpooledByteBufAllocator.DEFAULT);
+		acc.append(part);
+		file = new SpillFile(null);
+		acc.writeTo(file);
+		assertArrayEquals(part, file.toByteArray());
+		file.close();
+
+		// Empty file
+		file = new SpillFile(null);
+		assertEquals(0, file.toByteArray().length);
+		assertEquals(0, file.map().length);
+		file.close();
+	}
+
+	@Test
+	public void testLazySpillFile() throws Exception {
+		RequestParams params = new RequestParams("HEAD", false);
+		params.setSpillThreshold(100);
+		HttpHeaders headers = new DefaultHttpHeaders();
+		headers.set(HttpHeaderNames.CONTENT_LENGTH, 1000);
+
+		// No body (eg. HEAD response), no temp file
+		ResponseToBytes handler = new ResponseToBytes(params);
+		handler.onHeadersReceived(headers);
+		assertNull(handler.spillFile);
+		Tree rsp = handler.onCompleted();
+		assertEquals(0, rsp.asBytes().length);
+		assertNull(handler.spillFile);
+
+		// The temp file is created at the first body part
+		params = new RequestParams("GET", false);
+		params.setSpillThreshold(100);
+		handler = new ResponseToBytes(params);
+		handler.onHeadersReceived(headers);
+		assertNull(handler.spillFile);
+		byte[] body = new byte[1000];
+		handler.onBodyPartReceived(new EagerResponseBodyPart(Unpooled.wrappedBuffer(body), true));
+		assertNotNull(handler.spillFile);
+		assertArrayEquals(body, handler.onCompleted().asBytes());
+		assertFalse(Files.exists(handler.spillFile.path));
+	}
+
+}
@@ -0,0 +1,189 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP server of the tests (JDK's built-in HttpServer, bound to a
+ * random port of the loopback interface). The requests are processed
+ * concurrently; the exchange is closed after the handler returns (or throws
+ * an exception, eg. when the client closes the connection).
+ */
+public class TestServer implements AutoCloseable {
+
+	// --- VARIABLES ---
+
+	protected final HttpServer server;
+	protected final ExecutorService executor = Executors.newCachedThreadPool();
+
+	// --- CONSTRUCTOR ---
+
+	public TestServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	// --- HANDLERS ---
+
+	@FunctionalInterface
+	public interface Handler {
+		void handle(HttpExchange exchange) throws Exception;
+	}
+
+	/**
+	 * Adds a handler to the specified path (and its sub-paths).
+	 * 
+	 * @param path
+	 *            context path (eg. "/file")
+	 * @param handler
+	 *            request handler
+	 * 
+	 * @return this server (for method chaining)
+	 */
+	public TestServer handle(String path, Handler handler) {
+		server.createContext(path, exchange -> {
+			try {
+				handler.handle(exchange);
+			} catch (Exception ignored) {
+			} finally {
+				exchange.close();
+			}
+		});
+		return this;
+	}
+
+	/**
+	 * Adds an echo handler to the specified path. The request body is sent
+	 * back with the specified "Content-Type" (null = with the "Content-Type"
+	 * of the request).
+	 * 
+	 * @param path
+	 *            context path (eg. "/echo")
+	 * @param contentType
+	 *            value of the "Content-Type" header (or null)
+	 * 
+	 * @return this server (for method chaining)
+	 */
+	public TestServer echo(String path, String contentType) {
+		return handle(path, exchange -> {
+			String type = contentType;
+			if (type == null) {
+				type = exchange.getRequestHeaders().getFirst("Content-Type");
+			}
+			send(exchange, 200, type, readBody(exchange));
+		});
+	}
+
+	/**
+	 * Returns the URL of the specified path.
+	 * 
+	 * @param path
+	 *            path (eg. "/file")
+	 * 
+	 * @return URL of the path
+	 */
+	public String url(String path) {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+	}
+
+	// --- UTILITIES ---
+
+	/**
+	 * Reads the request body.
+	 * 
+	 * @param exchange
+	 *            HTTP exchange
+	 * 
+	 * @return request body
+	 */
+	public static byte[] readBody(HttpExchange exchange) throws IOException {
+		return readAll(exchange.getRequestBody());
+	}
+
+	/**
+	 * Reads the stream until its end.
+	 * 
+	 * @param in
+	 *            input stream
+	 * 
+	 * @return content of the stream
+	 */
+	public static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) != -1) {
+			body.write(buffer, 0, n);
+		}
+		return body.toByteArray();
+	}
+
+	/**
+	 * Sends the response (with "Content-Length" header; the body is not sent
+	 * to HEAD requests).
+	 * 
+	 * @param exchange
+	 *            HTTP exchange
+	 * @param status
+	 *            status code
+	 * @param contentType
+	 *            value of the "Content-Type" header (or null)
+	 * @param body
+	 *            response body
+	 */
+	public static void send(HttpExchange exchange, int status, String contentType, byte[] body)
+			throws IOException {
+		if (contentType != null) {
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+		}
+		boolean empty = body.length == 0 || "HEAD".equals(exchange.getRequestMethod());
+		exchange.sendResponseHeaders(status, empty ? -1 : body.length);
+		if (!empty) {
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+			out.close();
+		}
+	}
+
+	// --- STOP SERVER ---
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+}
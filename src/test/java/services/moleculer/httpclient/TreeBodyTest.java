@@ -0,0 +1,94 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.asynchttpclient.request.body.Body.BodyState;
+import org.junit.jupiter.api.Test;
+
+import io.datatree.Tree;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+public class TreeBodyTest {
+
+	@Test
+	public void testSameAsToBinary() throws Exception {
+
+		// Mixed types
+		Tree tree = new Tree();
+		tree.put("string", "a\"b\\c\n\u0001 \u00e1rv\u00edzt\u0171r\u0151");
+		tree.put("escaped", "\t\r\b\f\u001f/ \"quoted\" \\path");
+		tree.put("int", 123);
+		tree.put("long", Long.MAX_VALUE);
+		tree.put("double", 1.5d);
+		tree.put("boolean", true);
+		tree.putObject("null", null);
+		tree.put("bytes", new byte[] { 1, 2, 3 });
+		tree.putObject("date", new Date(1600000000000L));
+		tree.putObject("uuid", UUID.fromString("123e4567-e89b-12d3-a456-426614174000"));
+		tree.putObject("enum", TimeUnit.SECONDS);
+		Tree list = tree.putList("list");
+		list.add(1).add("two").addObject(null).add(3.5d);
+		tree.putMap("map").put("x", "y").putMap("empty");
+		tree.putList("emptyList");
+		assertSerialized(tree);
+
+		// Meta structure
+		tree.getMeta().put("$status", 200).putMap("$headers").put("Content-Type", "application/json");
+		assertSerialized(tree);
+
+		// Empty and scalar roots
+		assertSerialized(new Tree());
+		assertSerialized(new Tree().setObject("text"));
+	}
+
+	protected void assertSerialized(Tree tree) throws Exception {
+		byte[] expected = tree.toBinary();
+
+		// Small chunks (the tokens are split between the chunks)
+		TreeBody body = new TreeBody(tree);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		BodyState state;
+		do {
+			ByteBuf chunk = Unpooled.buffer(7, 7);
+			state = body.transferTo(chunk);
+			byte[] bytes = new byte[chunk.readableBytes()];
+			chunk.readBytes(bytes);
+			out.write(bytes);
+		} while (state != BodyState.STOP);
+		body.close();
+		assertArrayEquals(expected, out.toByteArray(), new String(out.toByteArray(), "UTF-8"));
+		assertEquals(expected.length, body.getTransfered());
+	}
+
+}
\ No newline at end of file
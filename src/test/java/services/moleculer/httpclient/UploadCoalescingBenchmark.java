@@ -0,0 +1,122 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.httpclient;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.datatree.Promise;
+import services.moleculer.ServiceBroker;
+import services.moleculer.config.ServiceBrokerConfig;
+import services.moleculer.monitor.ConstantMonitor;
+import services.moleculer.service.Action;
+import services.moleculer.service.Service;
+import services.moleculer.stream.PacketStream;
+import services.moleculer.web.ApiGateway;
+import services.moleculer.web.netty.NettyServer;
+
+/**
+ * Measures the upload throughput of small-packet PacketStreams with and
+ * without chunk coalescing (see "HttpClient.setUploadChunkSize"). Run it as a
+ * simple Java application (it is not a JUnit test); it starts a local
+ * ApiGateway on port 8080.
+ */
+public class UploadCoalescingBenchmark {
+
+	// --- CONSTANTS ---
+
+	private static final String RECEIVER_URL = "http://127.0.0.1:8080/counter.receive";
+
+	private static final int PACKET_SIZE = 64;
+	private static final int PACKETS = 200000;
+
+	// --- MAIN ---
+
+	public static void main(String[] args) throws Exception {
+		ServiceBrokerConfig cfg = new ServiceBrokerConfig();
+		cfg.setMonitor(new ConstantMonitor());
+		ServiceBroker broker = new ServiceBroker(cfg);
+		broker.createService(new NettyServer(8080));
+		broker.createService(new ApiGateway("*"));
+		broker.createService(new Counter());
+		broker.start();
+		try {
+			byte[] packet = new byte[PACKET_SIZE];
+			for (int chunkSize : new int[] { 0, 8 * 1024, 64 * 1024 }) {
+				HttpClient client = new HttpClient();
+				client.setUploadChunkSize(chunkSize);
+				client.start();
+
+				// Warm up
+				upload(client, broker, packet, PACKETS / 10);
+
+				long start = System.nanoTime();
+				upload(client, broker, packet, PACKETS);
+				long duration = System.nanoTime() - start;
+				double mb = (double) PACKET_SIZE * PACKETS / 1024 / 1024;
+				System.out.println("Chunk size " + String.format("%6d", chunkSize) + ": "
+						+ String.format("%8.2f", mb / (duration / 1000000000d)) + " MB/sec, "
+						+ String.format("%8d", (long) (PACKETS / (duration / 1000000000d))) + " packets/sec");
+				client.stop();
+			}
+		} finally {
+			broker.stop();
+		}
+	}
+
+	private static void upload(HttpClient client, ServiceBroker broker, byte[] packet, int packets)
+			throws Exception {
+		PacketStream stream = broker.createStream();
+		Promise rsp = client.post(RECEIVER_URL, stream);
+		for (int i = 0; i < packets; i++) {
+			stream.sendData(packet);
+		}
+		stream.sendClose();
+		rsp.waitFor(60000);
+	}
+
+	// --- RECEIVER SERVICE ---
+
+	protected static class Counter extends Service {
+
+		public AtomicLong received = new AtomicLong();
+
+		public Action receive = ctx -> {
+			Promise res = new Promise();
+			ctx.stream.onPacket((bytes, error, close) -> {
+				if (bytes != null) {
+					received.addAndGet(bytes.length);
+				}
+				if (error != null) {
+					res.complete(error);
+				} else if (close) {
+					res.complete();
+				}
+			});
+			return res;
+		};
+
+	}
+
+}
\ No newline at end of file